@@ -0,0 +1,44 @@
+package qslv.transaction.rest;
+
+/**
+ * Running balance of an account. When the balance was read with a max staleness it may not
+ * yet reflect postings made within that many milliseconds.
+ */
+public class AccountBalanceResponse {
+	private String accountNumber;
+	private long runningBalanceAmount;
+	private long maxStalenessMillis;
+
+	public AccountBalanceResponse() {
+	}
+
+	public AccountBalanceResponse(String accountNumber, long runningBalanceAmount, long maxStalenessMillis) {
+		this.accountNumber = accountNumber;
+		this.runningBalanceAmount = runningBalanceAmount;
+		this.maxStalenessMillis = maxStalenessMillis;
+	}
+
+	public String getAccountNumber() {
+		return accountNumber;
+	}
+
+	public void setAccountNumber(String accountNumber) {
+		this.accountNumber = accountNumber;
+	}
+
+	public long getRunningBalanceAmount() {
+		return runningBalanceAmount;
+	}
+
+	public void setRunningBalanceAmount(long runningBalanceAmount) {
+		this.runningBalanceAmount = runningBalanceAmount;
+	}
+
+	public long getMaxStalenessMillis() {
+		return maxStalenessMillis;
+	}
+
+	public void setMaxStalenessMillis(long maxStalenessMillis) {
+		this.maxStalenessMillis = maxStalenessMillis;
+	}
+}
@@ -0,0 +1,264 @@
+package qslv.transaction.rest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Tracks the accounts whose balance locks are most contended, in bounded memory.
+ *
+ * Accounts are ranked by lock wait time with a weighted Space-Saving sketch of
+ * qslv.contention.capacity entries. An account not in the sketch replaces the one with
+ * the least wait and inherits that wait as its error bound, so any account whose true
+ * wait exceeds the smallest tracked wait is always in the sketch. Each entry also records
+ * postings, the time the lock was held until the transaction completed, and serialization
+ * retries. Every qslv.contention.decay-millis all figures are halved so the ranking
+ * follows current load.
+ *
+ * Tracked accounts are changed in place without locking; only admitting an account takes
+ * a lock, and the entry to replace is found on a min-heap of waits in O(log K).
+ *
+ * Only the aggregate wait and hold timers are published as metrics; the per-account
+ * figures are served by GET /Contention/Accounts.
+ */
+@Component
+public class AccountContention {
+	private static final Logger log = LoggerFactory.getLogger(AccountContention.class);
+
+	@Autowired
+	private ConfigProperties config;
+
+	private final Timer lockWait = Metrics.timer("qslv.account.lock.wait");
+	private final Timer lockHeld = Metrics.timer("qslv.account.lock.held");
+
+	private final ConcurrentHashMap<String, HotAccount> accounts = new ConcurrentHashMap<>();
+	private final PriorityQueue<Ranked> coldest = new PriorityQueue<>(Comparator.comparingLong((Ranked ranked) -> ranked.lockWaitNanos));
+	private final Object admission = new Object();
+	private final ThreadLocal<List<String>> attempt = new ThreadLocal<>();
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	/**
+	 * Record that the account's balance lock was acquired after waiting. The hold time is
+	 * recorded when the current database transaction completes.
+	 */
+	public void locked(String account_id, long wait_ns) {
+		lockWait.record(wait_ns, TimeUnit.NANOSECONDS);
+		admit(account_id, entry -> {
+			entry.lockWaitNanos.addAndGet(wait_ns);
+			entry.postings.incrementAndGet();
+		});
+
+		List<String> locked = attempt.get();
+		if (locked != null) {
+			locked.add(account_id);
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			long acquired = System.nanoTime();
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					long held_ns = System.nanoTime() - acquired;
+					lockHeld.record(held_ns, TimeUnit.NANOSECONDS);
+					update(account_id, entry -> entry.lockHeldNanos.addAndGet(held_ns));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Start collecting the accounts locked by a transaction attempt on this thread.
+	 */
+	public void beginAttempt() {
+		attempt.set(new ArrayList<>());
+	}
+
+	/**
+	 * Count a retry against every account the failed attempt locked, and start a new attempt.
+	 */
+	public void retried() {
+		List<String> locked = attempt.get();
+		if (locked == null) {
+			return;
+		}
+		for (String account_id : locked) {
+			update(account_id, entry -> entry.retries.incrementAndGet());
+		}
+		locked.clear();
+	}
+
+	public void endAttempt() {
+		attempt.remove();
+	}
+
+	/**
+	 * @return the tracked accounts, most lock wait first, at most limit of them
+	 */
+	public List<HotAccount> hottest(int limit) {
+		List<HotAccount> snapshot = new ArrayList<>();
+		accounts.values().forEach(entry -> snapshot.add(entry.copy()));
+		snapshot.sort(Comparator.comparingLong(HotAccount::getLockWaitNanos).reversed());
+		return snapshot.size() > limit ? new ArrayList<>(snapshot.subList(0, limit)) : snapshot;
+	}
+
+	@Scheduled(fixedDelayString = "${qslv.contention.decay-millis:60000}")
+	public void decay() {
+		synchronized (admission) {
+			accounts.values().removeIf(entry -> {
+				long wait = entry.lockWaitNanos.updateAndGet(value -> value / 2);
+				entry.lockHeldNanos.updateAndGet(value -> value / 2);
+				entry.errorNanos.updateAndGet(value -> value / 2);
+				long postings = entry.postings.updateAndGet(value -> value / 2);
+				long retries = entry.retries.updateAndGet(value -> value / 2);
+				return wait == 0 && postings == 0 && retries == 0;
+			});
+			coldest.clear();
+			accounts.values().forEach(entry -> coldest.add(new Ranked(entry.lockWaitNanos.get(), entry)));
+		}
+	}
+
+	/**
+	 * Change the account's entry if it is still tracked. Hold times and retries of an account
+	 * that has since been replaced are dropped.
+	 */
+	private void update(String account_id, Consumer<HotAccount> change) {
+		HotAccount entry = accounts.get(account_id);
+		if (entry != null) {
+			change.accept(entry);
+		}
+	}
+
+	/**
+	 * Change the account's entry, first admitting the account if it is not tracked. Only
+	 * admission takes a lock; a tracked account is changed in place.
+	 */
+	private void admit(String account_id, Consumer<HotAccount> change) {
+		HotAccount entry = accounts.get(account_id);
+		if (entry == null) {
+			entry = admit(account_id);
+		}
+		change.accept(entry);
+	}
+
+	/**
+	 * Add the account to the sketch, replacing the entry with the least wait when the sketch
+	 * is full.
+	 *
+	 * The heap is keyed by each entry's wait when it was last ranked. Waits only grow between
+	 * decays, so a key is never above the entry's current wait. An entry whose key is out of
+	 * date is ranked again; the first entry found up to date has the least wait.
+	 */
+	private HotAccount admit(String account_id) {
+		synchronized (admission) {
+			HotAccount entry = accounts.get(account_id);
+			if (entry != null) {
+				return entry;
+			}
+			entry = new HotAccount(account_id);
+			if (accounts.size() >= config.getContention().getCapacity()) {
+				HotAccount replaced = null;
+				while (replaced == null && false == coldest.isEmpty()) {
+					Ranked ranked = coldest.poll();
+					long wait = ranked.entry.lockWaitNanos.get();
+					if (accounts.get(ranked.entry.accountNumber) != ranked.entry) {
+						continue;
+					}
+					if (wait != ranked.lockWaitNanos) {
+						coldest.add(new Ranked(wait, ranked.entry));
+					} else {
+						replaced = ranked.entry;
+					}
+				}
+				if (replaced != null) {
+					accounts.remove(replaced.accountNumber);
+					long inherited = replaced.lockWaitNanos.get();
+					entry.lockWaitNanos.set(inherited);
+					entry.errorNanos.set(inherited);
+					log.trace("AccountContention replaced {} with {}", replaced.accountNumber, account_id);
+				}
+			}
+			accounts.put(account_id, entry);
+			coldest.add(new Ranked(entry.lockWaitNanos.get(), entry));
+			return entry;
+		}
+	}
+
+	private static class Ranked {
+		private final long lockWaitNanos;
+		private final HotAccount entry;
+
+		Ranked(long lockWaitNanos, HotAccount entry) {
+			this.lockWaitNanos = lockWaitNanos;
+			this.entry = entry;
+		}
+	}
+
+	/**
+	 * Contention figures of one account. lockWaitNanos may overstate the account's wait by
+	 * up to errorNanos, the wait it inherited when it entered the sketch.
+	 */
+	public static class HotAccount {
+		private final String accountNumber;
+		private final AtomicLong lockWaitNanos = new AtomicLong();
+		private final AtomicLong errorNanos = new AtomicLong();
+		private final AtomicLong lockHeldNanos = new AtomicLong();
+		private final AtomicLong postings = new AtomicLong();
+		private final AtomicLong retries = new AtomicLong();
+
+		public HotAccount(String accountNumber) {
+			this.accountNumber = accountNumber;
+		}
+
+		HotAccount copy() {
+			HotAccount copy = new HotAccount(accountNumber);
+			copy.lockWaitNanos.set(lockWaitNanos.get());
+			copy.errorNanos.set(errorNanos.get());
+			copy.lockHeldNanos.set(lockHeldNanos.get());
+			copy.postings.set(postings.get());
+			copy.retries.set(retries.get());
+			return copy;
+		}
+
+		public String getAccountNumber() {
+			return accountNumber;
+		}
+
+		public long getLockWaitNanos() {
+			return lockWaitNanos.get();
+		}
+
+		public long getErrorNanos() {
+			return errorNanos.get();
+		}
+
+		public long getLockHeldNanos() {
+			return lockHeldNanos.get();
+		}
+
+		public long getPostings() {
+			return postings.get();
+		}
+
+		public long getRetries() {
+			return retries.get();
+		}
+	}
+}
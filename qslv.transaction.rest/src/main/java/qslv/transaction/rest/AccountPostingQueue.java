@@ -0,0 +1,139 @@
+package qslv.transaction.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import qslv.transaction.request.TransactionRequest;
+import qslv.transaction.response.TransactionResponse;
+
+/**
+ * Serializes postings for the same account within this instance.
+ * 
+ * A request for an idle account is posted directly on the caller's thread. Requests that
+ * arrive while the account is busy are queued, and whichever caller next owns the account
+ * drains the queue as one batch through TransactionService.createTransactions, so a hot
+ * account takes its balance lock once per batch instead of once per request. If a batch
+ * fails, its requests are retried one at a time so a single bad request does not fail
+ * the others.
+ */
+@Component
+public class AccountPostingQueue {
+	private static final Logger log = LoggerFactory.getLogger(AccountPostingQueue.class);
+
+	@Autowired
+	private TransactionService service;
+	@Autowired
+	private ConfigProperties config;
+	@Autowired
+	private TransactionRetry transactionRetry;
+
+	private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+	public void setService(TransactionService service) {
+		this.service = service;
+	}
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	public void setTransactionRetry(TransactionRetry transactionRetry) {
+		this.transactionRetry = transactionRetry;
+	}
+
+	public TransactionResponse createTransaction(TransactionRequest request) {
+		log.trace("createTransaction ENTRY");
+
+		PendingTransaction posting = new PendingTransaction(request);
+		Lane lane = lanes.compute(request.getAccountNumber(), (account, existing) -> {
+			Lane current = (existing == null) ? new Lane() : existing;
+			current.queue.add(posting);
+			return current;
+		});
+
+		while (false == posting.isDone()) {
+			if (lane.busy.compareAndSet(false, true)) {
+				try {
+					drain(lane);
+				} finally {
+					lane.busy.set(false);
+				}
+				// hand the account to the next waiter, if any arrived while we held it
+				PendingTransaction next = lane.queue.peek();
+				if (next != null) {
+					LockSupport.unpark(next.owner);
+				}
+			} else {
+				LockSupport.park(this);
+			}
+		}
+		lanes.computeIfPresent(request.getAccountNumber(), (account, current) -> 
+			(current.queue.isEmpty() && false == current.busy.get()) ? null : current);
+
+		log.trace("createTransaction EXIT");
+		return posting.get();
+	}
+
+	private void drain(Lane lane) {
+		List<PendingTransaction> batch = new ArrayList<>();
+		PendingTransaction next;
+		while (batch.size() < config.getAccountQueue().getMaxBatch() && (next = lane.queue.poll()) != null) {
+			batch.add(next);
+		}
+		if (batch.size() == 1) {
+			post(batch.get(0));
+		} else if (batch.size() > 1) {
+			log.debug("drain Account={} coalescing {} postings", batch.get(0).request.getAccountNumber(), batch.size());
+			List<TransactionRequest> requests = new ArrayList<>(batch.size());
+			batch.forEach(posting -> requests.add(posting.request));
+			try {
+				List<TransactionResponse> responses = retrying("POST/Transaction", () -> service.createTransactions(requests));
+				for (int ii = 0; ii < batch.size(); ii++) {
+					batch.get(ii).complete(responses.get(ii));
+				}
+			} catch (RuntimeException ex) {
+				log.warn("drain Account={} batch of {} failed, posting individually. {}", 
+						batch.get(0).request.getAccountNumber(), batch.size(), ex.getLocalizedMessage());
+				batch.forEach(this::post);
+			}
+		}
+	}
+
+	private void post(PendingTransaction posting) {
+		try {
+			posting.complete(retrying("POST/Transaction", () -> service.createTransaction(posting.request)));
+		} catch (RuntimeException ex) {
+			posting.fail(ex);
+		}
+	}
+
+	/**
+	 * Run the service call, retrying serialization failures when qslv.transaction-retry is
+	 * enabled. The call may post other callers' requests, so it runs without the request
+	 * deadline of the thread that happens to run it.
+	 */
+	private <T> T retrying(String endpoint, Supplier<T> call) {
+		return RequestDeadline.with(null, () -> {
+			if (config.getTransactionRetry().isEnabled()) {
+				return transactionRetry.execute(endpoint, call);
+			}
+			return call.get();
+		});
+	}
+
+	private static class Lane {
+		final Queue<PendingTransaction> queue = new ConcurrentLinkedQueue<>();
+		final AtomicBoolean busy = new AtomicBoolean(false);
+	}
+}
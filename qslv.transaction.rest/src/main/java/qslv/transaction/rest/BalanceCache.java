@@ -0,0 +1,112 @@
+package qslv.transaction.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Write-through cache of the running balances this instance has read under lock or written,
+ * keyed by account_id, so a posting the cached balance covers can skip the locking read.
+ *
+ * Entries carry the account_balance version they were read at or written as. A posting
+ * against a cached entry writes the balance only if the row is still at that version, so a
+ * balance changed elsewhere is never overwritten; the entry is invalidated and the posting
+ * falls back to the locked read. Entries are stored once the writing transaction commits,
+ * and never replace a newer version. The least recently used entries are dropped once the
+ * cache holds its maximum number of entries.
+ */
+@Component
+public class BalanceCache {
+	private static final Logger log = LoggerFactory.getLogger(BalanceCache.class);
+
+	@Autowired
+	private ConfigProperties config;
+
+	private final Counter hits = Metrics.counter("qslv.balance.cache", "result", "hit");
+	private final Counter misses = Metrics.counter("qslv.balance.cache", "result", "miss");
+	private final Counter invalidations = Metrics.counter("qslv.balance.cache.invalidations");
+
+	private final LinkedHashMap<String, VersionedBalance> balances = new LinkedHashMap<String, VersionedBalance>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, VersionedBalance> eldest) {
+			return size() > config.getBalanceCache().getMaxEntries();
+		}
+	};
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	/**
+	 * @return the cached balance and its version, or null when the account is not cached
+	 */
+	public VersionedBalance get(String account_id) {
+		VersionedBalance balance;
+		synchronized (balances) {
+			balance = balances.get(account_id);
+		}
+		if (balance == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return balance;
+	}
+
+	/**
+	 * Cache the balance once the current database transaction commits, or immediately when
+	 * there is none. An entry with a newer version is kept.
+	 */
+	public void put(String account_id, long runningBalance_am, long version) {
+		VersionedBalance balance = new VersionedBalance(runningBalance_am, version);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status == TransactionSynchronization.STATUS_COMMITTED) {
+						store(account_id, balance);
+					}
+				}
+			});
+		} else {
+			store(account_id, balance);
+		}
+	}
+
+	/**
+	 * Drop the account's entry because its version no longer matches the database.
+	 */
+	public void invalidate(String account_id) {
+		synchronized (balances) {
+			balances.remove(account_id);
+		}
+		invalidations.increment();
+		log.debug("BalanceCache invalidated {}", account_id);
+	}
+
+	public int size() {
+		synchronized (balances) {
+			return balances.size();
+		}
+	}
+
+	private void store(String account_id, VersionedBalance balance) {
+		synchronized (balances) {
+			VersionedBalance current = balances.get(account_id);
+			if (current == null || current.getVersion() < balance.getVersion()) {
+				balances.put(account_id, balance);
+			}
+		}
+	}
+}
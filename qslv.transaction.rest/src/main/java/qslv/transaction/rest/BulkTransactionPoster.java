@@ -0,0 +1,207 @@
+package qslv.transaction.rest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import qslv.transaction.request.TransactionRequest;
+import qslv.transaction.response.TransactionResponse;
+
+/**
+ * Posts many transaction requests for POST /Transactions.
+ * 
+ * Valid requests are grouped by account and each account's group is posted through
+ * TransactionService.createTransactions, one database transaction per group, so the
+ * account's balance is locked and written once. Groups larger than the configured
+ * batch are split. If a group fails, its requests are posted one at a time so that one
+ * bad request only fails itself. Idempotency is the same as for POST /Transaction.
+ * 
+ * Newline-delimited input is read and posted one batch of lines at a time, and each
+ * batch's results are written and flushed before the next is read, so memory does not
+ * grow with the size of the input.
+ */
+@Component
+public class BulkTransactionPoster {
+	private static final Logger log = LoggerFactory.getLogger(BulkTransactionPoster.class);
+
+	@Autowired
+	private TransactionService service;
+	@Autowired
+	private ConfigProperties config;
+	@Autowired
+	private TransactionRetry transactionRetry;
+	@Autowired
+	private ObjectMapper mapper;
+
+	public void setService(TransactionService service) {
+		this.service = service;
+	}
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	public void setTransactionRetry(TransactionRetry transactionRetry) {
+		this.transactionRetry = transactionRetry;
+	}
+
+	public void setObjectMapper(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	/**
+	 * @param validator throws ResponseStatusException for a request that must not be posted
+	 * @return one result per request, in request order
+	 */
+	public List<BulkTransactionResult> post(List<TransactionRequest> requests, Consumer<TransactionRequest> validator) {
+		log.trace("post ENTRY");
+
+		BulkTransactionResult[] results = new BulkTransactionResult[requests.size()];
+		TreeMap<String, List<Integer>> byAccount = new TreeMap<>();
+		for (int ii = 0; ii < requests.size(); ii++) {
+			try {
+				validator.accept(requests.get(ii));
+				byAccount.computeIfAbsent(requests.get(ii).getAccountNumber(), k -> new ArrayList<>()).add(ii);
+			} catch (ResponseStatusException ex) {
+				results[ii] = failure(ex);
+			}
+		}
+
+		int maxBatch = Math.max(1, config.getBulk().getMaxBatch());
+		for (Map.Entry<String, List<Integer>> account : byAccount.entrySet()) {
+			List<Integer> indexes = account.getValue();
+			for (int start = 0; start < indexes.size(); start += maxBatch) {
+				commit(requests, indexes.subList(start, Math.min(indexes.size(), start + maxBatch)), results);
+			}
+		}
+
+		log.trace("post EXIT");
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Read one TransactionRequest per line and write one result per line, in order. Blank
+	 * lines are skipped; a line that is not a TransactionRequest gets a 400 result.
+	 * 
+	 * @return the number of results written
+	 */
+	public long ingest(InputStream input, OutputStream output, Consumer<TransactionRequest> validator) throws IOException {
+		log.trace("ingest ENTRY");
+
+		ObjectReader reader = mapper.readerFor(TransactionRequest.class);
+		ObjectWriter writer = mapper.writer();
+		BufferedReader lines = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		int maxBatch = Math.max(1, config.getBulk().getMaxBatch());
+		// one entry per line of the batch: the request, or the result of a line that could not be read
+		List<TransactionRequest> requests = new ArrayList<>(maxBatch);
+		List<BulkTransactionResult> unreadable = new ArrayList<>(maxBatch);
+		long written = 0;
+		long lineNumber = 0;
+
+		String line;
+		while ((line = lines.readLine()) != null) {
+			lineNumber++;
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				requests.add(reader.readValue(line));
+				unreadable.add(null);
+			} catch (JsonProcessingException ex) {
+				log.error("ingest, line {} is not a TransactionRequest. {}", lineNumber, ex.getOriginalMessage());
+				requests.add(null);
+				unreadable.add(new BulkTransactionResult(HttpStatus.BAD_REQUEST.value(),
+						String.format("Line %d is not a TransactionRequest. %s", lineNumber, ex.getOriginalMessage())));
+			}
+			if (requests.size() >= maxBatch) {
+				written += postAndWrite(requests, unreadable, validator, writer, output);
+			}
+		}
+		if (!requests.isEmpty()) {
+			written += postAndWrite(requests, unreadable, validator, writer, output);
+		}
+
+		log.debug("ingest EXIT - {} results for {} lines", written, lineNumber);
+		return written;
+	}
+
+	private int postAndWrite(List<TransactionRequest> requests, List<BulkTransactionResult> unreadable,
+			Consumer<TransactionRequest> validator, ObjectWriter writer, OutputStream output) throws IOException {
+		List<TransactionRequest> readable = new ArrayList<>(requests.size());
+		requests.stream().filter(request -> request != null).forEach(readable::add);
+		Iterator<BulkTransactionResult> posted = post(readable, validator).iterator();
+
+		for (BulkTransactionResult result : unreadable) {
+			output.write(writer.writeValueAsBytes(result == null ? posted.next() : result));
+			output.write('\n');
+		}
+		output.flush();
+
+		int count = requests.size();
+		requests.clear();
+		unreadable.clear();
+		return count;
+	}
+
+	private void commit(List<TransactionRequest> requests, List<Integer> indexes, BulkTransactionResult[] results) {
+		List<TransactionRequest> group = new ArrayList<>(indexes.size());
+		indexes.forEach(index -> group.add(requests.get(index)));
+		try {
+			List<TransactionResponse> responses = retrying("POST/Transactions", () -> service.createTransactions(group));
+			for (int ii = 0; ii < indexes.size(); ii++) {
+				results[indexes.get(ii)] = success(responses.get(ii));
+			}
+		} catch (RuntimeException ex) {
+			log.warn("post group of {} for account {} failed, posting individually. {}", group.size(),
+					group.get(0).getAccountNumber(), ex.getLocalizedMessage());
+			for (Integer index : indexes) {
+				try {
+					results[index] = success(retrying("POST/Transactions", () -> service.createTransaction(requests.get(index))));
+				} catch (ResponseStatusException single) {
+					results[index] = failure(single);
+				} catch (RuntimeException single) {
+					log.error("post request {} failed. {}", requests.get(index).getRequestUuid(), single.getLocalizedMessage());
+					results[index] = new BulkTransactionResult(HttpStatus.INTERNAL_SERVER_ERROR.value(), single.getLocalizedMessage());
+				}
+			}
+		}
+	}
+
+	private static BulkTransactionResult success(TransactionResponse response) {
+		return new BulkTransactionResult(HttpStatus.CREATED.value(), response);
+	}
+
+	private static BulkTransactionResult failure(ResponseStatusException ex) {
+		return new BulkTransactionResult(ex.getStatus().value(), ex.getReason());
+	}
+	private <T> T retrying(String endpoint, Supplier<T> call) {
+		if (config.getTransactionRetry().isEnabled()) {
+			return transactionRetry.execute(endpoint, call);
+		}
+		return call.get();
+	}
+
+}
@@ -0,0 +1,51 @@
+package qslv.transaction.rest;
+
+import qslv.transaction.response.TransactionResponse;
+
+/**
+ * Outcome of one item of a bulk posting. The status is the HTTP status the item would have
+ * received on its own; the response is present when the item was posted and the message
+ * when it was not.
+ */
+public class BulkTransactionResult {
+	private int status;
+	private String message;
+	private TransactionResponse response;
+
+	public BulkTransactionResult() {
+	}
+
+	public BulkTransactionResult(int status, TransactionResponse response) {
+		this.status = status;
+		this.response = response;
+	}
+
+	public BulkTransactionResult(int status, String message) {
+		this.status = status;
+		this.message = message;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	public TransactionResponse getResponse() {
+		return response;
+	}
+
+	public void setResponse(TransactionResponse response) {
+		this.response = response;
+	}
+}
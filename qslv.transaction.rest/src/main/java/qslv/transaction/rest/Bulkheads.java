@@ -0,0 +1,181 @@
+package qslv.transaction.rest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Priority lanes for database work, so a burst of one class of request cannot starve the
+ * others of connections.
+ *
+ * Each lane gets its own share of qslv.bulkhead.permits in proportion to its weight. The
+ * permits left over after rounding down go to the lanes with the largest remainders, so the
+ * lanes' permits always add up to the configured total. A lane rounded down to nothing takes
+ * a permit from the largest lane. A lane of weight 0 is disabled and
+ * rejects every request. Startup fails when there are fewer permits than lanes to give
+ * them to. The permits are split once, when the lanes are first used.
+ *
+ * A request that finds no free permit in its own lane is rejected with 503 at once. It
+ * never waits, so a burst in one lane cannot hold request threads that the other lanes
+ * need. Give the lanes' permits no more than the connection pool size, so each lane also
+ * has its own part of the pool.
+ */
+@Component
+public class Bulkheads {
+	private static final Logger log = LoggerFactory.getLogger(Bulkheads.class);
+	private static final int RETRY_AFTER_SECONDS = 1;
+
+	public enum Lane {
+		/** POST /Reservation, /CommitReservation and /CancelReservation */
+		AUTHORIZATION,
+		/** POST /Transaction and /TransferAndTransact */
+		POSTING,
+		/** POST /Transactions and the transaction export */
+		BULK,
+		/** GET /Transaction, balance and transaction history */
+		INQUIRY;
+
+		public String key() {
+			return name().toLowerCase();
+		}
+	}
+
+	@Autowired
+	private ConfigProperties config;
+
+	private volatile Map<Lane, Semaphore> lanes;
+	private volatile Map<Lane, Integer> allocation;
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	/**
+	 * Run the call holding a permit from the lane.
+	 *
+	 * @throws ConcurrencyLimitExceededException when the lane has no free permit
+	 */
+	public <T> T execute(Lane lane, Supplier<T> call) {
+		Semaphore permits = lanes().get(lane);
+		if (allocation.get(lane) == 0) {
+			Metrics.counter("qslv.bulkhead.rejected", "lane", lane.key()).increment();
+			log.debug("execute {} lane disabled.", lane.key());
+			throw new ConcurrencyLimitExceededException("The " + lane.key() + " lane is disabled", RETRY_AFTER_SECONDS);
+		}
+		if (false == permits.tryAcquire()) {
+			Metrics.counter("qslv.bulkhead.rejected", "lane", lane.key()).increment();
+			log.debug("execute {} lane full.", lane.key());
+			throw new ConcurrencyLimitExceededException("The " + lane.key() + " lane is full", RETRY_AFTER_SECONDS);
+		}
+		try {
+			return call.get();
+		} finally {
+			permits.release();
+		}
+	}
+
+	@PostConstruct
+	public void validate() {
+		if (config.getBulkhead().isEnabled()) {
+			lanes();
+		}
+	}
+
+	public int getPermits(Lane lane) {
+		lanes();
+		return allocation.get(lane);
+	}
+
+	public int getAvailablePermits(Lane lane) {
+		return lanes().get(lane).availablePermits();
+	}
+
+	private static int weight(ConfigProperties.Bulkhead settings, Lane lane) {
+		Integer weight = settings.getWeights().get(lane.key());
+		return (weight == null) ? 1 : Math.max(0, weight);
+	}
+
+	/**
+	 * Split the total permits across the lanes by the largest remainder method.
+	 */
+	private Map<Lane, Integer> allocate() {
+		ConfigProperties.Bulkhead settings = config.getBulkhead();
+		long total = Math.max(0, settings.getPermits());
+		long totalWeight = 0;
+		for (Lane lane : Lane.values()) {
+			totalWeight += weight(settings, lane);
+		}
+
+		Map<Lane, Integer> permits = new EnumMap<>(Lane.class);
+		Map<Lane, Long> remainders = new EnumMap<>(Lane.class);
+		long assigned = 0;
+		for (Lane lane : Lane.values()) {
+			long share = (totalWeight == 0) ? 0 : total * weight(settings, lane);
+			long quota = (totalWeight == 0) ? 0 : share / totalWeight;
+			permits.put(lane, (int) quota);
+			remainders.put(lane, (totalWeight == 0) ? 0 : share % totalWeight);
+			assigned += quota;
+		}
+		List<Lane> byRemainder = new ArrayList<>(Arrays.asList(Lane.values()));
+		byRemainder.removeIf(lane -> weight(settings, lane) == 0);
+		byRemainder.sort(Comparator.comparingLong((Lane lane) -> remainders.get(lane)).reversed());
+		for (int ii = 0; assigned < total && ii < byRemainder.size(); ii++, assigned++) {
+			Lane lane = byRemainder.get(ii);
+			permits.put(lane, permits.get(lane) + 1);
+		}
+		// rounding can leave a small lane with nothing, take its permit from the largest lane
+		for (Lane lane : byRemainder) {
+			Lane largest = Collections.max(byRemainder, Comparator.comparingInt(permits::get));
+			if (permits.get(lane) == 0 && permits.get(largest) > 1) {
+				permits.put(largest, permits.get(largest) - 1);
+				permits.put(lane, 1);
+			}
+		}
+		return permits;
+	}
+
+	private Map<Lane, Semaphore> lanes() {
+		Map<Lane, Semaphore> current = lanes;
+		if (current == null) {
+			synchronized (this) {
+				if (lanes == null) {
+					Map<Lane, Integer> allocated = allocate();
+					long enabled = Arrays.stream(Lane.values()).filter(lane -> weight(config.getBulkhead(), lane) > 0).count();
+					if (config.getBulkhead().getPermits() < enabled) {
+						throw new IllegalStateException(String.format(
+							"qslv.bulkhead.permits of %d is fewer than the %d lanes with a weight.", config.getBulkhead().getPermits(), enabled));
+					}
+					Map<Lane, Semaphore> created = new EnumMap<>(Lane.class);
+					for (Lane lane : Lane.values()) {
+						int permits = allocated.get(lane);
+						created.put(lane, new Semaphore(permits));
+						if (permits == 0) {
+							log.warn("Bulkhead lane {} is disabled.", lane.key());
+						} else {
+							log.info("Bulkhead lane {} has {} permits.", lane.key(), permits);
+						}
+					}
+					allocation = allocated;
+					lanes = created;
+				}
+				current = lanes;
+			}
+		}
+		return current;
+	}
+}
@@ -0,0 +1,24 @@
+package qslv.transaction.rest;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+/**
+ * Adds Retry-After to 503 responses for shed requests. Spring's ResponseStatusExceptionResolver
+ * only sends the status and reason of the exception, so the header is set here. The error
+ * body is the usual one.
+ */
+@ControllerAdvice
+public class ConcurrencyLimitAdvice {
+
+	@ExceptionHandler(ConcurrencyLimitExceededException.class)
+	public void handleConcurrencyLimitExceeded(ConcurrencyLimitExceededException ex, HttpServletResponse response) throws IOException {
+		response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+		response.sendError(ex.getStatus().value(), ex.getReason());
+	}
+}
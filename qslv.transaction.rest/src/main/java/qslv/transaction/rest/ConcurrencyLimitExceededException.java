@@ -0,0 +1,27 @@
+package qslv.transaction.rest;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A request shed by the ConcurrencyLimiter or a full Bulkheads lane. Answered with 503 and
+ * a Retry-After header by ConcurrencyLimitAdvice.
+ */
+public class ConcurrencyLimitExceededException extends ResponseStatusException {
+	private static final long serialVersionUID = 1L;
+
+	private final int retryAfterSeconds;
+
+	public ConcurrencyLimitExceededException(int limit, int retryAfterSeconds) {
+		this("Concurrency limit of " + limit + " reached", retryAfterSeconds);
+	}
+
+	public ConcurrencyLimitExceededException(String reason, int retryAfterSeconds) {
+		super(HttpStatus.SERVICE_UNAVAILABLE, reason);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
@@ -0,0 +1,140 @@
+package qslv.transaction.rest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Adaptive limit on concurrent TransactionService calls.
+ *
+ * A call over the limit is rejected at once with 503 and Retry-After, rather than queueing
+ * for a request thread or a connection until it times out. The limit follows a latency
+ * gradient: each completed call compares a long-run average latency with the call's own.
+ * While latency stays within tolerance of the average, the limit grows by about the square
+ * root of itself. As latency rises above it, the limit shrinks in proportion, at most by
+ * half per call. A database failure cuts the limit by a tenth. The limit only grows while
+ * at least half of it is in use, so an idle service does not drift to the maximum.
+ */
+@Component
+public class ConcurrencyLimiter {
+	private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+	private static final double LONG_WINDOW = 600.0;
+	private static final double BACKOFF_RATIO = 0.9;
+
+	@Autowired
+	private ConfigProperties config;
+
+	private final AtomicInteger inflight = new AtomicInteger();
+	// doubles held as their raw long bits; zero bits are 0.0, meaning no sample yet
+	private final AtomicLong limit = new AtomicLong();
+	private final AtomicLong longRtt_ns = new AtomicLong();
+
+	public ConcurrencyLimiter() {
+		Metrics.gauge("qslv.concurrency.limit", this, ConcurrencyLimiter::getLimit);
+		Metrics.gauge("qslv.concurrency.inflight", inflight);
+	}
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	/**
+	 * Run the call if the limit allows it, recording its latency against the limit.
+	 *
+	 * @throws ConcurrencyLimitExceededException when the limit is reached
+	 */
+	public <T> T execute(String endpoint, Supplier<T> call) {
+		int admitted = acquire(endpoint);
+		long started = System.nanoTime();
+		boolean dropped = false;
+		try {
+			return call.get();
+		} catch (DataAccessException | TransactionException ex) {
+			dropped = true;
+			throw ex;
+		} finally {
+			inflight.decrementAndGet();
+			sample(System.nanoTime() - started, admitted, dropped);
+		}
+	}
+
+	public int getLimit() {
+		double current = Double.longBitsToDouble(limit.get());
+		return current == 0.0 ? config.getConcurrencyLimit().getInitialLimit() : (int) current;
+	}
+
+	public int getInflight() {
+		return inflight.get();
+	}
+
+	private int acquire(String endpoint) {
+		int current;
+		int permitted;
+		do {
+			current = inflight.get();
+			permitted = getLimit();
+			if (current >= permitted) {
+				Metrics.counter("qslv.concurrency.rejected", "endpoint", endpoint).increment();
+				log.debug("acquire {} shed at {} in flight.", endpoint, current);
+				throw new ConcurrencyLimitExceededException(permitted, config.getConcurrencyLimit().getRetryAfterSeconds());
+			}
+		} while (false == inflight.compareAndSet(current, current + 1));
+		return current + 1;
+	}
+
+	/**
+	 * Fold one completed call into the long-run latency and the limit. Both are updated by
+	 * compare-and-set so completing calls never wait on each other; a call that loses a race
+	 * recomputes from the value that won.
+	 */
+	private void sample(long rtt_ns, int inflight, boolean dropped) {
+		ConfigProperties.ConcurrencyLimit settings = config.getConcurrencyLimit();
+		if (dropped) {
+			update(limit, current -> clamp(settings, initial(settings, current) * BACKOFF_RATIO));
+			return;
+		}
+		double rtt = Math.max(1.0, rtt_ns);
+		double longRtt = update(longRtt_ns, average -> {
+			double next = (average == 0.0) ? rtt : average + (rtt - average) / LONG_WINDOW;
+			// latency has settled well below the long-run average, let the average catch up
+			return (next / rtt > 2.0) ? next * 0.95 : next;
+		});
+		double gradient = Math.max(0.5, Math.min(1.0, settings.getTolerance() * longRtt / rtt));
+		update(limit, stored -> {
+			double current = initial(settings, stored);
+			if (inflight < current / 2.0) {
+				return stored;
+			}
+			double target = current * gradient + Math.sqrt(current);
+			return clamp(settings, current * (1.0 - settings.getSmoothing()) + target * settings.getSmoothing());
+		});
+	}
+
+	private static double initial(ConfigProperties.ConcurrencyLimit settings, double stored) {
+		return (stored == 0.0) ? settings.getInitialLimit() : stored;
+	}
+
+	private static double clamp(ConfigProperties.ConcurrencyLimit settings, double next) {
+		return Math.max(settings.getMinLimit(), Math.min(settings.getMaxLimit(), next));
+	}
+
+	private static double update(AtomicLong bits, DoubleUnaryOperator function) {
+		long prev;
+		double next;
+		do {
+			prev = bits.get();
+			next = function.applyAsDouble(Double.longBitsToDouble(prev));
+		} while (false == bits.compareAndSet(prev, Double.doubleToRawLongBits(next)));
+		return next;
+	}
+}
@@ -1,5 +1,8 @@
 package qslv.transaction.rest;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
@@ -11,7 +14,25 @@ import qslv.util.EnableQuickSilver;
 public class ConfigProperties {
 	private String aitid = "78234";
 	private int port;
-
+	private boolean conditionalPosting = false;
+	private boolean conflictIdempotency = false;
+	private boolean reservationStatus = false;
+	private final AccountQueue accountQueue = new AccountQueue();
+	private final GroupCommit groupCommit = new GroupCommit();
+	private final IdempotencyCache idempotencyCache = new IdempotencyCache();
+	private final RequestFilter requestFilter = new RequestFilter();
+	private final ReservationIndex reservationIndex = new ReservationIndex();
+	private final ReservationSweeper reservationSweeper = new ReservationSweeper();
+	private final Bulk bulk = new Bulk();
+	private final History history = new History();
+	private final BalanceInquiry balanceInquiry = new BalanceInquiry();
+	private final BalanceCache balanceCache = new BalanceCache();
+	private final TransactionRetry transactionRetry = new TransactionRetry();
+	private final Contention contention = new Contention();
+	private final VirtualThreads virtualThreads = new VirtualThreads();
+	private final ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+	private final Bulkhead bulkhead = new Bulkhead();
+	private final RequestDeadline requestDeadline = new RequestDeadline();
 
 	public String getAitid() {
 		return aitid;
@@ -28,5 +49,635 @@ public class ConfigProperties {
 	public void setPort(int port) {
 		this.port = port;
 	}
-	
+
+	public boolean isConditionalPosting() {
+		return conditionalPosting;
+	}
+
+	public void setConditionalPosting(boolean conditionalPosting) {
+		this.conditionalPosting = conditionalPosting;
+	}
+
+	public boolean isConflictIdempotency() {
+		return conflictIdempotency;
+	}
+
+	public void setConflictIdempotency(boolean conflictIdempotency) {
+		this.conflictIdempotency = conflictIdempotency;
+	}
+
+	public boolean isReservationStatus() {
+		return reservationStatus;
+	}
+
+	public void setReservationStatus(boolean reservationStatus) {
+		this.reservationStatus = reservationStatus;
+	}
+
+	public AccountQueue getAccountQueue() {
+		return accountQueue;
+	}
+
+	public GroupCommit getGroupCommit() {
+		return groupCommit;
+	}
+
+	public IdempotencyCache getIdempotencyCache() {
+		return idempotencyCache;
+	}
+
+	public RequestFilter getRequestFilter() {
+		return requestFilter;
+	}
+
+	public ReservationIndex getReservationIndex() {
+		return reservationIndex;
+	}
+
+	public ReservationSweeper getReservationSweeper() {
+		return reservationSweeper;
+	}
+
+	public Bulk getBulk() {
+		return bulk;
+	}
+
+	public History getHistory() {
+		return history;
+	}
+
+	public BalanceInquiry getBalanceInquiry() {
+		return balanceInquiry;
+	}
+
+	public BalanceCache getBalanceCache() {
+		return balanceCache;
+	}
+
+	public TransactionRetry getTransactionRetry() {
+		return transactionRetry;
+	}
+
+	public Contention getContention() {
+		return contention;
+	}
+
+	public VirtualThreads getVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public ConcurrencyLimit getConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+
+	public Bulkhead getBulkhead() {
+		return bulkhead;
+	}
+
+	public RequestDeadline getRequestDeadline() {
+		return requestDeadline;
+	}
+
+	/**
+	 * qslv.account-queue.* Serialize postings per account inside this instance.
+	 */
+	public static class AccountQueue {
+		private boolean enabled = false;
+		private int maxBatch = 50;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxBatch() {
+			return maxBatch;
+		}
+
+		public void setMaxBatch(int maxBatch) {
+			this.maxBatch = maxBatch;
+		}
+	}
+
+	/**
+	 * qslv.group-commit.* Commit concurrent POST /Transaction requests together.
+	 */
+	public static class GroupCommit {
+		private boolean enabled = false;
+		private long windowMicros = 300L;
+		private int maxBatch = 64;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public long getWindowMicros() {
+			return windowMicros;
+		}
+
+		public void setWindowMicros(long windowMicros) {
+			this.windowMicros = windowMicros;
+		}
+
+		public int getMaxBatch() {
+			return maxBatch;
+		}
+
+		public void setMaxBatch(int maxBatch) {
+			this.maxBatch = maxBatch;
+		}
+	}
+
+	/**
+	 * qslv.idempotency-cache.* Answer retries from the results of recently committed requests.
+	 */
+	public static class IdempotencyCache {
+		private boolean enabled = false;
+		private int maxEntries = 100000;
+		private long ttlMillis = 60000L;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxEntries() {
+			return maxEntries;
+		}
+
+		public void setMaxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+
+		public long getTtlMillis() {
+			return ttlMillis;
+		}
+
+		public void setTtlMillis(long ttlMillis) {
+			this.ttlMillis = ttlMillis;
+		}
+	}
+
+	/**
+	 * qslv.request-filter.* Skip the idempotency query for request_uuids this instance has not seen.
+	 */
+	public static class RequestFilter {
+		private boolean enabled = false;
+		private long memoryBytes = 4L * 1024L * 1024L;
+		private double falsePositiveRate = 0.01;
+		private int buckets = 6;
+		private int bucketSeconds = 60;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public long getMemoryBytes() {
+			return memoryBytes;
+		}
+
+		public void setMemoryBytes(long memoryBytes) {
+			this.memoryBytes = memoryBytes;
+		}
+
+		public double getFalsePositiveRate() {
+			return falsePositiveRate;
+		}
+
+		public void setFalsePositiveRate(double falsePositiveRate) {
+			this.falsePositiveRate = falsePositiveRate;
+		}
+
+		public int getBuckets() {
+			return buckets;
+		}
+
+		public void setBuckets(int buckets) {
+			this.buckets = buckets;
+		}
+
+		public int getBucketSeconds() {
+			return bucketSeconds;
+		}
+
+		public void setBucketSeconds(int bucketSeconds) {
+			this.bucketSeconds = bucketSeconds;
+		}
+	}
+
+	/**
+	 * qslv.reservation-index.* Finalize reservations created by this instance without looking them up.
+	 */
+	public static class ReservationIndex {
+		private boolean enabled = false;
+		private int maxEntries = 100000;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxEntries() {
+			return maxEntries;
+		}
+
+		public void setMaxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+	}
+
+	/**
+	 * qslv.reservation-sweeper.* Cancel reservations left open longer than the time to live.
+	 */
+	public static class ReservationSweeper {
+		private boolean enabled = false;
+		private long ttlSeconds = 7L * 24L * 60L * 60L;
+		private int batchSize = 500;
+		private int maxBatches = 200;
+		private long intervalMillis = 60000L;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public long getTtlSeconds() {
+			return ttlSeconds;
+		}
+
+		public void setTtlSeconds(long ttlSeconds) {
+			this.ttlSeconds = ttlSeconds;
+		}
+
+		public int getBatchSize() {
+			return batchSize;
+		}
+
+		public void setBatchSize(int batchSize) {
+			this.batchSize = batchSize;
+		}
+
+		public int getMaxBatches() {
+			return maxBatches;
+		}
+
+		public void setMaxBatches(int maxBatches) {
+			this.maxBatches = maxBatches;
+		}
+
+		public long getIntervalMillis() {
+			return intervalMillis;
+		}
+
+		public void setIntervalMillis(long intervalMillis) {
+			this.intervalMillis = intervalMillis;
+		}
+	}
+
+	/**
+	 * qslv.bulk.* POST /Transactions limits.
+	 */
+	public static class Bulk {
+		private int maxItems = 50000;
+		private int maxBatch = 1000;
+
+		public int getMaxItems() {
+			return maxItems;
+		}
+
+		public void setMaxItems(int maxItems) {
+			this.maxItems = maxItems;
+		}
+
+		public int getMaxBatch() {
+			return maxBatch;
+		}
+
+		public void setMaxBatch(int maxBatch) {
+			this.maxBatch = maxBatch;
+		}
+	}
+
+	/**
+	 * qslv.history.* GET /Account/{id}/Transactions page sizes and the export fetch size.
+	 */
+	public static class History {
+		private int defaultPageSize = 100;
+		private int maxPageSize = 1000;
+		private int exportFetchSize = 500;
+
+		public int getDefaultPageSize() {
+			return defaultPageSize;
+		}
+
+		public void setDefaultPageSize(int defaultPageSize) {
+			this.defaultPageSize = defaultPageSize;
+		}
+
+		public int getMaxPageSize() {
+			return maxPageSize;
+		}
+
+		public void setMaxPageSize(int maxPageSize) {
+			this.maxPageSize = maxPageSize;
+		}
+
+		public int getExportFetchSize() {
+			return exportFetchSize;
+		}
+
+		public void setExportFetchSize(int exportFetchSize) {
+			this.exportFetchSize = exportFetchSize;
+		}
+	}
+
+	/**
+	 * qslv.balance-inquiry.* GET /Account/{id}/Balance. With a max staleness above zero the
+	 * balance is read as of a recent time, and may lag the latest posting by up to that long.
+	 */
+	public static class BalanceInquiry {
+		private long maxStalenessMillis = 0L;
+
+		public long getMaxStalenessMillis() {
+			return maxStalenessMillis;
+		}
+
+		public void setMaxStalenessMillis(long maxStalenessMillis) {
+			this.maxStalenessMillis = maxStalenessMillis;
+		}
+	}
+
+	/**
+	 * qslv.balance-cache.* Per-instance versioned cache of account balances.
+	 */
+	public static class BalanceCache {
+		private boolean enabled = false;
+		private int maxEntries = 100000;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxEntries() {
+			return maxEntries;
+		}
+
+		public void setMaxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+	}
+
+	/**
+	 * qslv.transaction-retry.* Retry of serialization failures. Each call adds budget-ratio
+	 * of a retry to a budget holding at most budget-max-retries.
+	 */
+	public static class TransactionRetry {
+		private boolean enabled = false;
+		private int maxRetries = 5;
+		private long initialBackoffMillis = 5L;
+		private long maxBackoffMillis = 500L;
+		private double budgetRatio = 0.2;
+		private long budgetMaxRetries = 100L;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxRetries() {
+			return maxRetries;
+		}
+
+		public void setMaxRetries(int maxRetries) {
+			this.maxRetries = maxRetries;
+		}
+
+		public long getInitialBackoffMillis() {
+			return initialBackoffMillis;
+		}
+
+		public void setInitialBackoffMillis(long initialBackoffMillis) {
+			this.initialBackoffMillis = initialBackoffMillis;
+		}
+
+		public long getMaxBackoffMillis() {
+			return maxBackoffMillis;
+		}
+
+		public void setMaxBackoffMillis(long maxBackoffMillis) {
+			this.maxBackoffMillis = maxBackoffMillis;
+		}
+
+		public double getBudgetRatio() {
+			return budgetRatio;
+		}
+
+		public void setBudgetRatio(double budgetRatio) {
+			this.budgetRatio = budgetRatio;
+		}
+
+		public long getBudgetMaxRetries() {
+			return budgetMaxRetries;
+		}
+
+		public void setBudgetMaxRetries(long budgetMaxRetries) {
+			this.budgetMaxRetries = budgetMaxRetries;
+		}
+	}
+
+	/**
+	 * qslv.contention.* Per-account lock contention tracking of the capacity hottest accounts.
+	 */
+	public static class Contention {
+		private boolean enabled = false;
+		private int capacity = 64;
+		private long decayMillis = 60000L;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getCapacity() {
+			return capacity;
+		}
+
+		public void setCapacity(int capacity) {
+			this.capacity = capacity;
+		}
+
+		public long getDecayMillis() {
+			return decayMillis;
+		}
+
+		public void setDecayMillis(long decayMillis) {
+			this.decayMillis = decayMillis;
+		}
+	}
+
+	/**
+	 * qslv.virtual-threads.* Run request handling on virtual threads, on Java 21 and later.
+	 */
+	public static class VirtualThreads {
+		private boolean enabled = false;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+	}
+
+	/**
+	 * qslv.concurrency-limit.* Shed requests beyond a concurrency limit adapted to database latency.
+	 */
+	public static class ConcurrencyLimit {
+		private boolean enabled = false;
+		private int initialLimit = 20;
+		private int minLimit = 4;
+		private int maxLimit = 200;
+		private double tolerance = 1.5;
+		private double smoothing = 0.2;
+		private int retryAfterSeconds = 1;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getInitialLimit() {
+			return initialLimit;
+		}
+
+		public void setInitialLimit(int initialLimit) {
+			this.initialLimit = initialLimit;
+		}
+
+		public int getMinLimit() {
+			return minLimit;
+		}
+
+		public void setMinLimit(int minLimit) {
+			this.minLimit = minLimit;
+		}
+
+		public int getMaxLimit() {
+			return maxLimit;
+		}
+
+		public void setMaxLimit(int maxLimit) {
+			this.maxLimit = maxLimit;
+		}
+
+		public double getTolerance() {
+			return tolerance;
+		}
+
+		public void setTolerance(double tolerance) {
+			this.tolerance = tolerance;
+		}
+
+		public double getSmoothing() {
+			return smoothing;
+		}
+
+		public void setSmoothing(double smoothing) {
+			this.smoothing = smoothing;
+		}
+
+		public int getRetryAfterSeconds() {
+			return retryAfterSeconds;
+		}
+
+		public void setRetryAfterSeconds(int retryAfterSeconds) {
+			this.retryAfterSeconds = retryAfterSeconds;
+		}
+	}
+
+	/**
+	 * qslv.bulkhead.* Split database concurrency between authorizations, postings, bulk and
+	 * inquiries by weight.
+	 */
+	public static class Bulkhead {
+		private boolean enabled = false;
+		private int permits = 10;
+		private final Map<String, Integer> weights = new LinkedHashMap<>();
+
+		public Bulkhead() {
+			weights.put("authorization", 4);
+			weights.put("posting", 3);
+			weights.put("bulk", 1);
+			weights.put("inquiry", 2);
+		}
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getPermits() {
+			return permits;
+		}
+
+		public void setPermits(int permits) {
+			this.permits = permits;
+		}
+
+		public Map<String, Integer> getWeights() {
+			return weights;
+		}
+	}
+
+	/**
+	 * qslv.request-deadline.* Honor the caller's Request-Deadline header.
+	 */
+	public static class RequestDeadline {
+		private boolean enabled = false;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+	}
 }
@@ -0,0 +1,49 @@
+package qslv.transaction.rest;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Operational view of balance lock contention, for routing or sharding hot accounts.
+ * 
+ * GET /Contention/Accounts Query parameter, optional: limit. Responses: HTTP-Status 200
+ * OK Body: the most contended accounts, most lock wait first, with their lock wait, lock
+ * hold time, postings and serialization retries. HTTP-Status 404 Not Found -
+ * qslv.contention.enabled is off
+ */
+@RestController
+public class ContentionController {
+	@Autowired
+	private ConfigProperties props;
+	@Autowired
+	private AccountContention contention;
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		props = configProperties;
+	}
+	public void setAccountContention(AccountContention contention) {
+		this.contention = contention;
+	}
+
+	@GetMapping("/Contention/Accounts")
+	@ResponseStatus(HttpStatus.OK)
+	@ResponseBody
+	public List<AccountContention.HotAccount> getHotAccounts(@RequestParam(required = false) Integer limit) {
+		if (!props.getContention().isEnabled()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Contention tracking is not enabled");
+		}
+		int count = (limit == null) ? 10 : limit;
+		if (count < 1) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be at least 1");
+		}
+		return contention.hottest(count);
+	}
+}
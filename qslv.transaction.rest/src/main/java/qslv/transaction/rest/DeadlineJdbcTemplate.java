@@ -0,0 +1,58 @@
+package qslv.transaction.rest;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * JdbcTemplate that bounds every statement by the RequestDeadline of the calling thread.
+ *
+ * The time left before the deadline becomes the statement's query timeout when it is
+ * shorter than the one already applied. JDBC timeouts are whole seconds, so the time left is
+ * rounded up and a statement may run up to a second past the deadline; a 100 ms budget gets
+ * a 1 s timeout. The next statement then finds the deadline passed and is not executed.
+ *
+ * Only created when qslv.request-deadline.enabled is set. It then replaces Boot's
+ * auto-configured JdbcTemplate, so it applies the spring.jdbc.template.* settings itself.
+ */
+@Component
+@ConditionalOnProperty(prefix = "qslv.request-deadline", name = "enabled", havingValue = "true")
+public class DeadlineJdbcTemplate extends JdbcTemplate {
+
+	public DeadlineJdbcTemplate(DataSource dataSource, JdbcProperties properties) {
+		super(dataSource);
+		JdbcProperties.Template template = properties.getTemplate();
+		setFetchSize(template.getFetchSize());
+		setMaxRows(template.getMaxRows());
+		if (template.getQueryTimeout() != null) {
+			setQueryTimeout((int) template.getQueryTimeout().getSeconds());
+		}
+	}
+
+	@Override
+	protected void applyStatementSettings(Statement stmt) throws SQLException {
+		super.applyStatementSettings(stmt);
+		long remaining = RequestDeadline.remainingMillis();
+		if (remaining == Long.MAX_VALUE) {
+			return;
+		}
+		if (remaining <= 0L) {
+			Metrics.counter("qslv.deadline.expired", "stage", "statement").increment();
+			throw new QueryTimeoutException("Request deadline passed " + (-remaining) + " ms before the statement");
+		}
+		int timeout_s = (int) Math.min(Integer.MAX_VALUE, (remaining + 999L) / 1000L);
+		int current_s = stmt.getQueryTimeout();
+		if (current_s == 0 || timeout_s < current_s) {
+			stmt.setQueryTimeout(timeout_s);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package qslv.transaction.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import qslv.transaction.request.TransactionRequest;
+import qslv.transaction.response.TransactionResponse;
+
+/**
+ * Group commit for POST /Transaction.
+ * 
+ * The first request to arrive opens a batch and becomes its leader. Requests arriving
+ * within the configured window join the batch, until it is full. The leader then posts
+ * the whole batch through TransactionService.createTransactions, in one database
+ * transaction with a single commit, and completes each caller with its own response.
+ * If the batch fails, its requests are posted one at a time.
+ */
+@Component
+public class GroupCommitQueue {
+	private static final Logger log = LoggerFactory.getLogger(GroupCommitQueue.class);
+
+	@Autowired
+	private TransactionService service;
+	@Autowired
+	private ConfigProperties config;
+	@Autowired
+	private TransactionRetry transactionRetry;
+
+	private Batch open = null;
+
+	public void setService(TransactionService service) {
+		this.service = service;
+	}
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	public void setTransactionRetry(TransactionRetry transactionRetry) {
+		this.transactionRetry = transactionRetry;
+	}
+
+	public TransactionResponse createTransaction(TransactionRequest request) {
+		log.trace("createTransaction ENTRY");
+
+		PendingTransaction posting = new PendingTransaction(request);
+		Batch batch;
+		boolean leader;
+		synchronized (this) {
+			leader = (open == null);
+			if (leader) {
+				open = new Batch();
+			}
+			batch = open;
+			batch.postings.add(posting);
+			if (batch.postings.size() >= config.getGroupCommit().getMaxBatch()) {
+				open = null;
+				batch.closed = true;
+				LockSupport.unpark(batch.leader);
+			}
+		}
+
+		if (leader) {
+			long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(config.getGroupCommit().getWindowMicros());
+			long remaining;
+			while (false == batch.closed && (remaining = deadline - System.nanoTime()) > 0L) {
+				LockSupport.parkNanos(this, remaining);
+			}
+			synchronized (this) {
+				if (open == batch) {
+					open = null;
+				}
+				batch.closed = true;
+			}
+			commit(batch.postings);
+		}
+
+		log.trace("createTransaction EXIT");
+		return posting.await();
+	}
+
+	private void commit(List<PendingTransaction> postings) {
+		if (postings.size() == 1) {
+			post(postings.get(0));
+			return;
+		}
+
+		log.debug("commit group of {} postings", postings.size());
+		List<TransactionRequest> requests = new ArrayList<>(postings.size());
+		postings.forEach(posting -> requests.add(posting.request));
+		try {
+			List<TransactionResponse> responses = retrying("POST/Transaction", () -> service.createTransactions(requests));
+			for (int ii = 0; ii < postings.size(); ii++) {
+				postings.get(ii).complete(responses.get(ii));
+			}
+		} catch (RuntimeException ex) {
+			log.warn("commit group of {} failed, posting individually. {}", postings.size(), ex.getLocalizedMessage());
+			postings.forEach(this::post);
+		}
+	}
+
+	private void post(PendingTransaction posting) {
+		try {
+			posting.complete(retrying("POST/Transaction", () -> service.createTransaction(posting.request)));
+		} catch (RuntimeException ex) {
+			posting.fail(ex);
+		}
+	}
+
+	/**
+	 * Run the service call, retrying serialization failures when qslv.transaction-retry is
+	 * enabled. The call may post other callers' requests, so it runs without the request
+	 * deadline of the thread that happens to run it.
+	 */
+	private <T> T retrying(String endpoint, Supplier<T> call) {
+		return RequestDeadline.with(null, () -> {
+			if (config.getTransactionRetry().isEnabled()) {
+				return transactionRetry.execute(endpoint, call);
+			}
+			return call.get();
+		});
+	}
+
+	private static class Batch {
+		final Thread leader = Thread.currentThread();
+		final List<PendingTransaction> postings = new ArrayList<>();
+		volatile boolean closed = false;
+	}
+}
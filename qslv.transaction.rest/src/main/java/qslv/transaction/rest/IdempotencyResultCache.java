@@ -0,0 +1,127 @@
+package qslv.transaction.rest;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import qslv.transaction.resource.TransactionResource;
+
+/**
+ * Remembers the committed result of recent requests, keyed by request_uuid and account_id,
+ * so a retry can be answered without the idempotency query.
+ *
+ * Entries are only added once the posting transaction commits, expire after a fixed time
+ * to live, and the oldest entries are dropped once the cache holds its maximum number of
+ * entries. Lookups are counted as hits and misses.
+ */
+@Component
+public class IdempotencyResultCache {
+	private static final Logger log = LoggerFactory.getLogger(IdempotencyResultCache.class);
+
+	@Autowired
+	private ConfigProperties config;
+
+	private final Counter hits = Metrics.counter("qslv.idempotency.cache", "result", "hit");
+	private final Counter misses = Metrics.counter("qslv.idempotency.cache", "result", "miss");
+
+	// insertion ordered; with a fixed time to live the eldest entry is also the first to expire
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>() {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > config.getIdempotencyCache().getMaxEntries();
+		}
+	};
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	/**
+	 * @return the committed transactions of the request, or null when not cached
+	 */
+	public List<TransactionResource> get(UUID request_uuid, String accountNumber) {
+		long now = System.currentTimeMillis();
+		Entry entry;
+		synchronized (entries) {
+			String key = key(request_uuid, accountNumber);
+			entry = entries.get(key);
+			if (entry != null && entry.expires_ms <= now) {
+				entries.remove(key);
+				entry = null;
+			}
+		}
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		log.debug("IdempotencyResultCache hit for {}", request_uuid);
+		return entry.transactions;
+	}
+
+	/**
+	 * Cache the transactions of the request once the current database transaction commits,
+	 * or immediately when there is none.
+	 */
+	public void put(UUID request_uuid, String accountNumber, List<TransactionResource> transactions) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status == TransactionSynchronization.STATUS_COMMITTED) {
+						store(request_uuid, accountNumber, transactions);
+					}
+				}
+			});
+		} else {
+			store(request_uuid, accountNumber, transactions);
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	private void store(UUID request_uuid, String accountNumber, List<TransactionResource> transactions) {
+		long now = System.currentTimeMillis();
+		Entry entry = new Entry(transactions, now + config.getIdempotencyCache().getTtlMillis());
+		synchronized (entries) {
+			Iterator<Entry> eldest = entries.values().iterator();
+			while (eldest.hasNext() && eldest.next().expires_ms <= now) {
+				eldest.remove();
+			}
+			String key = key(request_uuid, accountNumber);
+			entries.remove(key);
+			entries.put(key, entry);
+		}
+	}
+
+	private static String key(UUID request_uuid, String accountNumber) {
+		return request_uuid + "/" + accountNumber;
+	}
+
+	private static class Entry {
+		final List<TransactionResource> transactions;
+		final long expires_ms;
+
+		Entry(List<TransactionResource> transactions, long expires_ms) {
+			this.transactions = transactions;
+			this.expires_ms = expires_ms;
+		}
+	}
+}
@@ -4,8 +4,18 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,9 +25,8 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
@@ -62,14 +71,46 @@ public class JdbcDao {
 		return runningBalance_am;
 	}
 
+	/**
+	 * selectBalance Lookup the running balance from the account_balance table without
+	 * locking it, for inquiries. Must not run inside a transaction.
+	 * 
+	 * A current read still waits on a posting's uncommitted write to the row, and pushes
+	 * later postings to the row to a newer timestamp. With a max staleness the read is
+	 * served as of a slightly earlier time by the nearest replica that has it, and does
+	 * neither.
+	 * 
+	 * @param account_id the account to lookup
+	 * @param maxStaleness_ms how out of date the balance may be, or 0 for the latest
+	 * @return The running balance for the account, 0 when there is none
+	 */
+	public final static String getBalanceNoLock_sql = "SELECT runningBalance_am from account_balance where account_id = ?;";
+	public final static String getBalanceAsOf_sql = "SELECT runningBalance_am from account_balance AS OF SYSTEM TIME with_max_staleness('";
+	public final static String getBalanceAsOf_suffix_sql = "ms') where account_id = ?;";
+
+	@ExternalResourceSLI(value="jdbc::selectBalance", ait = "88888", remoteFailures= {DataAccessException.class})
+	public long selectBalance(final String account_id, long maxStaleness_ms) {
+		log.trace("selectBalance ENTRY");
+
+		String sql = (maxStaleness_ms > 0) ? getBalanceAsOf_sql + maxStaleness_ms + getBalanceAsOf_suffix_sql : getBalanceNoLock_sql;
+		long runningBalance_am = 0;
+		try {
+			runningBalance_am = jdbcTemplate.queryForObject(sql, Long.class, account_id);
+			log.debug("selectBalance Account={} Balance={}", account_id, runningBalance_am);
+		} catch (EmptyResultDataAccessException e) {
+			log.debug("selectBalance Account={} not found", account_id);
+		}
+		return runningBalance_am;
+	}
+
 	/**
 	 * insertTransaction inserts a new non-reservation row into the transaction
-	 * table. Updates the provided resource with the created transaction_uuid.
+	 * table. Assigns the resource a new time-ordered transaction_uuid.
 	 * 
 	 * @param resource The transaction resource to be inserted
 	 */
-	public final static String insert_transaction_sql = "INSERT INTO transaction(request_uuid, account_id, debitCard_id, transaction_am, "
-			+ "transactionType_cd, runningBalance_am, transactionMetaData_json) VALUES (?,?,?,?,?,?,?);";
+	public final static String insert_transaction_sql = "INSERT INTO transaction(transaction_uuid, request_uuid, account_id, debitCard_id, transaction_am, "
+			+ "transactionType_cd, runningBalance_am, transactionMetaData_json) VALUES (?,?,?,?,?,?,?,?);";
 
 	@ExternalResourceSLI(value="jdbc::insertTransaction", ait = "88888", remoteFailures= {DataAccessException.class})
 	@Transactional
@@ -78,46 +119,204 @@ public class JdbcDao {
 		log.trace("insertTransaction ENTRY");
 
 		// Insert Transaction
-		KeyHolder keyHolder = new GeneratedKeyHolder();
-
-		jdbcTemplate.update(new PreparedStatementCreator() {
+		resource.setTransactionUuid(TimeOrderedUuid.generate());
+		int rowsInserted = jdbcTemplate.update(new PreparedStatementCreator() {
 			@Override
 			public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
-				PreparedStatement ps = connection.prepareStatement(insert_transaction_sql,
-						new String[] { "transaction_uuid" });
-				ps.setObject(1, resource.getRequestUuid());
-				ps.setObject(2, resource.getAccountNumber());
-				ps.setObject(3, resource.getDebitCardNumber());
-				ps.setObject(4, resource.getTransactionAmount());
-				ps.setObject(5, resource.getTransactionTypeCode());
-				ps.setObject(6, resource.getRunningBalanceAmount());
-				ps.setObject(7, resource.getTransactionMetaDataJson());
+				PreparedStatement ps = connection.prepareStatement(insert_transaction_sql);
+				ps.setObject(1, resource.getTransactionUuid());
+				ps.setObject(2, resource.getRequestUuid());
+				ps.setObject(3, resource.getAccountNumber());
+				ps.setObject(4, resource.getDebitCardNumber());
+				ps.setObject(5, resource.getTransactionAmount());
+				ps.setObject(6, resource.getTransactionTypeCode());
+				ps.setObject(7, resource.getRunningBalanceAmount());
+				ps.setObject(8, resource.getTransactionMetaDataJson());
 				return ps;
 			}
-		}, keyHolder);
+		});
 
-		try {
-			resource.setTransactionUuid( (UUID) keyHolder.getKeys().get("transaction_uuid") );
-			log.debug("insertTransaction UUID {}", resource.getTransactionUuid().toString());
+		if (rowsInserted != 1) {
+			log.error("insertTransaction, ERROR={} rows inserted, SQL={}", rowsInserted, insert_transaction_sql);
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+					String.format("%d (!= 1) transaction rows inserted.", rowsInserted));
 		}
-		catch (Exception e) {
-			log.error("putTransaction, transaction_uuid not returned from insert statement. %s",
-					insert_transaction_sql);
+		log.debug("insertTransaction UUID {}", resource.getTransactionUuid().toString());
+	}
+
+	/**
+	 * insertTransactions inserts several rows into the transaction table with one
+	 * multi-row statement. Assigns each provided resource a new time-ordered
+	 * transaction_uuid. Rows sharing a request_uuid and account_id are numbered
+	 * as legs in list order.
+	 *
+	 * @param resources The transaction resources to be inserted
+	 */
+	public final static String insert_transactions_sql = "INSERT INTO transaction(transaction_uuid, request_uuid, account_id, debitCard_id, transaction_am, "
+			+ "transactionType_cd, runningBalance_am, reservation_uuid, transactionMetaData_json, leg) VALUES ";
+	public final static String insert_transactions_values_sql = "(?,?,?,?,?,?,?,?,?,?)";
+	public final static String on_conflict_do_nothing_sql = " ON CONFLICT (request_uuid, account_id, leg) DO NOTHING";
+
+	@ExternalResourceSLI(value="jdbc::insertTransactions", ait = "88888", remoteFailures= {DataAccessException.class})
+	@Transactional
+	public void insertTransactions(List<TransactionResource> resources) {
+		log.trace("insertTransactions ENTRY");
+		if (resources.isEmpty()) {
+			return;
+		}
+
+		int rowsInserted = insertRows(resources, false);
+		if (rowsInserted != resources.size()) {
+			log.error("insertTransactions, {} rows inserted for {} resources.", rowsInserted, resources.size());
 			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
-					String.format("transaction_uuid not returned."));
+					String.format("%d transaction rows inserted for %d resources.", rowsInserted, resources.size()));
+		}
+		log.debug("insertTransactions EXIT - {} rows", resources.size());
+	}
+
+	/**
+	 * insertTransactionIfAbsent inserts a row into the transaction table unless a row
+	 * with the same request_uuid and account_id is already present. Relies on the unique
+	 * (request_uuid, account_id, leg) index instead of a prior lookup.
+	 *
+	 * @param resource The transaction resource to be inserted
+	 * @return false when the request had already been posted and nothing was inserted
+	 */
+	@ExternalResourceSLI(value="jdbc::insertTransactionIfAbsent", ait = "88888", remoteFailures= {DataAccessException.class})
+	@Transactional
+	public boolean insertTransactionIfAbsent(TransactionResource resource) {
+		return insertTransactionsIfAbsent(Collections.singletonList(resource));
+	}
+
+	/**
+	 * insertTransactionsIfAbsent inserts the rows of one request into the transaction table
+	 * unless the request had already been posted. Either all or none of the rows are expected
+	 * to be present.
+	 *
+	 * @param resources The transaction resources to be inserted, all for one request
+	 * @return false when the request had already been posted and nothing was inserted
+	 */
+	@ExternalResourceSLI(value="jdbc::insertTransactionsIfAbsent", ait = "88888", remoteFailures= {DataAccessException.class})
+	@Transactional
+	public boolean insertTransactionsIfAbsent(List<TransactionResource> resources) {
+		log.trace("insertTransactionsIfAbsent ENTRY");
+
+		// ON CONFLICT DO NOTHING reports conflicting rows as not inserted, and the
+		// transaction_uuid is assigned here, so the update count is all that is needed back.
+		int rowsInserted = insertRows(resources, true);
+		if (rowsInserted == 0) {
+			log.debug("insertTransactionsIfAbsent EXIT - Already present for {}", resources.get(0).getRequestUuid());
+			return false;
+		} else if (rowsInserted != resources.size()) {
+			log.error("insertTransactionsIfAbsent, {} rows inserted for {} resources.", rowsInserted, resources.size());
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+					String.format("%d transaction rows inserted for %d resources.", rowsInserted, resources.size()));
+		}
+		log.debug("insertTransactionsIfAbsent EXIT - {} rows", resources.size());
+		return true;
+	}
+
+	private int insertRows(List<TransactionResource> resources, boolean ifAbsent) {
+		return jdbcTemplate.update(insertRowsStatement(resources, ifAbsent ? on_conflict_do_nothing_sql : ""));
+	}
+
+	private PreparedStatementCreator insertRowsStatement(List<TransactionResource> resources, String suffix_sql) {
+		StringBuilder sql = new StringBuilder(insert_transactions_sql);
+		for (int ii = 0; ii < resources.size(); ii++) {
+			sql.append(ii == 0 ? "" : ",").append(insert_transactions_values_sql);
+		}
+		sql.append(suffix_sql).append(";");
+
+		int[] legs = new int[resources.size()];
+		HashMap<String, Integer> legCount = new HashMap<>();
+		for (int ii = 0; ii < resources.size(); ii++) {
+			TransactionResource resource = resources.get(ii);
+			resource.setTransactionUuid(TimeOrderedUuid.generate());
+			legs[ii] = legCount.merge(resource.getRequestUuid() + "/" + resource.getAccountNumber(), 1, Integer::sum) - 1;
+		}
+		return new PreparedStatementCreator() {
+			@Override
+			public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement(sql.toString());
+				int column = 1;
+				for (int ii = 0; ii < resources.size(); ii++) {
+					TransactionResource resource = resources.get(ii);
+					ps.setObject(column++, resource.getTransactionUuid());
+					ps.setObject(column++, resource.getRequestUuid());
+					ps.setObject(column++, resource.getAccountNumber());
+					ps.setObject(column++, resource.getDebitCardNumber());
+					ps.setObject(column++, resource.getTransactionAmount());
+					ps.setObject(column++, resource.getTransactionTypeCode());
+					ps.setObject(column++, resource.getRunningBalanceAmount());
+					ps.setObject(column++, resource.getReservationUuid());
+					ps.setObject(column++, resource.getTransactionMetaDataJson());
+					ps.setObject(column++, legs[ii]);
+				}
+				return ps;
+			}
+		};
+	}
+
+	/**
+	 * insertReleases inserts the cancel rows of expired reservations with one multi-row
+	 * statement, skipping any row that conflicts with a unique index. That covers a release
+	 * already written and a reservation finalized by another instance since it was expired.
+	 *
+	 * @param releases The cancel rows to be inserted
+	 * @return the reservation_uuids whose cancel row was inserted
+	 */
+	public final static String on_any_conflict_returning_sql = " ON CONFLICT DO NOTHING RETURNING reservation_uuid";
+	@ExternalResourceSLI(value="jdbc::insertReleases", ait = "88888", remoteFailures= {DataAccessException.class})
+	public Set<UUID> insertReleases(List<TransactionResource> releases) {
+		log.trace("insertReleases ENTRY");
+
+		HashSet<UUID> released = new HashSet<>();
+		if (releases.isEmpty()) {
+			return released;
+		}
+		jdbcTemplate.query(insertRowsStatement(releases, on_any_conflict_returning_sql), new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				released.add(rs.getObject(1, UUID.class));
+			}
+		});
+
+		log.debug("insertReleases EXIT - {} of {} rows", released.size(), releases.size());
+		return released;
+	}
+
+	/**
+	 * deleteTransactions Delete rows written earlier in the current transaction.
+	 *
+	 * @param transaction_ids the rows to delete
+	 */
+	public final static String deleteTransactions_sql = "DELETE FROM transaction WHERE transaction_uuid IN (";
+	public final static String deleteTransactions_suffix_sql = ");";
+	@ExternalResourceSLI(value="jdbc::deleteTransactions", ait = "88888", remoteFailures= {DataAccessException.class})
+	public void deleteTransactions(Collection<UUID> transaction_ids) {
+		log.trace("deleteTransactions ENTRY");
+		if (transaction_ids.isEmpty()) {
+			return;
+		}
+		StringBuilder sql = new StringBuilder(deleteTransactions_sql);
+		for (int ii = 0; ii < transaction_ids.size(); ii++) {
+			sql.append(ii == 0 ? "?" : ",?");
 		}
+		sql.append(deleteTransactions_suffix_sql);
+
+		int rowsDeleted = jdbcTemplate.update(sql.toString(), transaction_ids.toArray());
+		log.debug("deleteTransactions {} rows", rowsDeleted);
 	}
 
 	/**
 	 * insertReservation inserts a new reservation row into the transaction table.
-	 * Updates the provided resource with the created transaction_uuid.
+	 * Assigns the resource a new time-ordered transaction_uuid.
 	 * 
 	 * @param resource The transaction resource to be inserted
 	 */
 
-	public final static String CommitOrCancelReservation_sql = "INSERT INTO transaction (request_uuid, account_id, debitCard_id, transaction_am, "
+	public final static String CommitOrCancelReservation_sql = "INSERT INTO transaction (transaction_uuid, request_uuid, account_id, debitCard_id, transaction_am, "
 			+ "transactionType_cd, runningBalance_am, reservation_uuid, transactionMetaData_json) "
-			+ "values (?,?,?,?,?,?,?,?);";
+			+ "values (?,?,?,?,?,?,?,?,?);";
 
 	@ExternalResourceSLI(value="jdbc::insertReservation", ait = "88888", remoteFailures= {DataAccessException.class})
 	@Transactional
@@ -126,44 +325,42 @@ public class JdbcDao {
 		log.trace("insertCommitOrCancel ENTRY");
 
 		// Insert Transaction
-		KeyHolder keyHolder = new GeneratedKeyHolder();
-		jdbcTemplate.update(new PreparedStatementCreator() {
+		resource.setTransactionUuid(TimeOrderedUuid.generate());
+		int rowsInserted = jdbcTemplate.update(new PreparedStatementCreator() {
 			@Override
 			public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
-				PreparedStatement ps = connection.prepareStatement(CommitOrCancelReservation_sql,
-						new String[] { "transaction_uuid" });
-				ps.setObject(1, resource.getRequestUuid());
-				ps.setObject(2, resource.getAccountNumber());
-				ps.setObject(3, resource.getDebitCardNumber());
-				ps.setObject(4, resource.getTransactionAmount());
-				ps.setObject(5, resource.getTransactionTypeCode());
-				ps.setObject(6, resource.getRunningBalanceAmount());
-				ps.setObject(7, resource.getReservationUuid());
-				ps.setObject(8, resource.getTransactionMetaDataJson());
+				PreparedStatement ps = connection.prepareStatement(CommitOrCancelReservation_sql);
+				ps.setObject(1, resource.getTransactionUuid());
+				ps.setObject(2, resource.getRequestUuid());
+				ps.setObject(3, resource.getAccountNumber());
+				ps.setObject(4, resource.getDebitCardNumber());
+				ps.setObject(5, resource.getTransactionAmount());
+				ps.setObject(6, resource.getTransactionTypeCode());
+				ps.setObject(7, resource.getRunningBalanceAmount());
+				ps.setObject(8, resource.getReservationUuid());
+				ps.setObject(9, resource.getTransactionMetaDataJson());
 				return ps;
 			}
-		}, keyHolder);
+		});
 
-		try {
-			resource.setTransactionUuid( (UUID) keyHolder.getKeys().get("transaction_uuid") );
-			log.debug("insertCommitOrCancel UUID {}", resource.getTransactionUuid().toString());
-		}
-		catch (Exception e) {
-			log.error("insertCommitOrCancel, transaction_uuid not returned from insert statement. %s",
-					insert_transaction_sql);
+		if (rowsInserted != 1) {
+			log.error("insertCommitOrCancel, ERROR={} rows inserted, SQL={}", rowsInserted, CommitOrCancelReservation_sql);
 			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
-					String.format("transaction_uuid not returned."));
+					String.format("%d (!= 1) transaction rows inserted.", rowsInserted));
 		}
+		log.debug("insertCommitOrCancel UUID {}", resource.getTransactionUuid().toString());
 	}
 
 	/**
 	 * upsertBalance Inserts or updates the account_balance table for the provided
-	 * account_id with the provided running balance.
+	 * account_id with the provided running balance, incrementing the row's version.
 	 * 
 	 * @param account_id        Identifies the account row to update/insert
 	 * @param runningBalance_am the new balance to apply
 	 */
-	public final static String upsert_balance_sql = "UPSERT INTO account_balance (account_id, runningBalance_am) values (?,?);";
+	public final static String upsert_balance_sql = "INSERT INTO account_balance (account_id, runningBalance_am) values (?,?) "
+			+ "ON CONFLICT (account_id) DO UPDATE SET runningBalance_am = excluded.runningBalance_am, "
+			+ "version_no = account_balance.version_no + 1;";
 	@ExternalResourceSLI(value="jdbc::upsertBalance", ait = "88888", remoteFailures= {DataAccessException.class})
 	@Transactional
 	public void upsertBalance(final String account_id, final long runningBalance_am) {
@@ -181,6 +378,224 @@ public class JdbcDao {
 		log.trace("upsertBalance EXIT");
 	}
 
+	/**
+	 * selectVersionedBalanceForUpdate Lookup the running balance and version from the
+	 * account_balance table and lock it
+	 * 
+	 * @param account_id the account to lookup
+	 * @return The current running balance and version, version NO_ROW when there is no row
+	 */
+	public final static String getVersionedBalance_sql = "SELECT runningBalance_am, version_no from account_balance where account_id = ? FOR UPDATE;";
+
+	@Transactional
+	@ExternalResourceSLI(value="jdbc::selectVersionedBalanceForUpdate", ait = "88888", remoteFailures= {DataAccessException.class})
+	public VersionedBalance selectVersionedBalanceForUpdate(final String account_id) {
+		log.trace("selectVersionedBalanceForUpdate ENTRY");
+
+		List<VersionedBalance> balances = jdbcTemplate.query(getVersionedBalance_sql,
+				new RowMapper<VersionedBalance>() {
+					public VersionedBalance mapRow(ResultSet rs, int rowNum) throws SQLException {
+						return new VersionedBalance(rs.getLong(1), rs.getLong(2));
+					}
+				}, account_id);
+		VersionedBalance balance = balances.isEmpty() ? new VersionedBalance(0L, VersionedBalance.NO_ROW) : balances.get(0);
+
+		log.debug("selectVersionedBalanceForUpdate Account={} Balance={} Version={}", account_id,
+				balance.getRunningBalanceAmount(), balance.getVersion());
+		return balance;
+	}
+
+	/**
+	 * updateBalanceIfVersion Updates the account_balance row only when it is still at the
+	 * expected version, incrementing the version.
+	 * 
+	 * @param account_id        Identifies the account row to update
+	 * @param runningBalance_am the new balance to apply
+	 * @param version           the version the new balance was computed from
+	 * @return false when the row has changed since, or does not exist, and nothing was written
+	 */
+	public final static String updateBalanceIfVersion_sql = "UPDATE account_balance SET runningBalance_am = ?, "
+			+ "version_no = version_no + 1 WHERE account_id = ? AND version_no = ?;";
+
+	@ExternalResourceSLI(value="jdbc::updateBalanceIfVersion", ait = "88888", remoteFailures= {DataAccessException.class})
+	@Transactional
+	public boolean updateBalanceIfVersion(final String account_id, final long runningBalance_am, final long version) {
+		log.trace("updateBalanceIfVersion ENTRY");
+
+		int rowsUpdated = jdbcTemplate.update(updateBalanceIfVersion_sql, runningBalance_am, account_id, version);
+		if (rowsUpdated > 1) {
+			log.error("updateBalanceIfVersion, ERROR={} rows updated, SQL={}", rowsUpdated, updateBalanceIfVersion_sql);
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+					String.format("%d (!= 1) account_balance rows updated.", rowsUpdated));
+		}
+
+		log.debug("updateBalanceIfVersion EXIT - Account={} Version={} updated={}", account_id, version, rowsUpdated == 1);
+		return rowsUpdated == 1;
+	}
+
+	/**
+	 * selectBalancesForUpdate Lookup and lock the running balances of several accounts
+	 * with one statement. Accounts without a balance row are reported as zero.
+	 * 
+	 * @param account_ids the accounts to lookup
+	 * @return the running balance per account, in account order
+	 */
+	public final static String getBalances_sql = "SELECT account_id, runningBalance_am from account_balance where account_id IN (";
+	public final static String getBalances_suffix_sql = ") ORDER BY account_id FOR UPDATE;";
+
+	@Transactional
+	@ExternalResourceSLI(value="jdbc::selectBalancesForUpdate", ait = "88888", remoteFailures= {DataAccessException.class})
+	public TreeMap<String, Long> selectBalancesForUpdate(Collection<String> account_ids) {
+		log.trace("selectBalancesForUpdate ENTRY");
+
+		TreeMap<String, Long> balances = new TreeMap<>();
+		account_ids.forEach(account_id -> balances.put(account_id, 0L));
+		if (balances.isEmpty()) {
+			return balances;
+		}
+		StringBuilder sql = new StringBuilder(getBalances_sql);
+		for (int ii = 0; ii < balances.size(); ii++) {
+			sql.append(ii == 0 ? "?" : ",?");
+		}
+		sql.append(getBalances_suffix_sql);
+
+		jdbcTemplate.query(sql.toString(), new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				balances.put(rs.getString(1), rs.getLong(2));
+			}
+		}, balances.keySet().toArray());
+
+		log.debug("selectBalancesForUpdate {} accounts", balances.size());
+		return balances;
+	}
+
+	/**
+	 * upsertBalances Inserts or updates the account_balance rows of several accounts
+	 * with one multi-row statement.
+	 * 
+	 * @param balances the new running balance per account
+	 */
+	public final static String upsert_balances_sql = "INSERT INTO account_balance (account_id, runningBalance_am) values ";
+	public final static String upsert_balances_suffix_sql = " ON CONFLICT (account_id) DO UPDATE SET "
+			+ "runningBalance_am = excluded.runningBalance_am, version_no = account_balance.version_no + 1;";
+	@ExternalResourceSLI(value="jdbc::upsertBalances", ait = "88888", remoteFailures= {DataAccessException.class})
+	@Transactional
+	public void upsertBalances(Map<String, Long> balances) {
+		log.trace("upsertBalances ENTRY");
+		if (balances.isEmpty()) {
+			return;
+		}
+
+		StringBuilder sql = new StringBuilder(upsert_balances_sql);
+		List<Object> parameters = new ArrayList<>(balances.size() * 2);
+		for (Map.Entry<String, Long> balance : balances.entrySet()) {
+			sql.append(parameters.isEmpty() ? "(?,?)" : ",(?,?)");
+			parameters.add(balance.getKey());
+			parameters.add(balance.getValue());
+		}
+		sql.append(upsert_balances_suffix_sql);
+
+		int rowsUpdated = jdbcTemplate.update(sql.toString(), parameters.toArray());
+		if (rowsUpdated != balances.size()) {
+			log.error("upsertBalances, ERROR={} rows updated for {} accounts.", rowsUpdated, balances.size());
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+					String.format("%d account_balance rows updated for %d accounts.", rowsUpdated, balances.size()));
+		}
+		log.trace("upsertBalances EXIT");
+	}
+
+	/**
+	 * postTransactionConditionally Applies the transaction amount to the account_balance
+	 * and inserts the journal row in a single statement. When authorizing against the
+	 * balance the balance row is only updated when it covers the debit; a missing
+	 * account has no funds. Otherwise the balance is upserted unconditionally.
+	 * Assigns the resource a new time-ordered transaction_uuid and its running balance.
+	 *
+	 * @param resource The transaction resource to be posted
+	 * @param authorizeAgainstBalance reject the debit when the balance does not cover it
+	 * @return false when the balance did not cover the debit and nothing was written
+	 */
+	public final static String conditionalDebit_sql = "WITH balance AS (UPDATE account_balance "
+			+ "SET runningBalance_am = runningBalance_am + ?, version_no = version_no + 1 "
+			+ "WHERE account_id = ? AND runningBalance_am >= ? "
+			+ "RETURNING runningBalance_am) "
+			+ "INSERT INTO transaction(transaction_uuid, request_uuid, account_id, debitCard_id, transaction_am, "
+			+ "transactionType_cd, runningBalance_am, transactionMetaData_json) "
+			+ "SELECT ?,?,?,?,?,?,runningBalance_am,? FROM balance RETURNING runningBalance_am;";
+	public final static String unconditionalPost_sql = "WITH balance AS (INSERT INTO account_balance (account_id, runningBalance_am) "
+			+ "VALUES (?,?) ON CONFLICT (account_id) DO UPDATE "
+			+ "SET runningBalance_am = account_balance.runningBalance_am + excluded.runningBalance_am, "
+			+ "version_no = account_balance.version_no + 1 "
+			+ "RETURNING runningBalance_am) "
+			+ "INSERT INTO transaction(transaction_uuid, request_uuid, account_id, debitCard_id, transaction_am, "
+			+ "transactionType_cd, runningBalance_am, transactionMetaData_json) "
+			+ "SELECT ?,?,?,?,?,?,runningBalance_am,? FROM balance RETURNING runningBalance_am;";
+
+	@ExternalResourceSLI(value="jdbc::postTransactionConditionally", ait = "88888", remoteFailures= {DataAccessException.class})
+	public boolean postTransactionConditionally(TransactionResource resource, boolean authorizeAgainstBalance) {
+		log.trace("postTransactionConditionally ENTRY");
+
+		RowMapper<Long> mapper = new RowMapper<Long>() {
+			public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+				return rs.getLong(1);
+			}
+		};
+
+		UUID transaction_uuid = TimeOrderedUuid.generate();
+		List<Long> posted;
+		if (authorizeAgainstBalance) {
+			posted = jdbcTemplate.query(conditionalDebit_sql, mapper,
+					resource.getTransactionAmount(), resource.getAccountNumber(), Math.abs(resource.getTransactionAmount()),
+					transaction_uuid, resource.getRequestUuid(), resource.getAccountNumber(), resource.getDebitCardNumber(),
+					resource.getTransactionAmount(), resource.getTransactionTypeCode(), resource.getTransactionMetaDataJson());
+		} else {
+			posted = jdbcTemplate.query(unconditionalPost_sql, mapper,
+					resource.getAccountNumber(), resource.getTransactionAmount(),
+					transaction_uuid, resource.getRequestUuid(), resource.getAccountNumber(), resource.getDebitCardNumber(),
+					resource.getTransactionAmount(), resource.getTransactionTypeCode(), resource.getTransactionMetaDataJson());
+		}
+
+		if (posted.size() == 0) {
+			log.debug("postTransactionConditionally EXIT - balance does not cover {}", resource.getTransactionAmount());
+			return false;
+		} else if (posted.size() > 1) {
+			log.error("postTransactionConditionally, ERROR={} rows posted for account {}", posted.size(), resource.getAccountNumber());
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+					String.format("%d (!= 1) transaction rows posted.", posted.size()));
+		}
+		resource.setTransactionUuid(transaction_uuid);
+		resource.setRunningBalanceAmount(posted.get(0));
+
+		log.debug("postTransactionConditionally EXIT - UUID {} Balance {}", resource.getTransactionUuid(), resource.getRunningBalanceAmount());
+		return true;
+	}
+
+	/**
+	 * findRecentRequestUuids streams the request_uuids of rows inserted since the given
+	 * time. The time-ordered transaction_uuid bound keeps this a primary key range scan.
+	 *
+	 * @param since_ms epoch milliseconds of the oldest row to return
+	 * @param consumer receives each request_uuid
+	 * @return the number of rows read
+	 */
+	public final static String recentRequestUuids_sql = "SELECT request_uuid FROM transaction "
+			+ "WHERE transaction_uuid >= ? AND insert_tsz >= ?;";
+	@ExternalResourceSLI(value="jdbc::findRecentRequestUuids", ait = "88888", remoteFailures= {DataAccessException.class})
+	public int findRecentRequestUuids(long since_ms, Consumer<UUID> consumer) {
+		log.trace("findRecentRequestUuids ENTRY");
+
+		int[] rows = new int[1];
+		jdbcTemplate.query(recentRequestUuids_sql, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				consumer.accept(rs.getObject(1, UUID.class));
+				rows[0]++;
+			}
+		}, TimeOrderedUuid.lowerBound(since_ms), new Timestamp(since_ms));
+
+		log.debug("findRecentRequestUuids EXIT - {} rows", rows[0]);
+		return rows[0];
+	}
+
 	/**
 	 * verifyReservationOpen Verify that no one has already cancelled or committed
 	 * the reservation.
@@ -205,6 +620,148 @@ public class JdbcDao {
 		log.trace("verifyReservationOpen EXIT - Verified Still Open");
 	}
 
+	/**
+	 * finalizeReservation Mark the reservation committed or cancelled, provided it is
+	 * still open, and return it. The reservation row's reservationStatus_cd is null while
+	 * open and holds the finalizing transaction type afterwards, so this is a single keyed
+	 * update in place of findReservation and verifyReservationOpen.
+	 * 
+	 * @param reservation_id The reservation to finalize
+	 * @param transactionType_cd RESERVATION_COMMIT or RESERVATION_CANCEL
+	 * @return the reservation's account, debit card and amount
+	 */
+	public final static String finalizeReservation_sql = "UPDATE transaction SET reservationStatus_cd=? "
+			+ "WHERE transaction_uuid=? AND transactiontype_cd='RS' AND reservationStatus_cd IS NULL "
+			+ "RETURNING account_id, debitCard_id, transaction_am;";
+	public final static String reservationStatus_sql = "SELECT reservationStatus_cd "
+			+ "from transaction where transactiontype_cd='RS' and transaction_uuid=?;";
+	@ExternalResourceSLI(value="jdbc::finalizeReservation", ait = "88888", remoteFailures= {DataAccessException.class})
+	public TransactionResource finalizeReservation(UUID reservation_id, String transactionType_cd) {
+		log.trace("finalizeReservation ENTRY");
+
+		List<TransactionResource> reservations = jdbcTemplate.query(finalizeReservation_sql,
+				new RowMapper<TransactionResource>() {
+					public TransactionResource mapRow(ResultSet rs, int rowNum) throws SQLException {
+						TransactionResource res = new TransactionResource();
+						res.setAccountNumber(rs.getString(1));
+						res.setDebitCardNumber(rs.getString(2));
+						res.setTransactionAmount(rs.getLong(3));
+						return res;
+					}
+				}, transactionType_cd, reservation_id);
+		if (reservations.size() == 1) {
+			log.trace("finalizeReservation EXIT - Reservation Finalized");
+			return reservations.get(0);
+		}
+
+		// only on failure: tell a missing reservation from one already finalized
+		List<String> status = jdbcTemplate.queryForList(reservationStatus_sql, String.class, reservation_id);
+		if (status.isEmpty()) {
+			log.error("finalizeReservation, reservation_uuid ({}) not found.", reservation_id);
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+					String.format("reservation_uuid (%s) not found.", reservation_id));
+		}
+		log.error("finalizeReservation, reservation_uuid ({}) has already been finalized with {}.", reservation_id, status.get(0));
+		throw new ResponseStatusException(HttpStatus.CONFLICT,
+				String.format("reservation_uuid (%s) has already been finalized.", reservation_id));
+	}
+
+	/**
+	 * expireReservations Mark the oldest open reservations created before the cutoff as
+	 * cancelled and return them. Served by the partial index over open reservations.
+	 * 
+	 * @param before_ms Reservations inserted before this time have expired
+	 * @param limit The most reservations to expire
+	 * @return the expired reservations' transaction_uuid, account, debit card and amount
+	 */
+	public final static String expireReservations_sql = "UPDATE transaction SET reservationStatus_cd='RX' "
+			+ "WHERE transactiontype_cd='RS' AND reservationStatus_cd IS NULL AND insert_tsz < ? "
+			+ "ORDER BY insert_tsz LIMIT ? "
+			+ "RETURNING transaction_uuid, account_id, debitCard_id, transaction_am;";
+	@ExternalResourceSLI(value="jdbc::expireReservations", ait = "88888", remoteFailures= {DataAccessException.class})
+	public List<TransactionResource> expireReservations(long before_ms, int limit) {
+		log.trace("expireReservations ENTRY");
+
+		List<TransactionResource> reservations = jdbcTemplate.query(expireReservations_sql,
+				new RowMapper<TransactionResource>() {
+					public TransactionResource mapRow(ResultSet rs, int rowNum) throws SQLException {
+						TransactionResource res = new TransactionResource();
+						res.setTransactionUuid(rs.getObject(1, UUID.class));
+						res.setAccountNumber(rs.getString(2));
+						res.setDebitCardNumber(rs.getString(3));
+						res.setTransactionAmount(rs.getLong(4));
+						res.setTransactionTypeCode(TransactionResource.RESERVATION);
+						return res;
+					}
+				}, new Timestamp(before_ms), limit);
+
+		log.trace("expireReservations EXIT - {} reservations", reservations.size());
+		return reservations;
+	}
+
+	/**
+	 * selectFinalizations Lookup the commit or cancel rows already written for several
+	 * reservations, with one statement served by the unique reservation_uuid index.
+	 * 
+	 * @param reservation_ids the reservations to lookup
+	 * @return the finalizing transaction type per finalized reservation
+	 */
+	public final static String selectFinalizations_sql = "SELECT reservation_uuid, transactiontype_cd FROM transaction "
+			+ "WHERE transactiontype_cd IN ('RC','RX') AND reservation_uuid IN (";
+	public final static String selectFinalizations_suffix_sql = ");";
+	@ExternalResourceSLI(value="jdbc::selectFinalizations", ait = "88888", remoteFailures= {DataAccessException.class})
+	public Map<UUID, String> selectFinalizations(Collection<UUID> reservation_ids) {
+		log.trace("selectFinalizations ENTRY");
+
+		HashMap<UUID, String> finalizations = new HashMap<>();
+		if (reservation_ids.isEmpty()) {
+			return finalizations;
+		}
+		StringBuilder sql = new StringBuilder(selectFinalizations_sql);
+		for (int ii = 0; ii < reservation_ids.size(); ii++) {
+			sql.append(ii == 0 ? "?" : ",?");
+		}
+		sql.append(selectFinalizations_suffix_sql);
+
+		jdbcTemplate.query(sql.toString(), new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				finalizations.put(rs.getObject(1, UUID.class), rs.getString(2));
+			}
+		}, reservation_ids.toArray());
+
+		log.trace("selectFinalizations EXIT - {} finalized", finalizations.size());
+		return finalizations;
+	}
+
+	/**
+	 * markReservations Set the reservationStatus_cd of several reservations, whatever their
+	 * current status.
+	 * 
+	 * @param transactionType_cd RESERVATION_COMMIT or RESERVATION_CANCEL
+	 * @param reservation_ids the reservations to mark
+	 */
+	public final static String markReservations_sql = "UPDATE transaction SET reservationStatus_cd=? "
+			+ "WHERE transactiontype_cd='RS' AND transaction_uuid IN (";
+	public final static String markReservations_suffix_sql = ");";
+	@ExternalResourceSLI(value="jdbc::markReservations", ait = "88888", remoteFailures= {DataAccessException.class})
+	public void markReservations(String transactionType_cd, Collection<UUID> reservation_ids) {
+		log.trace("markReservations ENTRY");
+		if (reservation_ids.isEmpty()) {
+			return;
+		}
+		StringBuilder sql = new StringBuilder(markReservations_sql);
+		for (int ii = 0; ii < reservation_ids.size(); ii++) {
+			sql.append(ii == 0 ? "?" : ",?");
+		}
+		sql.append(markReservations_suffix_sql);
+
+		List<Object> args = new ArrayList<>(reservation_ids.size() + 1);
+		args.add(transactionType_cd);
+		args.addAll(reservation_ids);
+		int rowsUpdated = jdbcTemplate.update(sql.toString(), args.toArray());
+		log.debug("markReservations {} reservations marked {}", rowsUpdated, transactionType_cd);
+	}
+
 	/**
 	 * findReservation Find the previous reservation and lock the row
 	 * 
@@ -238,44 +795,34 @@ public class JdbcDao {
 	}
 
 	/**
-	 * findRelatedToReservation Get all the transactions from the original Reservation
+	 * findRelatedToReservation Get the Reservation and the commit or cancel that finalized
+	 * it, oldest first, in one round trip. The Reservation is read by primary key, the
+	 * finalization through the unique reservation_uuid index on RC and RX rows.
 	 * 
 	 * @param reservation_id
-	 * @return
+	 * @return the Reservation, followed by its commit or cancel when there is one
 	 */
-	
-	public final static String selectRelatedToReservation_sql = "SELECT b.transaction_uuid, b.request_uuid, b.account_id, b.debitCard_id,"
-		+ " b.transaction_am, b.transactiontype_cd, b.runningbalance_am, b.reservation_uuid, b.transactionmetadata_json, b.insert_tsz"
-		+ "from transaction a, transaction b.request_uuid=a.request_uuid and a.transaction_uuid=? order by insert_tsz asc;";
+	public final static String selectRelatedToReservation_sql = "SELECT transaction_uuid, request_uuid, account_id, debitCard_id, "
+		+ "transaction_am, transactiontype_cd, runningbalance_am, reservation_uuid, transactionmetadata_json, insert_tsz "
+		+ "from transaction where transaction_uuid=? and transactiontype_cd='RS' "
+		+ "UNION ALL SELECT transaction_uuid, request_uuid, account_id, debitCard_id, "
+		+ "transaction_am, transactiontype_cd, runningbalance_am, reservation_uuid, transactionmetadata_json, insert_tsz "
+		+ "from transaction where reservation_uuid=? and transactiontype_cd IN ('RC','RX') "
+		+ "order by insert_tsz asc;";
 	
 	@ExternalResourceSLI(value="jdbc::findRelatedToReservation", ait = "88888", remoteFailures= {DataAccessException.class})
 	public List<TransactionResource> findRelatedToReservation(UUID reservation_id) {
 		log.trace("findRelatedToReservation ENTRY");
 		
 		List<TransactionResource> reservations = jdbcTemplate.query(selectRelatedToReservation_sql,
-				new RowMapper<TransactionResource>() {
-					public TransactionResource mapRow(ResultSet rs, int rowNum) throws SQLException {
-						TransactionResource res = new TransactionResource();
-						res.setTransactionUuid(rs.getObject(1, UUID.class));
-						res.setRequestUuid(rs.getObject(2, UUID.class));
-						res.setAccountNumber(rs.getString(3));
-						res.setDebitCardNumber(rs.getString(4));
-						res.setTransactionAmount(rs.getLong(5));
-						res.setTransactionTypeCode(rs.getString(6));
-						res.setRunningBalanceAmount(rs.getLong(7));
-						res.setReservationUuid(rs.getObject(8, UUID.class));
-						res.setTransactionMetaDataJson(rs.getString(9));
-						res.setInsertTimestamp(rs.getTimestamp(10));
-						return res;
-					}
-				}, reservation_id);
-		if (reservations.size() != 1) {
+				transactionResourceMapper, reservation_id, reservation_id);
+		if (reservations.isEmpty() || !TransactionResource.RESERVATION.equals(reservations.get(0).getTransactionTypeCode())) {
 			log.error("findRelatedToReservation, reservation_uuid ({}) not found.", reservation_id);
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND,
 					String.format("reservation_uuid (%s) not found.", reservation_id));
 		}
 		
-		log.trace("findRelatedToReservation EXIT - Reservation Found");
+		log.trace("findRelatedToReservation EXIT - {} transactions", reservations.size());
 		return reservations;
 	}
 
@@ -319,6 +866,142 @@ public class JdbcDao {
 		log.trace("findTransaction EXIT");
 		return resources.get(0);
 	}
+	/**
+	 * findAccountTransactions Find one page of an account's transactions, newest first.
+	 * Seeks past the cursor on the (account_id, insert_tsz, transaction_uuid) index rather
+	 * than skipping rows, so every page costs the same however deep it is.
+	 * 
+	 * @param account_id the account
+	 * @param from only transactions inserted at or after this time, or null
+	 * @param to only transactions inserted before this time, or null
+	 * @param types only these transaction types, or empty for all
+	 * @param after only transactions older than this position, or null for the first page
+	 * @param limit the most transactions to return
+	 * @return the page, and the cursor after its last transaction when the page is full
+	 */
+	public final static String selectAccountTransactions_sql = "SELECT transaction_uuid, request_uuid, account_id, debitCard_id, transaction_am, "
+			+ "transactiontype_cd, runningbalance_am, reservation_uuid, transactionmetadata_json, insert_tsz "
+			+ "from transaction where account_id=?";
+	public final static String accountTransactionsFrom_sql = " and insert_tsz >= ?";
+	public final static String accountTransactionsTo_sql = " and insert_tsz < ?";
+	public final static String accountTransactionsAfter_sql = " and (insert_tsz, transaction_uuid) < (?, ?)";
+	public final static String accountTransactionsTypes_sql = " and transactiontype_cd IN (";
+	public final static String accountTransactionsOrder_sql = " ORDER BY insert_tsz DESC, transaction_uuid DESC LIMIT ?;";
+
+	@ExternalResourceSLI(value="jdbc::findAccountTransactions", ait = "88888", remoteFailures= {DataAccessException.class})
+	public TransactionPage findAccountTransactions(String account_id, Timestamp from, Timestamp to, List<String> types,
+			TransactionPage.Cursor after, int limit) {
+		log.trace("findAccountTransactions ENTRY");
+
+		StringBuilder sql = new StringBuilder(selectAccountTransactions_sql);
+		List<Object> parameters = new ArrayList<>();
+		appendAccountTransactionFilters(sql, parameters, account_id, from, to, types, after);
+		sql.append(accountTransactionsOrder_sql);
+		// one more than the page to learn whether another page follows
+		parameters.add(limit + 1);
+
+		List<TransactionResource> resources = jdbcTemplate.query(sql.toString(), transactionResourceMapper, parameters.toArray());
+
+		String nextCursor = null;
+		if (resources.size() > limit) {
+			resources = resources.subList(0, limit);
+			TransactionResource last = resources.get(limit - 1);
+			nextCursor = new TransactionPage.Cursor(last.getInsertTimestamp(), last.getTransactionUuid()).encode();
+		}
+
+		log.trace("findAccountTransactions EXIT - {} transactions", resources.size());
+		return new TransactionPage(resources, nextCursor);
+	}
+
+	/**
+	 * streamAccountTransactions Read every matching transaction of an account, newest first,
+	 * handing each to the consumer as it is read rather than collecting them. The statement
+	 * is forward-only with a fetch size, so the driver holds one fetch of rows at a time;
+	 * the driver only fetches incrementally inside a transaction, which the caller opens.
+	 * 
+	 * @param account_id the account
+	 * @param from only transactions inserted at or after this time, or null
+	 * @param to only transactions inserted before this time, or null
+	 * @param types only these transaction types, or empty for all
+	 * @param fetchSize rows per fetch
+	 * @param consumer receives each transaction
+	 * @return the number of rows read
+	 */
+	public final static String accountTransactionsExportOrder_sql = " ORDER BY insert_tsz DESC, transaction_uuid DESC;";
+
+	@ExternalResourceSLI(value="jdbc::streamAccountTransactions", ait = "88888", remoteFailures= {DataAccessException.class})
+	public int streamAccountTransactions(String account_id, Timestamp from, Timestamp to, List<String> types,
+			int fetchSize, Consumer<TransactionResource> consumer) {
+		log.trace("streamAccountTransactions ENTRY");
+
+		StringBuilder sql = new StringBuilder(selectAccountTransactions_sql);
+		List<Object> parameters = new ArrayList<>();
+		appendAccountTransactionFilters(sql, parameters, account_id, from, to, types, null);
+		sql.append(accountTransactionsExportOrder_sql);
+
+		int[] rows = new int[1];
+		jdbcTemplate.query(new PreparedStatementCreator() {
+			public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				ps.setFetchSize(fetchSize);
+				for (int ii = 0; ii < parameters.size(); ii++) {
+					ps.setObject(ii + 1, parameters.get(ii));
+				}
+				return ps;
+			}
+		}, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				consumer.accept(transactionResourceMapper.mapRow(rs, rows[0]++));
+			}
+		});
+
+		log.debug("streamAccountTransactions EXIT - {} rows", rows[0]);
+		return rows[0];
+	}
+
+	private void appendAccountTransactionFilters(StringBuilder sql, List<Object> parameters, String account_id,
+			Timestamp from, Timestamp to, List<String> types, TransactionPage.Cursor after) {
+		parameters.add(account_id);
+		if (from != null) {
+			sql.append(accountTransactionsFrom_sql);
+			parameters.add(from);
+		}
+		if (to != null) {
+			sql.append(accountTransactionsTo_sql);
+			parameters.add(to);
+		}
+		if (after != null) {
+			sql.append(accountTransactionsAfter_sql);
+			parameters.add(after.getInsertTimestamp());
+			parameters.add(after.getTransactionUuid());
+		}
+		if (!types.isEmpty()) {
+			sql.append(accountTransactionsTypes_sql);
+			for (int ii = 0; ii < types.size(); ii++) {
+				sql.append(ii == 0 ? "?" : ",?");
+			}
+			sql.append(")");
+			parameters.addAll(types);
+		}
+	}
+
+	private final RowMapper<TransactionResource> transactionResourceMapper = new RowMapper<TransactionResource>() {
+		public TransactionResource mapRow(ResultSet rs, int rowNum) throws SQLException {
+			TransactionResource res = new TransactionResource();
+			res.setTransactionUuid(rs.getObject(1, UUID.class));
+			res.setRequestUuid(rs.getObject(2, UUID.class));
+			res.setAccountNumber(rs.getString(3));
+			res.setDebitCardNumber(rs.getString(4));
+			res.setTransactionAmount(rs.getLong(5));
+			res.setTransactionTypeCode(rs.getString(6));
+			res.setRunningBalanceAmount(rs.getLong(7));
+			res.setReservationUuid(rs.getObject(8, UUID.class));
+			res.setTransactionMetaDataJson(rs.getString(9));
+			res.setInsertTimestamp(rs.getTimestamp(10));
+			return res;
+		}
+	};
+
 	/**
 	 * checkIdempotency
 	 * 
@@ -327,7 +1010,7 @@ public class JdbcDao {
 	 */
 	public final static String idempotentQuery_sql = "SELECT transaction_uuid, request_uuid, account_id, debitcard_id, "
 			+ "transaction_am, transactiontype_cd, runningbalance_am, reservation_uuid, transactionmetadata_json, "
-			+ "insert_tsz FROM transaction WHERE request_uuid = ? AND account_id = ? order by insert_tsz asc;";
+			+ "insert_tsz FROM transaction WHERE request_uuid = ? AND account_id = ? order by insert_tsz asc, leg asc;";
 	@ExternalResourceSLI(value="jdbc::checkIdempotency", ait = "88888", remoteFailures= {DataAccessException.class})
 	public TransactionResource checkIdempotency(UUID request_uuid, String accountNumber) {
 		log.trace("checkIdempotency ENTRY");
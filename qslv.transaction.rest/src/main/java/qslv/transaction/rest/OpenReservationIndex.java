@@ -0,0 +1,113 @@
+package qslv.transaction.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import qslv.transaction.resource.TransactionResource;
+
+/**
+ * Open reservations created by this instance, keyed by reservation_uuid, so a commit or
+ * cancel can be finalized without findReservation and verifyReservationOpen.
+ *
+ * Reservations are added once the creating transaction commits. Claiming one removes it,
+ * and puts it back if the finalizing transaction rolls back. The index only holds
+ * reservations this instance created, so the unique index on finalized reservation_uuids
+ * still rejects a reservation finalized elsewhere. The oldest entries are dropped once the
+ * index holds its maximum number of entries; those reservations are simply looked up.
+ */
+@Component
+public class OpenReservationIndex {
+	private static final Logger log = LoggerFactory.getLogger(OpenReservationIndex.class);
+
+	@Autowired
+	private ConfigProperties config;
+
+	private final Counter hits = Metrics.counter("qslv.reservation.index", "result", "hit");
+	private final Counter misses = Metrics.counter("qslv.reservation.index", "result", "miss");
+
+	private final LinkedHashMap<UUID, TransactionResource> reservations = new LinkedHashMap<UUID, TransactionResource>() {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<UUID, TransactionResource> eldest) {
+			return size() > config.getReservationIndex().getMaxEntries();
+		}
+	};
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	/**
+	 * Index the reservation once the current database transaction commits, or immediately
+	 * when there is none.
+	 */
+	public void open(TransactionResource reservation) {
+		TransactionResource entry = new TransactionResource();
+		entry.setTransactionUuid(reservation.getTransactionUuid());
+		entry.setAccountNumber(reservation.getAccountNumber());
+		entry.setDebitCardNumber(reservation.getDebitCardNumber());
+		entry.setTransactionAmount(reservation.getTransactionAmount());
+
+		afterCommit(() -> store(entry), null);
+	}
+
+	/**
+	 * Remove the reservation from the index. It is indexed again if the current database
+	 * transaction does not commit.
+	 *
+	 * @return the reservation's account, debit card and amount, or null when not indexed
+	 */
+	public TransactionResource claim(UUID reservation_uuid) {
+		TransactionResource entry;
+		synchronized (reservations) {
+			entry = reservations.remove(reservation_uuid);
+		}
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		log.debug("OpenReservationIndex claimed {}", reservation_uuid);
+		afterCommit(null, () -> store(entry));
+		return entry;
+	}
+
+	public int size() {
+		synchronized (reservations) {
+			return reservations.size();
+		}
+	}
+
+	private void store(TransactionResource entry) {
+		synchronized (reservations) {
+			reservations.put(entry.getTransactionUuid(), entry);
+		}
+	}
+
+	private void afterCommit(Runnable committed, Runnable rolledBack) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					Runnable action = status == TransactionSynchronization.STATUS_COMMITTED ? committed : rolledBack;
+					if (action != null) {
+						action.run();
+					}
+				}
+			});
+		} else if (committed != null) {
+			committed.run();
+		}
+	}
+}
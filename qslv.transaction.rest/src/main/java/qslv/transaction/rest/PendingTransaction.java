@@ -0,0 +1,51 @@
+package qslv.transaction.rest;
+
+import java.util.concurrent.locks.LockSupport;
+
+import qslv.transaction.request.TransactionRequest;
+import qslv.transaction.response.TransactionResponse;
+
+/**
+ * A posting handed to another thread to be applied, and the caller parked waiting for its result.
+ */
+class PendingTransaction {
+	final TransactionRequest request;
+	final Thread owner = Thread.currentThread();
+	private volatile TransactionResponse response;
+	private volatile RuntimeException failure;
+	private volatile boolean done = false;
+
+	PendingTransaction(TransactionRequest request) {
+		this.request = request;
+	}
+
+	boolean isDone() {
+		return done;
+	}
+
+	void complete(TransactionResponse response) {
+		this.response = response;
+		this.done = true;
+		LockSupport.unpark(owner);
+	}
+
+	void fail(RuntimeException failure) {
+		this.failure = failure;
+		this.done = true;
+		LockSupport.unpark(owner);
+	}
+
+	TransactionResponse await() {
+		while (false == done) {
+			LockSupport.park(this);
+		}
+		return get();
+	}
+
+	TransactionResponse get() {
+		if (failure != null) {
+			throw failure;
+		}
+		return response;
+	}
+}
@@ -0,0 +1,24 @@
+package qslv.transaction.rest;
+
+/**
+ * The outcome of one batch of expired reservations. Expired counts the reservations taken
+ * off the open set; released counts those given a cancel row by the batch. The difference
+ * had already been committed or cancelled.
+ */
+public class ReleasedReservations {
+	private final int expired;
+	private final int released;
+
+	public ReleasedReservations(int expired, int released) {
+		this.expired = expired;
+		this.released = released;
+	}
+
+	public int getExpired() {
+		return expired;
+	}
+
+	public int getReleased() {
+		return released;
+	}
+}
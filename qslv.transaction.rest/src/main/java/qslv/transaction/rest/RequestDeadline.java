@@ -0,0 +1,81 @@
+package qslv.transaction.rest;
+
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * The deadline of the request being served on the current thread, from the caller's
+ * Request-Deadline header: epoch milliseconds after which nobody is waiting for the
+ * response. Threads without a deadline are never expired.
+ */
+public final class RequestDeadline {
+	private static final Logger log = LoggerFactory.getLogger(RequestDeadline.class);
+	public static final String HEADER = "Request-Deadline";
+
+	private static final ThreadLocal<Long> deadline = new ThreadLocal<>();
+
+	private RequestDeadline() {
+	}
+
+	/**
+	 * @return the deadline in epoch milliseconds, or null when there is none
+	 */
+	public static Long get() {
+		return deadline.get();
+	}
+
+	public static void set(Long deadline_ms) {
+		if (deadline_ms == null) {
+			deadline.remove();
+		} else {
+			deadline.set(deadline_ms);
+		}
+	}
+
+	/**
+	 * Run the call with the deadline, restoring the thread's own deadline afterwards. A null
+	 * deadline runs the call without one.
+	 */
+	public static <T> T with(Long deadline_ms, Supplier<T> call) {
+		Long previous = deadline.get();
+		set(deadline_ms);
+		try {
+			return call.get();
+		} finally {
+			set(previous);
+		}
+	}
+
+	/**
+	 * @return milliseconds left before the deadline, negative once passed, Long.MAX_VALUE
+	 * when there is none
+	 */
+	public static long remainingMillis() {
+		Long deadline_ms = deadline.get();
+		return (deadline_ms == null) ? Long.MAX_VALUE : deadline_ms - System.currentTimeMillis();
+	}
+
+	public static boolean isExpired() {
+		return remainingMillis() <= 0L;
+	}
+
+	/**
+	 * Abandon the request before the given stage when its deadline has passed.
+	 *
+	 * @throws ResponseStatusException 504 Gateway Timeout when the deadline has passed
+	 */
+	public static void check(String stage) {
+		long remaining = remainingMillis();
+		if (remaining <= 0L) {
+			Metrics.counter("qslv.deadline.expired", "stage", stage).increment();
+			log.warn("Request deadline passed {} ms before {}, abandoning the request.", -remaining, stage);
+			throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Request deadline passed before " + stage);
+		}
+	}
+}
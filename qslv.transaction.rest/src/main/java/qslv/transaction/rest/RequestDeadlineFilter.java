@@ -0,0 +1,55 @@
+package qslv.transaction.rest;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Sets the RequestDeadline for the request thread from the Request-Deadline header, when
+ * qslv.request-deadline is enabled. A malformed header is rejected with 400 Bad Request.
+ */
+@Component
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+	private static final Logger log = LoggerFactory.getLogger(RequestDeadlineFilter.class);
+
+	@Autowired
+	private ConfigProperties config;
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		String header = request.getHeader(RequestDeadline.HEADER);
+		if (!config.getRequestDeadline().isEnabled() || header == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+		long deadline_ms;
+		try {
+			deadline_ms = Long.parseLong(header.trim());
+		} catch (NumberFormatException ex) {
+			log.error("RequestDeadlineFilter Malformed Request. {} is not epoch milliseconds: {}", RequestDeadline.HEADER, header);
+			response.sendError(HttpStatus.BAD_REQUEST.value(), RequestDeadline.HEADER + " must be epoch milliseconds");
+			return;
+		}
+		RequestDeadline.set(deadline_ms);
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			RequestDeadline.set(null);
+		}
+	}
+}
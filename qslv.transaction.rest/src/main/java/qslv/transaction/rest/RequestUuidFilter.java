@@ -0,0 +1,196 @@
+package qslv.transaction.rest;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Rolling Bloom filter of the request_uuids this instance has posted recently.
+ *
+ * The window is split into time buckets, each its own Bloom filter sized from the memory
+ * budget and the target false-positive rate. New request_uuids go into the newest bucket;
+ * a lookup checks them all. When the newest bucket's time is up, or it holds as many
+ * request_uuids as it was sized for, the oldest bucket is cleared and becomes the newest.
+ *
+ * A negative answer only means this instance has not posted the request recently, so
+ * callers still rely on the unique (request_uuid, account_id, leg) index to reject a
+ * request posted elsewhere. Until the warm-up from recent rows completes every lookup
+ * answers "possibly seen".
+ */
+@Component
+public class RequestUuidFilter {
+	private static final Logger log = LoggerFactory.getLogger(RequestUuidFilter.class);
+
+	@Autowired
+	private ConfigProperties config;
+	@Autowired
+	private JdbcDao jdbcDao;
+
+	private final Counter negatives = Metrics.counter("qslv.request.filter", "result", "new");
+	private final Counter positives = Metrics.counter("qslv.request.filter", "result", "possible");
+
+	private volatile Bucket[] buckets;
+	private volatile int newest;
+	private int hashes;
+	private long capacity;
+	private volatile boolean ready = false;
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	public void setJdbcDao(JdbcDao jdbcDao) {
+		this.jdbcDao = jdbcDao;
+	}
+
+	/**
+	 * Size the buckets and load the request_uuids posted within the window.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUp() {
+		if (!config.getRequestFilter().isEnabled()) {
+			return;
+		}
+		initialize();
+		long since = System.currentTimeMillis() - windowMillis();
+		int loaded;
+		try {
+			loaded = jdbcDao.findRecentRequestUuids(since, this::add);
+		} catch (DataAccessException ex) {
+			log.error("RequestUuidFilter warm-up failed, every request will be looked up. {}", ex.getMessage());
+			return;
+		}
+		ready = true;
+		log.info("RequestUuidFilter warmed up with {} request_uuids; {} buckets of {} bits, {} hashes, capacity {} each.",
+				loaded, buckets.length, buckets[0].bits.length() * 64L, hashes, capacity);
+	}
+
+	private synchronized void initialize() {
+		ConfigProperties.RequestFilter settings = config.getRequestFilter();
+		int count = Math.max(1, settings.getBuckets());
+		long bitsPerBucket = Math.max(64L, (settings.getMemoryBytes() * 8L / count) & ~63L);
+		double lnP = Math.log(settings.getFalsePositiveRate());
+		hashes = Math.max(1, (int) Math.round(-lnP / Math.log(2)));
+		capacity = Math.max(1L, (long) (bitsPerBucket * Math.log(2) * Math.log(2) / -lnP));
+
+		Bucket[] created = new Bucket[count];
+		long now = System.currentTimeMillis();
+		for (int ii = 0; ii < count; ii++) {
+			created[ii] = new Bucket((int) (bitsPerBucket / 64L), now);
+		}
+		newest = 0;
+		buckets = created;
+	}
+
+	/**
+	 * @return false only when the request_uuid has definitely not been posted by this
+	 * instance within the window
+	 */
+	public boolean mightContain(UUID request_uuid) {
+		if (!ready) {
+			return true;
+		}
+		rotateIfDue();
+		long h1 = mix(request_uuid.getMostSignificantBits() ^ Long.rotateLeft(request_uuid.getLeastSignificantBits(), 32));
+		long h2 = mix(h1 ^ request_uuid.getLeastSignificantBits()) | 1L;
+		for (Bucket bucket : buckets) {
+			if (bucket.contains(h1, h2, hashes)) {
+				positives.increment();
+				return true;
+			}
+		}
+		negatives.increment();
+		return false;
+	}
+
+	public void add(UUID request_uuid) {
+		if (buckets == null) {
+			return;
+		}
+		rotateIfDue();
+		long h1 = mix(request_uuid.getMostSignificantBits() ^ Long.rotateLeft(request_uuid.getLeastSignificantBits(), 32));
+		long h2 = mix(h1 ^ request_uuid.getLeastSignificantBits()) | 1L;
+		Bucket bucket = buckets[newest];
+		bucket.add(h1, h2, hashes);
+		if (bucket.count.incrementAndGet() >= capacity) {
+			rotate(bucket);
+		}
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	private long windowMillis() {
+		return config.getRequestFilter().getBuckets() * config.getRequestFilter().getBucketSeconds() * 1000L;
+	}
+
+	private void rotateIfDue() {
+		Bucket bucket = buckets[newest];
+		if (System.currentTimeMillis() - bucket.started_ms >= config.getRequestFilter().getBucketSeconds() * 1000L) {
+			rotate(bucket);
+		}
+	}
+
+	private synchronized void rotate(Bucket expected) {
+		if (buckets[newest] != expected) {
+			return;
+		}
+		int oldest = (newest + 1) % buckets.length;
+		buckets[oldest] = new Bucket(expected.bits.length(), System.currentTimeMillis());
+		newest = oldest;
+		log.debug("RequestUuidFilter rotated to bucket {} after {} request_uuids", oldest, expected.count.get());
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
+	}
+
+	private static class Bucket {
+		final AtomicLongArray bits;
+		final AtomicInteger count = new AtomicInteger();
+		final long started_ms;
+
+		Bucket(int words, long started_ms) {
+			this.bits = new AtomicLongArray(words);
+			this.started_ms = started_ms;
+		}
+
+		void add(long h1, long h2, int hashes) {
+			long size = bits.length() * 64L;
+			for (int ii = 0; ii < hashes; ii++) {
+				long bit = Math.floorMod(h1 + ii * h2, size);
+				int word = (int) (bit >>> 6);
+				long mask = 1L << bit;
+				long current;
+				do {
+					current = bits.get(word);
+				} while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+			}
+		}
+
+		boolean contains(long h1, long h2, int hashes) {
+			long size = bits.length() * 64L;
+			for (int ii = 0; ii < hashes; ii++) {
+				long bit = Math.floorMod(h1 + ii * h2, size);
+				if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package qslv.transaction.rest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Cancels reservations that have been open longer than the configured time to live.
+ *
+ * Each run releases expired reservations in batches, one database transaction per batch,
+ * until a batch expires fewer reservations than its size or the run has used its batches. Requires reservation
+ * status (qslv.reservation-status), which is what tells an open reservation from one
+ * that has been committed or cancelled.
+ */
+@Component
+public class ReservationSweeper {
+	private static final Logger log = LoggerFactory.getLogger(ReservationSweeper.class);
+
+	@Autowired
+	private ConfigProperties config;
+	@Autowired
+	private TransactionService service;
+
+	private final Counter released = Metrics.counter("qslv.reservation.sweeper.released");
+	private final Timer batches = Metrics.timer("qslv.reservation.sweeper.batch");
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	public void setService(TransactionService service) {
+		this.service = service;
+	}
+
+	@Scheduled(fixedDelayString = "${qslv.reservation-sweeper.interval-millis:60000}")
+	public void scheduledSweep() {
+		if (!config.getReservationSweeper().isEnabled()) {
+			return;
+		}
+		if (!config.isReservationStatus()) {
+			log.warn("ReservationSweeper requires qslv.reservation-status, not sweeping.");
+			return;
+		}
+		try {
+			sweep(System.currentTimeMillis());
+		} catch (RuntimeException ex) {
+			log.error("ReservationSweeper failed. {}", ex.getMessage());
+		}
+	}
+
+	/**
+	 * @return the number of reservations released
+	 */
+	public int sweep(long now_ms) {
+		ConfigProperties.ReservationSweeper settings = config.getReservationSweeper();
+		long before_ms = now_ms - TimeUnit.SECONDS.toMillis(settings.getTtlSeconds());
+		long started = System.nanoTime();
+		int total = 0;
+
+		for (int batch = 0; batch < settings.getMaxBatches(); batch++) {
+			ReleasedReservations result;
+			long batchStarted = System.nanoTime();
+			try {
+				result = service.releaseExpiredReservations(before_ms, settings.getBatchSize());
+			} catch (DataAccessException ex) {
+				log.warn("ReservationSweeper batch failed after {} reservations. {}", total, ex.getMessage());
+				break;
+			}
+			batches.record(System.nanoTime() - batchStarted, TimeUnit.NANOSECONDS);
+			released.increment(result.getReleased());
+			total += result.getReleased();
+			if (result.getExpired() < settings.getBatchSize()) {
+				break;
+			}
+		}
+
+		if (total > 0) {
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			log.info("ReservationSweeper released {} reservations in {} ms.", total, elapsed);
+		}
+		return total;
+	}
+}
@@ -0,0 +1,41 @@
+package qslv.transaction.rest;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates version 7 (time-ordered) UUIDs for transaction_uuid.
+ *
+ * The high 48 bits hold the Unix epoch milliseconds and the next 12 bits a counter, so ids
+ * generated by this instance are strictly increasing even within one millisecond. The
+ * remaining 62 bits are random. If the counter runs out within a millisecond the next
+ * millisecond is borrowed rather than repeating a value.
+ */
+public final class TimeOrderedUuid {
+	private static final AtomicLong lastTick = new AtomicLong();
+
+	private TimeOrderedUuid() {
+	}
+
+	public static UUID generate() {
+		long now = System.currentTimeMillis() << 12;
+		long tick;
+		long previous;
+		do {
+			previous = lastTick.get();
+			tick = Math.max(now, previous + 1);
+		} while (!lastTick.compareAndSet(previous, tick));
+
+		long msb = ((tick >>> 12) << 16) | 0x7000L | (tick & 0xFFFL);
+		long lsb = (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		return new UUID(msb, lsb);
+	}
+
+	/**
+	 * @return the smallest time-ordered UUID that can be generated at or after the given time
+	 */
+	public static UUID lowerBound(long epochMillis) {
+		return new UUID((epochMillis << 16) | 0x7000L, 0x8000000000000000L);
+	}
+}
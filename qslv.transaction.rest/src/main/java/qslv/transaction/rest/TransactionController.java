@@ -1,13 +1,31 @@
 package qslv.transaction.rest;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import qslv.transaction.request.CancelReservationRequest;
 import qslv.transaction.request.CommitReservationRequest;
@@ -15,12 +33,14 @@ import qslv.transaction.request.ReservationRequest;
 import qslv.transaction.request.TransactionRequest;
 import qslv.transaction.request.TransactionSearchRequest;
 import qslv.transaction.request.TransferAndTransactRequest;
+import qslv.transaction.resource.TransactionResource;
 import qslv.transaction.response.CancelReservationResponse;
 import qslv.transaction.response.CommitReservationResponse;
 import qslv.transaction.response.ReservationResponse;
 import qslv.transaction.response.TransactionResponse;
 import qslv.transaction.response.TransactionSearchResponse;
 import qslv.transaction.response.TransferAndTransactResponse;
+import qslv.transaction.rest.Bulkheads.Lane;
 import qslv.common.TimedResponse;
 import qslv.common.TraceableRequest;
 import qslv.util.LogRequestTracingData;
@@ -75,17 +95,70 @@ import qslv.util.ServiceElapsedTimeSLI;
  * not be found HTTP-Status 409 Conflict - the reservation_uuid was already
  * committed/canceled
  * 
+ * POST /Transactions Request Body is an array of Transaction Requests, each
+ * validated and idempotent as for a single transaction. Requests are grouped by
+ * account_id and each group is posted in one database transaction. Responses:
+ * HTTP-Status 200 OK Body: one result per request, in request order, carrying the
+ * HTTP status the request would have received on its own and either the
+ * Transaction Response or an error message. HTTP-Status 413 Payload Too Large -
+ * more requests than qslv.bulk.max-items
+ * With Content-Type application/x-ndjson the body is read one Transaction Request
+ * per line and the results are written back one per line as they are posted, with
+ * no limit on the number of requests.
+ * 
  * GET /transaction
+ * 
+ * GET /Account/{account_id}/Balance Responses: HTTP-Status 200 OK Body: the account's
+ * running balance, 0 for an unknown account. Read without a lock, and with
+ * qslv.balance-inquiry.max-staleness-millis as of up to that long ago.
+ * 
+ * GET /Account/{account_id}/Transactions Query parameters, all optional: pageSize,
+ * from and to - ISO-8601 instants bounding insert_tsz, type - transaction type codes,
+ * cursor - the nextCursor of the previous page. Responses: HTTP-Status 200 OK Body:
+ * the account's transactions newest first and, when more follow, nextCursor.
+ * HTTP-Status 400 Bad Request - malformed parameter
+ * 
+ * GET /Account/{account_id}/Transactions/Export Query parameters as above, without
+ * pageSize and cursor. Responses: HTTP-Status 200 OK Body: every matching transaction,
+ * newest first, one per line (application/x-ndjson), written as it is read from the
+ * database. HTTP-Status 400 Bad Request - malformed parameter
+ * 
+ * With qslv.concurrency-limit enabled, every endpoint except the streamed ones may also
+ * respond HTTP-Status 503 Service Unavailable, with Retry-After, when the adaptive limit on
+ * concurrent requests is reached. With qslv.bulkhead enabled, reservations, postings, bulk
+ * requests and inquiries each have their own share of database concurrency, and may respond
+ * HTTP-Status 503 Service Unavailable, with Retry-After, when their share is in use.
+ * 
+ * With qslv.request-deadline enabled, a Request-Deadline header in epoch milliseconds bounds
+ * the request's database work: each statement's query timeout is the time left, and a
+ * request past its deadline is abandoned before it takes an account's balance lock.
+ * Responses: HTTP-Status 504 Gateway Timeout - the deadline passed HTTP-Status 400 Bad
+ * Request - malformed Request-Deadline
  */
 
 @RestController
 public class TransactionController {
 	private static final Logger log = LoggerFactory.getLogger(TransactionController.class);
+	public static final String APPLICATION_NDJSON = "application/x-ndjson";
 
 	@Autowired
 	public ConfigProperties props;
 	@Autowired
 	private TransactionService service;
+	@Autowired
+	private AccountPostingQueue postingQueue;
+	@Autowired
+	private GroupCommitQueue groupCommitQueue;
+	@Autowired
+	private BulkTransactionPoster bulkPoster;
+	@Autowired
+	private ObjectMapper mapper;
+	@Autowired
+	private TransactionRetry transactionRetry;
+	@Autowired
+	private ConcurrencyLimiter concurrencyLimiter;
+	@Autowired
+	private Bulkheads bulkheads;
 
 	public TransactionService getService() {
 		return service;
@@ -97,6 +170,27 @@ public class TransactionController {
 	public void setService(TransactionService service) {
 		this.service = service;
 	}
+	public void setPostingQueue(AccountPostingQueue postingQueue) {
+		this.postingQueue = postingQueue;
+	}
+	public void setGroupCommitQueue(GroupCommitQueue groupCommitQueue) {
+		this.groupCommitQueue = groupCommitQueue;
+	}
+	public void setBulkPoster(BulkTransactionPoster bulkPoster) {
+		this.bulkPoster = bulkPoster;
+	}
+	public void setObjectMapper(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+	public void setTransactionRetry(TransactionRetry transactionRetry) {
+		this.transactionRetry = transactionRetry;
+	}
+	public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+	public void setBulkheads(Bulkheads bulkheads) {
+		this.bulkheads = bulkheads;
+	}
 
 	@PostMapping("/Transaction")
 	@ResponseStatus(HttpStatus.CREATED)
@@ -112,11 +206,50 @@ public class TransactionController {
 			log.error("postTransaction, Invalid version {}",headers.get(TraceableRequest.ACCEPT_VERSION));
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version "+headers.get(TraceableRequest.ACCEPT_VERSION));
 		}
-		TransactionResponse response = service.createTransaction(request);
+		TransactionResponse response = limited(Lane.POSTING, "POST/Transaction", () -> createTransaction(request));
 
 		return new TimedResponse<TransactionResponse>(response);
 	}
 
+	@PostMapping("/Transactions")
+	@ResponseStatus(HttpStatus.OK)
+	@ResponseBody
+	@LogRequestTracingData(value="POST/Transactions", ait = "33333")
+	@ServiceElapsedTimeSLI(value="POST/Transactions", injectResponse = true, ait = "44444")
+	public TimedResponse<List<BulkTransactionResult>> postTransactions(@RequestHeader Map<String, String> headers,
+			@RequestBody List<TransactionRequest> requests) {
+
+		validateHeaders(headers);
+		if (false == headers.get(TraceableRequest.ACCEPT_VERSION).equals(TransactionRequest.VERSION_1_0)) {
+			log.error("postTransactions, Invalid version {}",headers.get(TraceableRequest.ACCEPT_VERSION));
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version "+headers.get(TraceableRequest.ACCEPT_VERSION));
+		}
+		if (requests.size() > props.getBulk().getMaxItems()) {
+			log.error("postTransactions, {} requests exceeds the maximum of {}", requests.size(), props.getBulk().getMaxItems());
+			throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "More than "+props.getBulk().getMaxItems()+" requests");
+		}
+		List<BulkTransactionResult> response = limited(Lane.BULK, "POST/Transactions",
+				() -> bulkPoster.post(requests, this::validateTransactionRequest));
+
+		return new TimedResponse<List<BulkTransactionResult>>(response);
+	}
+
+	@PostMapping(value="/Transactions", consumes=APPLICATION_NDJSON)
+	@LogRequestTracingData(value="POST/Transactions", ait = "33333")
+	@ServiceElapsedTimeSLI(value="POST/Transactions/NDJSON", ait = "44444")
+	public void postTransactionsStream(@RequestHeader Map<String, String> headers,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+		validateHeaders(headers);
+		if (false == headers.get(TraceableRequest.ACCEPT_VERSION).equals(TransactionRequest.VERSION_1_0)) {
+			log.error("postTransactionsStream, Invalid version {}",headers.get(TraceableRequest.ACCEPT_VERSION));
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version "+headers.get(TraceableRequest.ACCEPT_VERSION));
+		}
+		response.setStatus(HttpStatus.OK.value());
+		response.setContentType(APPLICATION_NDJSON);
+		laned(Lane.BULK, () -> bulkPoster.ingest(request.getInputStream(), response.getOutputStream(), this::validateTransactionRequest));
+	}
+
 	@PostMapping("/Reservation")
 	@ResponseStatus(HttpStatus.CREATED)
 	@ResponseBody
@@ -132,7 +265,7 @@ public class TransactionController {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version "+headers.get(TraceableRequest.ACCEPT_VERSION));
 		}
 
-		ReservationResponse response = service.createReservation(request);
+		ReservationResponse response = limited(Lane.AUTHORIZATION, "POST/Reservation", () -> retrying("POST/Reservation", () -> service.createReservation(request)));
 
 		return new TimedResponse<ReservationResponse>(response);
 	}
@@ -152,7 +285,7 @@ public class TransactionController {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version "+headers.get(TraceableRequest.ACCEPT_VERSION));
 		}
 		
-		CommitReservationResponse response = service.commitReservation(request);
+		CommitReservationResponse response = limited(Lane.AUTHORIZATION, "POST/CommitReservation", () -> retrying("POST/CommitReservation", () -> service.commitReservation(request)));
 
 		return new TimedResponse<CommitReservationResponse>(response);
 	}
@@ -171,7 +304,7 @@ public class TransactionController {
 			log.error("postCancelReservation, Invalid version {}",headers.get(TraceableRequest.ACCEPT_VERSION));
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version "+headers.get(TraceableRequest.ACCEPT_VERSION));
 		}
-		CancelReservationResponse response = service.cancelReservation(request);
+		CancelReservationResponse response = limited(Lane.AUTHORIZATION, "POST/CancelReservation", () -> retrying("POST/CancelReservation", () -> service.cancelReservation(request)));
 
 		return new TimedResponse<CancelReservationResponse>(response);
 	}
@@ -191,7 +324,7 @@ public class TransactionController {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version "+headers.get(TraceableRequest.ACCEPT_VERSION));
 		}
 
-		TransferAndTransactResponse response = service.transferAndTransact(request);
+		TransferAndTransactResponse response = limited(Lane.POSTING, "POST/TransferAndTransact", () -> retrying("POST/TransferAndTransact", () -> service.transferAndTransact(request)));
 
 		return new TimedResponse<TransferAndTransactResponse>(response);
 	}
@@ -209,11 +342,186 @@ public class TransactionController {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version "+headers.get(TraceableRequest.ACCEPT_VERSION));
 		}
 		
-		TransactionSearchResponse response = service.findTransaction(request);
+		TransactionSearchResponse response = limited(Lane.INQUIRY, "GET/Transaction", () -> service.findTransaction(request));
 		
 		return new TimedResponse<TransactionSearchResponse>(0, response);
 	}
 
+	@GetMapping("/Account/{accountNumber}/Balance")
+	@ResponseStatus(HttpStatus.OK)
+	@ResponseBody
+	@LogRequestTracingData(value="GET/Account/Balance", ait = "33333")
+	@ServiceElapsedTimeSLI(value="GET/Account/Balance", injectResponse = true, ait = "44444")
+	public TimedResponse<AccountBalanceResponse> getAccountBalance(@RequestHeader Map<String, String> headers,
+			@PathVariable String accountNumber) {
+		validateHeaders(headers);
+		if (false == headers.get(TraceableRequest.ACCEPT_VERSION).equals(TransactionSearchRequest.VERSION_1_0)) {
+			log.error("getAccountBalance, Invalid version {}",headers.get(TraceableRequest.ACCEPT_VERSION));
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version "+headers.get(TraceableRequest.ACCEPT_VERSION));
+		}
+
+		AccountBalanceResponse response = limited(Lane.INQUIRY, "GET/Account/Balance", () -> service.findBalance(accountNumber));
+
+		return new TimedResponse<AccountBalanceResponse>(response);
+	}
+
+	@GetMapping("/Account/{accountNumber}/Transactions")
+	@ResponseStatus(HttpStatus.OK)
+	@ResponseBody
+	@LogRequestTracingData(value="GET/Account/Transactions", ait = "33333")
+	@ServiceElapsedTimeSLI(value="GET/Account/Transactions", injectResponse = true, ait = "44444")
+	public TimedResponse<TransactionPage> getAccountTransactions(@RequestHeader Map<String, String> headers,
+			@PathVariable String accountNumber,
+			@RequestParam(required = false) Integer pageSize,
+			@RequestParam(required = false) String from,
+			@RequestParam(required = false) String to,
+			@RequestParam(required = false) List<String> type,
+			@RequestParam(required = false) String cursor) {
+		validateHeaders(headers);
+		if (false == headers.get(TraceableRequest.ACCEPT_VERSION).equals(TransactionSearchRequest.VERSION_1_0)) {
+			log.error("getAccountTransactions, Invalid version {}",headers.get(TraceableRequest.ACCEPT_VERSION));
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version "+headers.get(TraceableRequest.ACCEPT_VERSION));
+		}
+		int size = (pageSize == null) ? props.getHistory().getDefaultPageSize() : pageSize;
+		if (size < 1 || size > props.getHistory().getMaxPageSize()) {
+			log.error("controller.getAccountTransactions Malformed Request. pageSize {} out of range", size);
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "pageSize must be between 1 and "+props.getHistory().getMaxPageSize());
+		}
+		List<String> types = (type == null) ? Collections.emptyList() : type;
+		validateTransactionTypes(types);
+
+		Timestamp fromTimestamp = parseTimestamp("from", from);
+		Timestamp toTimestamp = parseTimestamp("to", to);
+		TransactionPage response = limited(Lane.INQUIRY, "GET/Account/Transactions",
+				() -> service.findAccountTransactions(accountNumber, fromTimestamp, toTimestamp, types, cursor, size));
+
+		return new TimedResponse<TransactionPage>(response);
+	}
+
+	@GetMapping("/Account/{accountNumber}/Transactions/Export")
+	@LogRequestTracingData(value="GET/Account/Transactions/Export", ait = "33333")
+	@ServiceElapsedTimeSLI(value="GET/Account/Transactions/Export", ait = "44444")
+	public ResponseEntity<StreamingResponseBody> exportAccountTransactions(@RequestHeader Map<String, String> headers,
+			@PathVariable String accountNumber,
+			@RequestParam(required = false) String from,
+			@RequestParam(required = false) String to,
+			@RequestParam(required = false) List<String> type) {
+		validateHeaders(headers);
+		if (false == headers.get(TraceableRequest.ACCEPT_VERSION).equals(TransactionSearchRequest.VERSION_1_0)) {
+			log.error("exportAccountTransactions, Invalid version {}",headers.get(TraceableRequest.ACCEPT_VERSION));
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid version "+headers.get(TraceableRequest.ACCEPT_VERSION));
+		}
+		List<String> types = (type == null) ? Collections.emptyList() : type;
+		validateTransactionTypes(types);
+		Timestamp fromTimestamp = parseTimestamp("from", from);
+		Timestamp toTimestamp = parseTimestamp("to", to);
+
+		ObjectWriter writer = mapper.writer();
+		StreamingResponseBody body = output -> laned(Lane.BULK, () -> {
+			try {
+				int rows = service.exportAccountTransactions(accountNumber, fromTimestamp, toTimestamp, types, resource -> {
+					try {
+						output.write(writer.writeValueAsBytes(resource));
+						output.write('\n');
+					} catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+				});
+				log.debug("exportAccountTransactions wrote {} transactions", rows);
+			} catch (UncheckedIOException ex) {
+				throw ex.getCause();
+			}
+		});
+		return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON)).body(body);
+	}
+
+	private Timestamp parseTimestamp(String name, String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Timestamp.from(Instant.parse(value));
+		} catch (DateTimeParseException ex) {
+			log.error("controller.parseTimestamp Malformed Request. {} is not an ISO-8601 instant: {}", name, value);
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, name+" must be an ISO-8601 instant");
+		}
+	}
+
+	private static final List<String> TRANSACTION_TYPES = Arrays.asList(TransactionResource.NORMAL, TransactionResource.RESERVATION,
+			TransactionResource.RESERVATION_COMMIT, TransactionResource.RESERVATION_CANCEL, TransactionResource.REJECTED_TRANSACTION);
+
+	private void validateTransactionTypes(List<String> types) {
+		for (String type : types) {
+			if (false == TRANSACTION_TYPES.contains(type)) {
+				log.error("controller.validateTransactionTypes Malformed Request. Unknown type {}", type);
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown type "+type);
+			}
+		}
+	}
+
+	private TransactionResponse createTransaction(TransactionRequest request) {
+		if (props.getGroupCommit().isEnabled()) {
+			return groupCommitQueue.createTransaction(request);
+		} else if (props.getAccountQueue().isEnabled()) {
+			return postingQueue.createTransaction(request);
+		}
+		return retrying("POST/Transaction", () -> service.createTransaction(request));
+	}
+
+	/**
+	 * Run the service call in its bulkhead lane when qslv.bulkhead is enabled, and within the
+	 * adaptive concurrency limit when qslv.concurrency-limit is enabled. The call is abandoned
+	 * if the request deadline passed while it waited.
+	 */
+	private <T> T limited(Lane lane, String endpoint, Supplier<T> call) {
+		Supplier<T> checked = () -> {
+			RequestDeadline.check(endpoint);
+			return call.get();
+		};
+		Supplier<T> admitted = props.getConcurrencyLimit().isEnabled() ? () -> concurrencyLimiter.execute(endpoint, checked) : checked;
+		if (props.getBulkhead().isEnabled()) {
+			return bulkheads.execute(lane, admitted);
+		}
+		return admitted.get();
+	}
+
+	/**
+	 * Run streamed work in its bulkhead lane when qslv.bulkhead is enabled.
+	 */
+	private void laned(Lane lane, IoRunnable work) throws IOException {
+		if (false == props.getBulkhead().isEnabled()) {
+			work.run();
+			return;
+		}
+		try {
+			bulkheads.execute(lane, () -> {
+				try {
+					work.run();
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+				return null;
+			});
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	@FunctionalInterface
+	private interface IoRunnable {
+		void run() throws IOException;
+	}
+
+	/**
+	 * Run the service call, retrying serialization failures when qslv.transaction-retry is enabled.
+	 */
+	private <T> T retrying(String endpoint, Supplier<T> call) {
+		if (props.getTransactionRetry().isEnabled()) {
+			return transactionRetry.execute(endpoint, call);
+		}
+		return call.get();
+	}
+
 	private void validateTransactionRequest(TransactionRequest request) {
 		log.trace("validateTransactionRequest ENTRY");
 		if (request.getRequestUuid() == null) {
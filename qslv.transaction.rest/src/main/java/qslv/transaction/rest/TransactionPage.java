@@ -0,0 +1,82 @@
+package qslv.transaction.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import qslv.transaction.resource.TransactionResource;
+
+/**
+ * One page of an account's transaction history, newest first. When more transactions
+ * follow, nextCursor is passed back as the cursor of the next request.
+ */
+public class TransactionPage {
+	private List<TransactionResource> transactions;
+	private String nextCursor;
+
+	public TransactionPage() {
+	}
+
+	public TransactionPage(List<TransactionResource> transactions, String nextCursor) {
+		this.transactions = transactions;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<TransactionResource> getTransactions() {
+		return transactions;
+	}
+
+	public void setTransactions(List<TransactionResource> transactions) {
+		this.transactions = transactions;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * Position in the history: the (insert_tsz, transaction_uuid) of the last transaction
+	 * returned. Encoded as an opaque URL-safe string.
+	 */
+	public static class Cursor {
+		private final Timestamp insertTimestamp;
+		private final UUID transactionUuid;
+
+		public Cursor(Timestamp insertTimestamp, UUID transactionUuid) {
+			this.insertTimestamp = insertTimestamp;
+			this.transactionUuid = transactionUuid;
+		}
+
+		public Timestamp getInsertTimestamp() {
+			return insertTimestamp;
+		}
+
+		public UUID getTransactionUuid() {
+			return transactionUuid;
+		}
+
+		public String encode() {
+			String value = insertTimestamp.toInstant().toString() + "," + transactionUuid;
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		public static Cursor decode(String cursor) {
+			try {
+				String[] value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",");
+				return new Cursor(Timestamp.from(Instant.parse(value[0])), UUID.fromString(value[1]));
+			} catch (RuntimeException ex) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed cursor");
+			}
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package qslv.transaction.rest;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Runs a TransactionService call in a transaction that is retried on CockroachDB
+ * serialization failures (SQLSTATE 40001), using the client-side retry protocol.
+ *
+ * The transaction opens with SAVEPOINT cockroach_restart. The call runs and then
+ * RELEASE SAVEPOINT commits its work. On a retryable failure, from the call or the
+ * release, the transaction rolls back to the savepoint and the call runs again after a
+ * jittered exponential backoff. Because the transaction is kept rather than started
+ * over, it keeps its priority against the transactions it lost to.
+ *
+ * Retries are limited per call and by a budget shared by all calls. Every call adds a
+ * fraction of a retry to the budget and every retry spends one, so under sustained
+ * contention retries stay a bounded share of the load. A call made inside a transaction
+ * that is already active is simply run; the outermost call retries.
+ */
+@Component
+public class TransactionRetry {
+	private static final Logger log = LoggerFactory.getLogger(TransactionRetry.class);
+	private static final String SERIALIZATION_FAILURE = "40001";
+	private static final long MILLI_TOKENS = 1000L;
+
+	public final static String savepoint_sql = "SAVEPOINT cockroach_restart;";
+	public final static String release_sql = "RELEASE SAVEPOINT cockroach_restart;";
+	public final static String rollback_sql = "ROLLBACK TO SAVEPOINT cockroach_restart;";
+
+	@Autowired
+	private ConfigProperties config;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@Autowired
+	private AccountContention contention;
+
+	private volatile AtomicLong budget = null;
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	public void setAccountContention(AccountContention contention) {
+		this.contention = contention;
+	}
+
+	/**
+	 * @param endpoint names the caller in the retry metrics
+	 * @param work the service call
+	 * @return the result of the attempt that committed
+	 */
+	public <T> T execute(String endpoint, Supplier<T> work) {
+		if (TransactionSynchronizationManager.isActualTransactionActive()) {
+			return work.get();
+		}
+		deposit();
+		boolean tracked = config.getContention().isEnabled();
+		if (tracked) {
+			contention.beginAttempt();
+		}
+		try {
+			return new TransactionTemplate(transactionManager).execute(status -> attempt(endpoint, work));
+		} finally {
+			if (tracked) {
+				contention.endAttempt();
+			}
+		}
+	}
+
+	private <T> T attempt(String endpoint, Supplier<T> work) {
+		ConfigProperties.TransactionRetry settings = config.getTransactionRetry();
+		jdbcTemplate.execute(savepoint_sql);
+		List<TransactionSynchronization> registered = TransactionSynchronizationManager.getSynchronizations();
+		for (int retries = 0; ; retries++) {
+			try {
+				T result = work.get();
+				jdbcTemplate.execute(release_sql);
+				if (retries > 0) {
+					log.debug("{} committed after {} retries", endpoint, retries);
+				}
+				return result;
+			} catch (RuntimeException ex) {
+				if (!isRetryable(ex)) {
+					throw ex;
+				}
+				if (retries >= settings.getMaxRetries()) {
+					exhausted(endpoint, "attempts", retries, ex);
+					throw ex;
+				}
+				if (RequestDeadline.isExpired()) {
+					exhausted(endpoint, "deadline", retries, ex);
+					throw ex;
+				}
+				if (!withdraw()) {
+					exhausted(endpoint, "budget", retries, ex);
+					throw ex;
+				}
+				Metrics.counter("qslv.transaction.retries", "endpoint", endpoint).increment();
+				if (config.getContention().isEnabled()) {
+					contention.retried();
+				}
+				jdbcTemplate.execute(rollback_sql);
+				// the failed call marked the transaction rollback-only; the savepoint undid its work
+				ConnectionHolder holder = (ConnectionHolder) TransactionSynchronizationManager.getResource(jdbcTemplate.getDataSource());
+				if (holder != null) {
+					holder.resetRollbackOnly();
+				}
+				// after-commit work registered by the failed call describes rows that were rolled back;
+				// its after-completion hooks still run so claims and holds taken by the call are undone
+				List<TransactionSynchronization> failed = new ArrayList<>(TransactionSynchronizationManager.getSynchronizations());
+				failed.removeAll(registered);
+				TransactionSynchronizationUtils.invokeAfterCompletion(failed, TransactionSynchronization.STATUS_ROLLED_BACK);
+				TransactionSynchronizationManager.clearSynchronization();
+				TransactionSynchronizationManager.initSynchronization();
+				registered.forEach(TransactionSynchronizationManager::registerSynchronization);
+				backoff(retries, ex);
+			}
+		}
+	}
+
+	/**
+	 * Whether the failure, or one of its causes, is a serialization failure.
+	 */
+	public static boolean isRetryable(Throwable ex) {
+		for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException && SERIALIZATION_FAILURE.equals(((SQLException) cause).getSQLState())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void exhausted(String endpoint, String reason, int retries, RuntimeException ex) {
+		Metrics.counter("qslv.transaction.retries.exhausted", "endpoint", endpoint, "reason", reason).increment();
+		log.warn("{} failed after {} retries, out of {}. {}", endpoint, retries, reason, ex.getMessage());
+	}
+
+	private void backoff(int retries, RuntimeException ex) {
+		ConfigProperties.TransactionRetry settings = config.getTransactionRetry();
+		long ceiling = Math.min(settings.getMaxBackoffMillis(), settings.getInitialBackoffMillis() << Math.min(retries, 20));
+		long sleep_ms = ThreadLocalRandom.current().nextLong(ceiling + 1);
+		try {
+			Thread.sleep(sleep_ms);
+		} catch (InterruptedException interrupted) {
+			Thread.currentThread().interrupt();
+			throw ex;
+		}
+	}
+
+	private AtomicLong budget() {
+		if (budget == null) {
+			synchronized (this) {
+				if (budget == null) {
+					budget = new AtomicLong(config.getTransactionRetry().getBudgetMaxRetries() * MILLI_TOKENS);
+				}
+			}
+		}
+		return budget;
+	}
+
+	private void deposit() {
+		ConfigProperties.TransactionRetry settings = config.getTransactionRetry();
+		long max = settings.getBudgetMaxRetries() * MILLI_TOKENS;
+		long credit = (long) (settings.getBudgetRatio() * MILLI_TOKENS);
+		budget().getAndUpdate(tokens -> Math.min(max, tokens + credit));
+	}
+
+	private boolean withdraw() {
+		return budget().getAndUpdate(tokens -> tokens >= MILLI_TOKENS ? tokens - MILLI_TOKENS : tokens) >= MILLI_TOKENS;
+	}
+}
@@ -1,12 +1,24 @@
 package qslv.transaction.rest;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -29,29 +41,326 @@ import qslv.transaction.response.TransferAndTransactResponse;
 @Service
 public class TransactionService {
 	private static final Logger log = LoggerFactory.getLogger(TransactionService.class);
+	private static final String EXPIRED_METADATA_JSON = "{\"reason\":\"expired\"}";
 
 	@Autowired
 	private JdbcDao jdbcDao;
+	@Autowired
+	private ConfigProperties config;
+	@Autowired
+	private IdempotencyResultCache idempotencyCache;
+	@Autowired
+	private RequestUuidFilter requestFilter;
+	@Autowired
+	private OpenReservationIndex reservationIndex;
+	@Autowired
+	private BalanceCache balanceCache;
+	@Autowired
+	private AccountContention contention;
 
 	public void setJdbcDao(JdbcDao dao) {
 		this.jdbcDao = dao;
 	}
 
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	public void setIdempotencyCache(IdempotencyResultCache idempotencyCache) {
+		this.idempotencyCache = idempotencyCache;
+	}
+
+	public void setRequestFilter(RequestUuidFilter requestFilter) {
+		this.requestFilter = requestFilter;
+	}
+
+	public void setReservationIndex(OpenReservationIndex reservationIndex) {
+		this.reservationIndex = reservationIndex;
+	}
+
+	public void setBalanceCache(BalanceCache balanceCache) {
+		this.balanceCache = balanceCache;
+	}
+
+	public void setAccountContention(AccountContention contention) {
+		this.contention = contention;
+	}
+
 	@Transactional
 	public TransactionResponse createTransaction(TransactionRequest request) {
 		log.trace("service.createTransaction ENTRY");
 
-		TransactionResource idempotent = jdbcDao.checkIdempotency(request.getRequestUuid(), request.getAccountNumber());
+		// the conditional statement writes the balance before the journal row, so it cannot
+		// rely on the journal insert to detect a repeated request
+		boolean onConflict = !config.isConditionalPosting() && relyOnUniqueIndex(request.getRequestUuid());
+		TransactionResource idempotent = previousTransaction(request.getRequestUuid(), request.getAccountNumber(), !onConflict);
 		if (idempotent != null) {
-			if (idempotent.getTransactionTypeCode().equals(TransactionResource.REJECTED_TRANSACTION)) {
-				return new TransactionResponse(TransactionResponse.INSUFFICIENT_FUNDS,idempotent);
-			} else {
-				return new TransactionResponse(TransactionResponse.SUCCESS,idempotent);
+			return idempotentTransactionResponse(idempotent);
+		}
+
+		if (config.isConditionalPosting()) {
+			TransactionResponse response = postConditionally(request);
+			remember(response.getTransactions().get(0));
+			return response;
+		}
+
+		VersionedBalance cached = onConflict ? null : cachedBalanceCovering(request.getAccountNumber(),
+				request.getTransactionAmount(), request.isAuthorizeAgainstBalance());
+		if (cached != null) {
+			TransactionResponse response = authorizeTransaction(request, cached.getRunningBalanceAmount());
+			TransactionResource resource = response.getTransactions().get(0);
+			if (writeCachedBalance(resource.getAccountNumber(), cached, resource.getRunningBalanceAmount())) {
+				jdbcDao.insertTransaction(resource);
+				remember(resource);
+				log.trace("service.createTransaction EXIT");
+				return response;
+			}
+		}
+
+		VersionedBalance locked = lockBalance(request.getAccountNumber());
+
+		TransactionResponse response = authorizeTransaction(request, locked.getRunningBalanceAmount());
+		TransactionResource resource = response.getTransactions().get(0);
+		if (onConflict) {
+			if (!jdbcDao.insertTransactionIfAbsent(resource)) {
+				return idempotentTransactionResponse(conflictingTransaction(request.getRequestUuid(), request.getAccountNumber()));
+			}
+			if (response.getStatus() == TransactionResponse.SUCCESS) {
+				jdbcDao.upsertBalance(resource.getAccountNumber(), resource.getRunningBalanceAmount());
+			}
+		} else {
+			if (response.getStatus() == TransactionResponse.SUCCESS) {
+				jdbcDao.upsertBalance(resource.getAccountNumber(), resource.getRunningBalanceAmount());
+			}
+			jdbcDao.insertTransaction(resource);
+		}
+		cacheBalance(resource.getAccountNumber(), locked, resource.getRunningBalanceAmount(),
+				response.getStatus() == TransactionResponse.SUCCESS);
+		remember(resource);
+
+		log.trace("service.createTransaction EXIT");
+		return response;
+	}
+
+	/**
+	 * createTransactions posts a batch of transactions in one database transaction.
+	 * Each account's balance is locked once, in account order, and written once after
+	 * all of its postings are applied in request order. Idempotency is checked per
+	 * request against the database, whatever the request filter says, including repeats
+	 * of the same request_uuid within the batch.
+	 * 
+	 * @param requests the transactions to post, possibly for several accounts
+	 * @return one response per request, in request order
+	 */
+	@Transactional
+	public List<TransactionResponse> createTransactions(List<TransactionRequest> requests) {
+		log.trace("service.createTransactions ENTRY");
+
+		TreeMap<String, List<Integer>> byAccount = new TreeMap<>();
+		for (int ii = 0; ii < requests.size(); ii++) {
+			byAccount.computeIfAbsent(requests.get(ii).getAccountNumber(), k -> new ArrayList<>()).add(ii);
+		}
+
+		TransactionResponse[] responses = new TransactionResponse[requests.size()];
+		List<TransactionResource> inserts = new ArrayList<>();
+		for (Map.Entry<String, List<Integer>> account : byAccount.entrySet()) {
+			HashMap<UUID, TransactionResponse> posted = new HashMap<>();
+			Long runningBalance_am = null;
+			boolean balanceChanged = false;
+
+			for (Integer index : account.getValue()) {
+				TransactionRequest request = requests.get(index);
+				TransactionResponse response = posted.get(request.getRequestUuid());
+				if (response == null) {
+					// the batch is written with one plain insert, so a request the filter has not seen
+					// may still have been posted by another instance: always look it up
+					TransactionResource idempotent = previousTransaction(request.getRequestUuid(), request.getAccountNumber(), true);
+					if (idempotent != null) {
+						response = idempotentTransactionResponse(idempotent);
+					} else {
+						if (runningBalance_am == null) {
+							runningBalance_am = lockAccount(account.getKey(), () -> jdbcDao.selectBalanceForUpdate(account.getKey()));
+						}
+						response = authorizeTransaction(request, runningBalance_am);
+						runningBalance_am = response.getTransactions().get(0).getRunningBalanceAmount();
+						balanceChanged |= (response.getStatus() == TransactionResponse.SUCCESS);
+						inserts.add(response.getTransactions().get(0));
+					}
+					posted.put(request.getRequestUuid(), response);
+				}
+				responses[index] = response;
+			}
+
+			if (balanceChanged) {
+				jdbcDao.upsertBalance(account.getKey(), runningBalance_am);
+			}
+		}
+		jdbcDao.insertTransactions(inserts);
+		for (TransactionResource resource : inserts) {
+			remember(resource);
+		}
+
+		log.trace("service.createTransactions EXIT");
+		return Arrays.asList(responses);
+	}
+
+	/**
+	 * Previously committed result of the request, answered from the idempotency cache when
+	 * it is enabled and otherwise, when queryDatabase is set, from the transaction table.
+	 */
+	private TransactionResource previousTransaction(UUID request_uuid, String accountNumber, boolean queryDatabase) {
+		if (config.getIdempotencyCache().isEnabled()) {
+			List<TransactionResource> cached = idempotencyCache.get(request_uuid, accountNumber);
+			if (cached != null) {
+				return cached.get(0);
 			}
 		}
+		if (!queryDatabase) {
+			return null;
+		}
+		TransactionResource previous = jdbcDao.checkIdempotency(request_uuid, accountNumber);
+		if (previous != null) {
+			remember(previous);
+		}
+		return previous;
+	}
 
-		long runningBalance_am = jdbcDao.selectBalanceForUpdate(request.getAccountNumber());
+	private void remember(TransactionResource resource) {
+		remember(Collections.singletonList(resource));
+	}
+
+	/**
+	 * Note the posted request in the request filter and cache its result once the current
+	 * transaction commits.
+	 */
+	private void remember(List<TransactionResource> transactions) {
+		TransactionResource resource = transactions.get(0);
+		if (config.getIdempotencyCache().isEnabled()) {
+			idempotencyCache.put(resource.getRequestUuid(), resource.getAccountNumber(), transactions);
+		}
+		if (config.getRequestFilter().isEnabled()) {
+			requestFilter.add(resource.getRequestUuid());
+		}
+	}
+
+	/**
+	 * Whether the request filter shows this instance has not posted the request recently.
+	 */
+	private boolean definitelyNew(UUID request_uuid) {
+		return config.getRequestFilter().isEnabled() && !requestFilter.mightContain(request_uuid);
+	}
+
+	/**
+	 * The cached balance of the account when the balance cache is enabled and the cached
+	 * balance would approve the amount, otherwise null. A rejection is always decided
+	 * against the locked balance.
+	 */
+	private VersionedBalance cachedBalanceCovering(String accountNumber, long transaction_am, boolean authorizeAgainstBalance) {
+		if (!config.getBalanceCache().isEnabled()) {
+			return null;
+		}
+		VersionedBalance cached = balanceCache.get(accountNumber);
+		if (cached == null) {
+			return null;
+		}
+		if (authorizeAgainstBalance && transaction_am < 0 && cached.getRunningBalanceAmount() < Math.abs(transaction_am)) {
+			return null;
+		}
+		return cached;
+	}
+
+	/**
+	 * Write the balance computed from the cached one, provided the row is still at the cached
+	 * version. Otherwise the entry is stale: it is invalidated and nothing is written.
+	 */
+	private boolean writeCachedBalance(String accountNumber, VersionedBalance cached, long runningBalance_am) {
+		if (lockAccount(accountNumber, () -> jdbcDao.updateBalanceIfVersion(accountNumber, runningBalance_am, cached.getVersion()))) {
+			balanceCache.put(accountNumber, runningBalance_am, cached.getVersion() + 1);
+			return true;
+		}
+		balanceCache.invalidate(accountNumber);
+		return false;
+	}
+
+	/**
+	 * Lock the account's balance, reading its version too when the balance cache is enabled.
+	 */
+	private VersionedBalance lockBalance(String accountNumber) {
+		if (config.getBalanceCache().isEnabled()) {
+			return lockAccount(accountNumber, () -> jdbcDao.selectVersionedBalanceForUpdate(accountNumber));
+		}
+		return new VersionedBalance(lockAccount(accountNumber, () -> jdbcDao.selectBalanceForUpdate(accountNumber)), VersionedBalance.NO_ROW);
+	}
+
+	/**
+	 * Run the statement that takes the account's balance lock, recording the wait when
+	 * contention tracking is enabled. A request whose deadline has passed is abandoned before
+	 * it waits for the lock.
+	 */
+	private <T> T lockAccount(String accountNumber, Supplier<T> select) {
+		RequestDeadline.check("selectBalanceForUpdate");
+		if (!config.getContention().isEnabled()) {
+			return select.get();
+		}
+		long started = System.nanoTime();
+		T locked = select.get();
+		contention.locked(accountNumber, System.nanoTime() - started);
+		return locked;
+	}
 
+	/**
+	 * Cache the balance left by a posting against the locked balance: the new balance when
+	 * it was written, otherwise the locked balance if the account has a row.
+	 */
+	private void cacheBalance(String accountNumber, VersionedBalance locked, long runningBalance_am, boolean written) {
+		if (!config.getBalanceCache().isEnabled()) {
+			return;
+		}
+		if (written) {
+			balanceCache.put(accountNumber, runningBalance_am, locked.getVersion() + 1);
+		} else if (locked.getVersion() != VersionedBalance.NO_ROW) {
+			balanceCache.put(accountNumber, locked.getRunningBalanceAmount(), locked.getVersion());
+		}
+	}
+
+	/**
+	 * Whether a repeat of the request is left to the unique (request_uuid, account_id, leg)
+	 * index rather than looked up before posting. The request filter only knows this
+	 * instance's requests, so a request it calls new still goes through the index.
+	 */
+	private boolean relyOnUniqueIndex(UUID request_uuid) {
+		return config.isConflictIdempotency() || definitelyNew(request_uuid);
+	}
+
+	/**
+	 * Read back the row of a request whose journal insert conflicted on the unique
+	 * (request_uuid, account_id, leg) index.
+	 */
+	private TransactionResource conflictingTransaction(UUID request_uuid, String accountNumber) {
+		TransactionResource previous = jdbcDao.checkIdempotency(request_uuid, accountNumber);
+		if (previous == null) {
+			log.error("Insert conflicted but no transaction found for Request UUID {}", request_uuid);
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+				String.format("Insert conflicted but no transaction found for Request UUID %s.", request_uuid));
+		}
+		log.debug("Already present for {}", request_uuid);
+		remember(previous);
+		return previous;
+	}
+
+	private TransactionResponse idempotentTransactionResponse(TransactionResource idempotent) {
+		if (idempotent.getTransactionTypeCode().equals(TransactionResource.REJECTED_TRANSACTION)) {
+			return new TransactionResponse(TransactionResponse.INSUFFICIENT_FUNDS,idempotent);
+		} else {
+			return new TransactionResponse(TransactionResponse.SUCCESS,idempotent);
+		}
+	}
+
+	/**
+	 * Build the journal entry for the request against the locked running balance,
+	 * rejecting it when it must be authorized against a balance that does not cover it.
+	 */
+	private TransactionResponse authorizeTransaction(TransactionRequest request, long runningBalance_am) {
 		TransactionResource resource = new TransactionResource();
 		resource.setRequestUuid(request.getRequestUuid());
 		resource.setAccountNumber(request.getAccountNumber());
@@ -68,7 +377,6 @@ public class TransactionService {
 			resource.setTransactionTypeCode(TransactionResource.REJECTED_TRANSACTION);
 			resource.setRunningBalanceAmount(runningBalance_am);
 			response.setStatus(TransactionResponse.INSUFFICIENT_FUNDS);
-			jdbcDao.insertTransaction(resource);
 			
 		} else {
 			log.debug("createTransaction Approved. Balance: {}, Transaction Amount {}", runningBalance_am, request.getTransactionAmount());
@@ -77,29 +385,51 @@ public class TransactionService {
 			runningBalance_am += resource.getTransactionAmount();
 			resource.setRunningBalanceAmount(runningBalance_am);
 			response.setStatus(TransactionResponse.SUCCESS);
-			jdbcDao.upsertBalance(resource.getAccountNumber(), resource.getRunningBalanceAmount());
-			jdbcDao.insertTransaction(resource);
+		}
+		return response;
+	}
+
+	/**
+	 * Post the transaction with a single conditional statement instead of locking the balance,
+	 * upserting it and inserting the journal row separately. The balance is only read back,
+	 * under lock, when the debit is rejected for insufficient funds.
+	 */
+	private TransactionResponse postConditionally(TransactionRequest request) {
+		TransactionResource resource = new TransactionResource();
+		resource.setRequestUuid(request.getRequestUuid());
+		resource.setAccountNumber(request.getAccountNumber());
+		resource.setDebitCardNumber(request.getDebitCardNumber());
+		resource.setTransactionAmount(request.getTransactionAmount());
+		resource.setTransactionMetaDataJson(request.getTransactionMetaDataJson());
+		resource.setTransactionTypeCode(TransactionResource.NORMAL);
+
+		boolean authorize = request.isAuthorizeAgainstBalance() && request.getTransactionAmount() < 0;
+		if (lockAccount(request.getAccountNumber(), () -> jdbcDao.postTransactionConditionally(resource, authorize))) {
+			log.debug("createTransaction Approved. Balance: {}, Transaction Amount {}", resource.getRunningBalanceAmount(), request.getTransactionAmount());
+			log.trace("service.createTransaction EXIT");
+			return new TransactionResponse(TransactionResponse.SUCCESS, resource);
 		}
 
+		long runningBalance_am = lockAccount(request.getAccountNumber(), () -> jdbcDao.selectBalanceForUpdate(request.getAccountNumber()));
+		log.debug("createTransaction Insuffienct Funds. Balance: {}, Transaction Amount {}", runningBalance_am, request.getTransactionAmount());
+		resource.setTransactionTypeCode(TransactionResource.REJECTED_TRANSACTION);
+		resource.setRunningBalanceAmount(runningBalance_am);
+		jdbcDao.insertTransaction(resource);
+
 		log.trace("service.createTransaction EXIT");
-		return response;
+		return new TransactionResponse(TransactionResponse.INSUFFICIENT_FUNDS, resource);
 	}
 
 	@Transactional
 	public ReservationResponse createReservation(ReservationRequest request) {
 		log.trace("createReservation ENTRY");
 
-		TransactionResource idempotent = jdbcDao.checkIdempotency(request.getRequestUuid(), request.getAccountNumber());
+		boolean onConflict = relyOnUniqueIndex(request.getRequestUuid());
+		TransactionResource idempotent = previousTransaction(request.getRequestUuid(), request.getAccountNumber(), !onConflict);
 		if (idempotent != null) {
-			if (idempotent.getTransactionTypeCode().equals(TransactionResource.REJECTED_TRANSACTION)) {
-				return new ReservationResponse(ReservationResponse.INSUFFICIENT_FUNDS,idempotent);
-			} else {
-				return new ReservationResponse(ReservationResponse.SUCCESS,idempotent);
-			}
+			return idempotentReservationResponse(idempotent);
 		}
 
-		long runningBalance_am = jdbcDao.selectBalanceForUpdate(request.getAccountNumber());
-
 		TransactionResource resource = new TransactionResource();
 		resource.setRequestUuid(request.getRequestUuid());
 		resource.setAccountNumber(request.getAccountNumber());
@@ -107,6 +437,27 @@ public class TransactionService {
 		resource.setTransactionAmount(request.getTransactionAmount());
 		resource.setTransactionMetaDataJson(request.getTransactionMetaDataJson());
 
+		VersionedBalance cached = onConflict ? null : cachedBalanceCovering(request.getAccountNumber(),
+				request.getTransactionAmount(), request.isAuthorizeAgainstBalance());
+		if (cached != null) {
+			long reserved_am = cached.getRunningBalanceAmount() + resource.getTransactionAmount();
+			if (writeCachedBalance(resource.getAccountNumber(), cached, reserved_am)) {
+				log.debug("createReservation Approved. Cached Balance: {}, Transaction Amount {}", cached.getRunningBalanceAmount(), request.getTransactionAmount());
+				resource.setTransactionTypeCode(TransactionResource.RESERVATION);
+				resource.setRunningBalanceAmount(reserved_am);
+				jdbcDao.insertTransaction(resource);
+				if (config.getReservationIndex().isEnabled()) {
+					reservationIndex.open(resource);
+				}
+				remember(resource);
+				log.trace("createReservation EXIT");
+				return new ReservationResponse(TransactionResponse.SUCCESS, resource);
+			}
+		}
+
+		VersionedBalance locked = lockBalance(request.getAccountNumber());
+		long runningBalance_am = locked.getRunningBalanceAmount();
+
 		// Asset account. DEBITS are positive, CREDITS are negative
 		// Reject if 1) reservation for a 2) credit that is 3) more than the current
 		// balance
@@ -119,7 +470,13 @@ public class TransactionService {
 			resource.setTransactionTypeCode(TransactionResource.REJECTED_TRANSACTION);
 			resource.setRunningBalanceAmount(runningBalance_am);
 
-			jdbcDao.insertTransaction(resource);
+			if (onConflict) {
+				if (!jdbcDao.insertTransactionIfAbsent(resource)) {
+					return idempotentReservationResponse(conflictingTransaction(request.getRequestUuid(), request.getAccountNumber()));
+				}
+			} else {
+				jdbcDao.insertTransaction(resource);
+			}
 			restResponseCode = TransactionResponse.INSUFFICIENT_FUNDS;
 		} else {
 
@@ -128,27 +485,54 @@ public class TransactionService {
 			runningBalance_am += resource.getTransactionAmount();
 			resource.setRunningBalanceAmount(runningBalance_am);
 
-			jdbcDao.upsertBalance(resource.getAccountNumber(), runningBalance_am);
-			jdbcDao.insertTransaction(resource);
+			if (onConflict) {
+				if (!jdbcDao.insertTransactionIfAbsent(resource)) {
+					return idempotentReservationResponse(conflictingTransaction(request.getRequestUuid(), request.getAccountNumber()));
+				}
+				jdbcDao.upsertBalance(resource.getAccountNumber(), runningBalance_am);
+			} else {
+				jdbcDao.upsertBalance(resource.getAccountNumber(), runningBalance_am);
+				jdbcDao.insertTransaction(resource);
+			}
+			if (config.getReservationIndex().isEnabled()) {
+				reservationIndex.open(resource);
+			}
 			restResponseCode = TransactionResponse.SUCCESS;
 		}
 
+		cacheBalance(resource.getAccountNumber(), locked, runningBalance_am, restResponseCode == TransactionResponse.SUCCESS);
+		remember(resource);
+
 		log.trace("createReservation EXIT");
 		return new ReservationResponse(restResponseCode, resource);
 	}
 
+	private ReservationResponse idempotentReservationResponse(TransactionResource idempotent) {
+		if (idempotent.getTransactionTypeCode().equals(TransactionResource.REJECTED_TRANSACTION)) {
+			return new ReservationResponse(ReservationResponse.INSUFFICIENT_FUNDS,idempotent);
+		} else {
+			return new ReservationResponse(ReservationResponse.SUCCESS,idempotent);
+		}
+	}
+
 	@Transactional
 	public CommitReservationResponse commitReservation(CommitReservationRequest request) {
 		log.trace("commitReservation ENTRY");
 
-		TransactionResource idempotent = jdbcDao.checkIdempotency(request.getRequestUuid(), request.getAccountNumber());
+		boolean onConflict = relyOnUniqueIndex(request.getRequestUuid());
+		TransactionResource idempotent = previousTransaction(request.getRequestUuid(), request.getAccountNumber(), !onConflict);
 		if (idempotent != null) {
 			return new CommitReservationResponse(CommitReservationResponse.SUCCESS,idempotent);
 		}
 
-		TransactionResource reservation = jdbcDao.findReservation(request.getReservationUuid());
-		jdbcDao.verifyReservationOpen(request.getReservationUuid());
-		long runningBalance_am = jdbcDao.selectBalanceForUpdate(reservation.getAccountNumber());
+		TransactionResource reservation;
+		try {
+			reservation = openReservation(request.getReservationUuid(), TransactionResource.RESERVATION_COMMIT);
+		} catch (ResponseStatusException ex) {
+			return new CommitReservationResponse(CommitReservationResponse.SUCCESS,
+					finalizedByRequest(ex, request.getReservationUuid(), request.getRequestUuid(), request.getAccountNumber(), onConflict));
+		}
+		long runningBalance_am = lockAccount(reservation.getAccountNumber(), () -> jdbcDao.selectBalanceForUpdate(reservation.getAccountNumber()));
 
 		TransactionResource resource = new TransactionResource();
 		resource.setRequestUuid(request.getRequestUuid());
@@ -165,27 +549,132 @@ public class TransactionService {
 			resource.setTransactionAmount(request.getTransactionAmount() - reservation.getTransactionAmount());
 			runningBalance_am += resource.getTransactionAmount();
 			resource.setRunningBalanceAmount(runningBalance_am);
-			jdbcDao.upsertBalance(reservation.getAccountNumber(), runningBalance_am);
 		}
 
-		jdbcDao.insertCommitOrCancel(resource);
+		if (onConflict) {
+			if (!insertFinalization(resource, true)) {
+				return new CommitReservationResponse(CommitReservationResponse.SUCCESS,
+						conflictingTransaction(request.getRequestUuid(), request.getAccountNumber()));
+			}
+			if (resource.getTransactionAmount() != 0L) {
+				jdbcDao.upsertBalance(reservation.getAccountNumber(), runningBalance_am);
+			}
+		} else {
+			if (resource.getTransactionAmount() != 0L) {
+				jdbcDao.upsertBalance(reservation.getAccountNumber(), runningBalance_am);
+			}
+			insertFinalization(resource, false);
+		}
+
+		remember(resource);
 
 		log.trace("commitReservation EXIT");
 		return new CommitReservationResponse(TransactionResponse.SUCCESS, resource);
 	}
 
+	/**
+	 * Cancel up to limit reservations created before the cutoff that are still open. The
+	 * reservations are marked cancelled with one statement, the affected balances are
+	 * locked with one statement, the RX rows are written with one multi-row insert and
+	 * each account's balance is updated once for all of its released reservations.
+	 *
+	 * A reservation can be open by its status yet already have a commit or cancel row, when
+	 * it was finalized by an instance that does not keep reservationStatus_cd. Such
+	 * reservations are marked with their finalizing type and not released, so they neither
+	 * fail the batch nor come back in the next one. One finalized after the lookup makes its
+	 * RX row conflict; the rows of that attempt are deleted and the rest released again.
+	 *
+	 * @return the number of reservations expired and released
+	 */
+	@Transactional
+	public ReleasedReservations releaseExpiredReservations(long before_ms, int limit) {
+		log.trace("service.releaseExpiredReservations ENTRY");
+
+		List<TransactionResource> expired = jdbcDao.expireReservations(before_ms, limit);
+		if (expired.isEmpty()) {
+			return new ReleasedReservations(0, 0);
+		}
+		List<TransactionResource> open = withoutFinalized(expired);
+		if (open.isEmpty()) {
+			return new ReleasedReservations(expired.size(), 0);
+		}
+		TreeMap<String, Long> locked = jdbcDao.selectBalancesForUpdate(
+				open.stream().map(TransactionResource::getAccountNumber).collect(Collectors.toSet()));
+
+		while (true) {
+			TreeMap<String, Long> balances = new TreeMap<>(locked);
+			List<TransactionResource> releases = new ArrayList<>(open.size());
+			for (TransactionResource reservation : open) {
+				long runningBalance_am = balances.merge(reservation.getAccountNumber(), 0L - reservation.getTransactionAmount(), Long::sum);
+
+				TransactionResource resource = new TransactionResource();
+				resource.setRequestUuid(UUID.nameUUIDFromBytes(("expire:" + reservation.getTransactionUuid()).getBytes(StandardCharsets.UTF_8)));
+				resource.setAccountNumber(reservation.getAccountNumber());
+				resource.setDebitCardNumber(reservation.getDebitCardNumber());
+				resource.setTransactionAmount(0L - reservation.getTransactionAmount());
+				resource.setTransactionTypeCode(TransactionResource.RESERVATION_CANCEL);
+				resource.setRunningBalanceAmount(runningBalance_am);
+				resource.setReservationUuid(reservation.getTransactionUuid());
+				resource.setTransactionMetaDataJson(EXPIRED_METADATA_JSON);
+				releases.add(resource);
+			}
+			Set<UUID> released = jdbcDao.insertReleases(releases);
+			if (released.size() == releases.size()) {
+				jdbcDao.upsertBalances(balances);
+				log.debug("service.releaseExpiredReservations released {} reservations on {} accounts", releases.size(), balances.size());
+				return new ReleasedReservations(expired.size(), releases.size());
+			}
+
+			// the running balances of the rows written include the skipped reservations
+			jdbcDao.deleteTransactions(releases.stream().filter(release -> released.contains(release.getReservationUuid()))
+					.map(TransactionResource::getTransactionUuid).collect(Collectors.toList()));
+			withoutFinalized(open.stream().filter(reservation -> false == released.contains(reservation.getTransactionUuid()))
+					.collect(Collectors.toList()));
+			open = open.stream().filter(reservation -> released.contains(reservation.getTransactionUuid())).collect(Collectors.toList());
+			if (open.isEmpty()) {
+				return new ReleasedReservations(expired.size(), 0);
+			}
+		}
+	}
+
+	/**
+	 * Mark the reservations that already have a commit or cancel row with its type.
+	 *
+	 * @return the reservations that are really still open
+	 */
+	private List<TransactionResource> withoutFinalized(List<TransactionResource> reservations) {
+		Map<UUID, String> finalized = jdbcDao.selectFinalizations(
+				reservations.stream().map(TransactionResource::getTransactionUuid).collect(Collectors.toList()));
+		if (finalized.isEmpty()) {
+			return reservations;
+		}
+		List<UUID> committed = finalized.entrySet().stream()
+				.filter(entry -> TransactionResource.RESERVATION_COMMIT.equals(entry.getValue()))
+				.map(Map.Entry::getKey).collect(Collectors.toList());
+		jdbcDao.markReservations(TransactionResource.RESERVATION_COMMIT, committed);
+		log.warn("service.releaseExpiredReservations {} reservations were already finalized", finalized.size());
+		return reservations.stream().filter(reservation -> false == finalized.containsKey(reservation.getTransactionUuid()))
+				.collect(Collectors.toList());
+	}
+
 	@Transactional
 	public CancelReservationResponse cancelReservation(CancelReservationRequest request) {
 		log.trace("service.cancelReservation ENTRY");
 
-		TransactionResource idempotent = jdbcDao.checkIdempotency(request.getRequestUuid(), request.getAccountNumber());
+		boolean onConflict = relyOnUniqueIndex(request.getRequestUuid());
+		TransactionResource idempotent = previousTransaction(request.getRequestUuid(), request.getAccountNumber(), !onConflict);
 		if (idempotent != null) {
 			return new CancelReservationResponse(CancelReservationResponse.SUCCESS,idempotent);
 		}
 
-		TransactionResource reservation = jdbcDao.findReservation(request.getReservationUuid());
-		jdbcDao.verifyReservationOpen(request.getReservationUuid());
-		long runningBalance_am = jdbcDao.selectBalanceForUpdate(reservation.getAccountNumber());
+		TransactionResource reservation;
+		try {
+			reservation = openReservation(request.getReservationUuid(), TransactionResource.RESERVATION_CANCEL);
+		} catch (ResponseStatusException ex) {
+			return new CancelReservationResponse(CancelReservationResponse.SUCCESS,
+					finalizedByRequest(ex, request.getReservationUuid(), request.getRequestUuid(), request.getAccountNumber(), onConflict));
+		}
+		long runningBalance_am = lockAccount(reservation.getAccountNumber(), () -> jdbcDao.selectBalanceForUpdate(reservation.getAccountNumber()));
 
 		runningBalance_am -= reservation.getTransactionAmount();
 
@@ -199,13 +688,79 @@ public class TransactionService {
 		resource.setReservationUuid(request.getReservationUuid());
 		resource.setTransactionMetaDataJson(request.getTransactionMetaDataJson());
 
-		jdbcDao.upsertBalance(reservation.getAccountNumber(), runningBalance_am);
-		jdbcDao.insertCommitOrCancel(resource);
+		if (onConflict) {
+			if (!insertFinalization(resource, true)) {
+				return new CancelReservationResponse(CancelReservationResponse.SUCCESS,
+						conflictingTransaction(request.getRequestUuid(), request.getAccountNumber()));
+			}
+			jdbcDao.upsertBalance(reservation.getAccountNumber(), runningBalance_am);
+		} else {
+			jdbcDao.upsertBalance(reservation.getAccountNumber(), runningBalance_am);
+			insertFinalization(resource, false);
+		}
+
+		remember(resource);
 
 		log.trace("service.cancelReservation EXIT");
 		return new CancelReservationResponse(TransactionResponse.SUCCESS, resource);
 	}
 	
+	/**
+	 * Find the reservation and make sure it is still open. With reservation status the
+	 * reservation is marked finalized in the same statement; otherwise a reservation this
+	 * instance created is taken from the index, and any other is looked up.
+	 *
+	 * @throws ResponseStatusException NOT_FOUND, or CONFLICT when already finalized
+	 */
+	private TransactionResource openReservation(UUID reservation_uuid, String transactionType_cd) {
+		if (config.isReservationStatus()) {
+			return jdbcDao.finalizeReservation(reservation_uuid, transactionType_cd);
+		}
+		TransactionResource reservation = config.getReservationIndex().isEnabled() ? reservationIndex.claim(reservation_uuid) : null;
+		if (reservation == null) {
+			reservation = jdbcDao.findReservation(reservation_uuid);
+			jdbcDao.verifyReservationOpen(reservation_uuid);
+		}
+		return reservation;
+	}
+
+	/**
+	 * Insert the commit or cancel row. The unique index on finalized reservation_uuids is
+	 * the last word on whether the reservation was still open.
+	 *
+	 * @return false when onConflict and the request has already been posted
+	 */
+	private boolean insertFinalization(TransactionResource resource, boolean onConflict) {
+		try {
+			if (onConflict) {
+				return jdbcDao.insertTransactionIfAbsent(resource);
+			}
+			jdbcDao.insertCommitOrCancel(resource);
+			return true;
+		} catch (DuplicateKeyException ex) {
+			log.error("reservation_uuid ({}) has already been finalized. {}", resource.getReservationUuid(), ex.getMessage());
+			throw new ResponseStatusException(HttpStatus.CONFLICT,
+					String.format("reservation_uuid (%s) has already been finalized.", resource.getReservationUuid()));
+		}
+	}
+
+	/**
+	 * The reservation was not open. Without the up-front idempotency lookup a repeated
+	 * commit or cancel lands here, so when the reservation is final the request's own row
+	 * is returned if it is the one that finalized it. Otherwise the exception is rethrown.
+	 */
+	private TransactionResource finalizedByRequest(ResponseStatusException ex, UUID reservation_uuid, UUID request_uuid, String accountNumber, boolean onConflict) {
+		if (!onConflict || ex.getStatus() != HttpStatus.CONFLICT) {
+			throw ex;
+		}
+		TransactionResource previous = jdbcDao.checkIdempotency(request_uuid, accountNumber);
+		if (previous == null || !reservation_uuid.equals(previous.getReservationUuid())) {
+			throw ex;
+		}
+		log.debug("Already present for {}", request_uuid);
+		return previous;
+	}
+
 	public TransactionSearchResponse findTransaction(TransactionSearchRequest request) {
 		log.trace("service.findTransaction ENTRY");
 		
@@ -220,22 +775,58 @@ public class TransactionService {
 		return response;
 	}
 	
+	public TransactionPage findAccountTransactions(String accountNumber, Timestamp from, Timestamp to, List<String> types,
+			String cursor, int pageSize) {
+		log.trace("service.findAccountTransactions ENTRY");
+
+		TransactionPage.Cursor after = (cursor == null) ? null : TransactionPage.Cursor.decode(cursor);
+		TransactionPage page = jdbcDao.findAccountTransactions(accountNumber, from, to, types, after, pageSize);
+
+		log.trace("service.findAccountTransactions EXIT");
+		return page;
+	}
+
+	/**
+	 * Not transactional: the balance is read on its own, without a lock.
+	 */
+	public AccountBalanceResponse findBalance(String accountNumber) {
+		log.trace("service.findBalance ENTRY");
+
+		long maxStaleness_ms = config.getBalanceInquiry().getMaxStalenessMillis();
+		long runningBalance_am = jdbcDao.selectBalance(accountNumber, maxStaleness_ms);
+
+		log.trace("service.findBalance EXIT");
+		return new AccountBalanceResponse(accountNumber, runningBalance_am, Math.max(0L, maxStaleness_ms));
+	}
+
+	/**
+	 * Hand every matching transaction to the consumer, newest first, without holding them.
+	 * Read-only transaction so the driver can fetch the result in pieces.
+	 */
+	@Transactional(readOnly = true)
+	public int exportAccountTransactions(String accountNumber, Timestamp from, Timestamp to, List<String> types,
+			Consumer<TransactionResource> consumer) {
+		log.trace("service.exportAccountTransactions ENTRY");
+
+		int rows = jdbcDao.streamAccountTransactions(accountNumber, from, to, types,
+				config.getHistory().getExportFetchSize(), consumer);
+
+		log.trace("service.exportAccountTransactions EXIT");
+		return rows;
+	}
+
 	@Transactional
 	public TransferAndTransactResponse transferAndTransact(TransferAndTransactRequest request) {
 		log.trace("service.transferAndTransact ENTRY");
 
-		List<TransactionResource> idempotent = jdbcDao.checkMultiIdempotency(request.getRequestUuid(), 
-				request.getTransactionRequest().getAccountNumber());
-		if (idempotent != null && idempotent.size() == 2) {
-			log.debug("service.TransferAndTransactResponse: Already present for {}", request.getRequestUuid());
-			return new TransferAndTransactResponse(TransferAndTransactResponse.SUCCESS, idempotent);
-		} else if (idempotent != null && idempotent.size() != 0) {
-			log.error("Expected 2 transactions but got {} for Request UUID {}", idempotent.size(), request.getRequestUuid().toString());
-			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
-				String.format("Expected 2 transactions and found %d for Request UUID %s.", idempotent.size(), request.getRequestUuid().toString()));			
+		boolean onConflict = relyOnUniqueIndex(request.getRequestUuid());
+		TransferAndTransactResponse idempotent = idempotentTransferAndTransactResponse(request, !onConflict, false);
+		if (idempotent != null) {
+			return idempotent;
 		}
 
-		long runningBalance_am = jdbcDao.selectBalanceForUpdate(request.getTransactionRequest().getAccountNumber());
+		String transactAccount = request.getTransactionRequest().getAccountNumber();
+		long runningBalance_am = lockAccount(transactAccount, () -> jdbcDao.selectBalanceForUpdate(transactAccount));
 
 		TransactionResource transfer = new TransactionResource();
 		transfer.setAccountNumber(request.getTransactionRequest().getAccountNumber());
@@ -251,8 +842,6 @@ public class TransactionService {
 		runningBalance_am += transfer.getTransactionAmount();
 		transfer.setRunningBalanceAmount(runningBalance_am);
 		
-		jdbcDao.insertTransaction(transfer);
-
 		TransactionResource transact = new TransactionResource();
 		transact.setAccountNumber(request.getTransactionRequest().getAccountNumber());
 		transact.setDebitCardNumber(request.getTransactionRequest().getDebitCardNumber());
@@ -268,14 +857,52 @@ public class TransactionService {
 		runningBalance_am += transact.getTransactionAmount();
 		transact.setRunningBalanceAmount(runningBalance_am);
 
-		jdbcDao.insertTransaction(transact);
+		if (onConflict) {
+			if (!jdbcDao.insertTransactionsIfAbsent(Arrays.asList(transfer, transact))) {
+				return idempotentTransferAndTransactResponse(request, true, true);
+			}
+		} else {
+			jdbcDao.insertTransactions(Arrays.asList(transfer, transact));
+		}
 		jdbcDao.upsertBalance(request.getTransactionRequest().getAccountNumber(), runningBalance_am);
 		
 		TransferAndTransactResponse response = new TransferAndTransactResponse(TransferAndTransactResponse.SUCCESS, 
 				new ArrayList<TransactionResource>());
 		response.getTransactions().add(transfer);
 		response.getTransactions().add(transact);
+		remember(response.getTransactions());
 		
 		return response;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Previously committed legs of the request, from the idempotency cache when it is enabled
+	 * and otherwise, when queryDatabase is set, from the transaction table.
+	 */
+	private TransferAndTransactResponse idempotentTransferAndTransactResponse(TransferAndTransactRequest request,
+			boolean queryDatabase, boolean conflicted) {
+		String accountNumber = request.getTransactionRequest().getAccountNumber();
+		if (config.getIdempotencyCache().isEnabled()) {
+			List<TransactionResource> cached = idempotencyCache.get(request.getRequestUuid(), accountNumber);
+			if (cached != null && cached.size() == 2) {
+				return new TransferAndTransactResponse(TransferAndTransactResponse.SUCCESS, cached);
+			}
+		}
+		if (!queryDatabase) {
+			return null;
+		}
+
+		List<TransactionResource> idempotent = jdbcDao.checkMultiIdempotency(request.getRequestUuid(), accountNumber);
+		if (idempotent != null && idempotent.size() == 2) {
+			log.debug("service.TransferAndTransactResponse: Already present for {}", request.getRequestUuid());
+			remember(idempotent);
+			return new TransferAndTransactResponse(TransferAndTransactResponse.SUCCESS, idempotent);
+		} else if (conflicted || (idempotent != null && idempotent.size() != 0)) {
+			int found = idempotent == null ? 0 : idempotent.size();
+			log.error("Expected 2 transactions but got {} for Request UUID {}", found, request.getRequestUuid().toString());
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+				String.format("Expected 2 transactions and found %d for Request UUID %s.", found, request.getRequestUuid().toString()));			
+		}
+		return null;
+	}
+}
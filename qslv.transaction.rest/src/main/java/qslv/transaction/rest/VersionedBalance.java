@@ -0,0 +1,26 @@
+package qslv.transaction.rest;
+
+/**
+ * An account's running balance with the version of the account_balance row it was read
+ * from. Every balance write increments the version; an account without a row has version
+ * NO_ROW, so the row's first write brings it to 0.
+ */
+public class VersionedBalance {
+	public static final long NO_ROW = -1L;
+
+	private final long runningBalanceAmount;
+	private final long version;
+
+	public VersionedBalance(long runningBalanceAmount, long version) {
+		this.runningBalanceAmount = runningBalanceAmount;
+		this.version = version;
+	}
+
+	public long getRunningBalanceAmount() {
+		return runningBalanceAmount;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+}
@@ -0,0 +1,94 @@
+package qslv.transaction.rest;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Runs Tomcat request handling, and with it every JdbcTemplate call, on virtual threads when
+ * qslv.virtual-threads is enabled. Streamed responses run on virtual threads as well.
+ *
+ * The build still targets Java 1.8, so the virtual thread executor is looked up at run time
+ * and is found on a Java 21 or later runtime. On an older JVM the server keeps its platform
+ * thread pool. With virtual threads, Tomcat's maximum threads no longer bound concurrent
+ * database work; the Hikari pool does. Size spring.datasource.hikari.maximum-pool-size to
+ * what the database can take and keep spring.datasource.hikari.connection-timeout short, so
+ * a request that gets no connection fails fast instead of queueing.
+ */
+@Component
+public class VirtualThreadExecutor implements WebServerFactoryCustomizer<TomcatServletWebServerFactory>, WebMvcConfigurer, DisposableBean {
+	private static final Logger log = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+
+	@Autowired
+	private ConfigProperties config;
+
+	private ExecutorService executor;
+	private boolean resolved = false;
+
+	public void setConfigProperties(ConfigProperties configProperties) {
+		this.config = configProperties;
+	}
+
+	@Override
+	public void customize(TomcatServletWebServerFactory factory) {
+		ExecutorService threads = executor();
+		if (threads != null) {
+			factory.addProtocolHandlerCustomizers(handler -> handler.setExecutor(threads));
+			log.info("Tomcat requests run on virtual threads.");
+		}
+	}
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		ExecutorService threads = executor();
+		if (threads != null) {
+			configurer.setTaskExecutor(new ConcurrentTaskExecutor(threads));
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * @return the virtual thread executor, or null when disabled or not supported by this JVM
+	 */
+	public synchronized ExecutorService executor() {
+		if (!resolved) {
+			resolved = true;
+			if (config.getVirtualThreads().isEnabled()) {
+				executor = newVirtualThreadPerTaskExecutor();
+				if (executor == null) {
+					log.warn("qslv.virtual-threads requires Java 21 or later, running {} on platform threads.",
+						System.getProperty("java.version"));
+				}
+			}
+		}
+		return executor;
+	}
+
+	static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException ex) {
+			return null;
+		} catch (InvocationTargetException | IllegalAccessException ex) {
+			log.debug("Virtual threads not available. {}", ex.getMessage());
+			return null;
+		}
+	}
+}
@@ -1,4 +1,5 @@
 create table account_balance(
 	account_id STRING PRIMARY KEY not null,
-	runningBalance_am INT8 not null default 0
+	runningBalance_am INT8 not null default 0,
+	version_no INT8 not null default 0
 );
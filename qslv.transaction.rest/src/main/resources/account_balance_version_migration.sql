@@ -0,0 +1 @@
+ALTER TABLE account_balance ADD COLUMN version_no INT8 not null default 0;
@@ -0,0 +1,2 @@
+CREATE INDEX ON transaction (account_id, insert_tsz DESC, transaction_uuid DESC);
+DROP INDEX transaction@transaction_account_id_idx;
@@ -8,7 +8,11 @@ create table transaction(
 	runningBalance_am INT8 not null default 0,
 	reservation_uuid UUID default null,
 	transactionMetaData_json JSONB default null,
-	insert_tsz TIMESTAMPTZ not null default now()
+	insert_tsz TIMESTAMPTZ not null default now(),
+	leg INT2 not null default 0,
+	reservationStatus_cd STRING default null
 );
-CREATE INDEX ON transaction (request_uuid);
-CREATE INDEX ON transaction (account_id);
+CREATE UNIQUE INDEX ON transaction (request_uuid, account_id, leg);
+CREATE INDEX ON transaction (account_id, insert_tsz DESC, transaction_uuid DESC);
+CREATE UNIQUE INDEX ON transaction (reservation_uuid) WHERE transactiontype_cd IN ('RC','RX');
+CREATE INDEX ON transaction (insert_tsz) WHERE transactiontype_cd = 'RS' AND reservationStatus_cd IS NULL;
@@ -0,0 +1,7 @@
+ALTER TABLE transaction ADD COLUMN leg INT2 not null default 0;
+UPDATE transaction SET leg = ranked.rn - 1
+FROM (SELECT transaction_uuid, row_number() OVER (PARTITION BY request_uuid, account_id ORDER BY insert_tsz, transaction_uuid) AS rn
+	FROM transaction) AS ranked
+WHERE transaction.transaction_uuid = ranked.transaction_uuid AND ranked.rn > 1;
+CREATE UNIQUE INDEX ON transaction (request_uuid, account_id, leg);
+DROP INDEX transaction@transaction_request_uuid_idx;
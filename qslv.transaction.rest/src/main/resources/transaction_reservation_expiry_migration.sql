@@ -0,0 +1 @@
+CREATE INDEX ON transaction (insert_tsz) WHERE transactiontype_cd = 'RS' AND reservationStatus_cd IS NULL;
@@ -0,0 +1 @@
+CREATE UNIQUE INDEX ON transaction (reservation_uuid) WHERE transactiontype_cd IN ('RC','RX');
@@ -0,0 +1,4 @@
+ALTER TABLE transaction ADD COLUMN reservationStatus_cd STRING default null;
+UPDATE transaction SET reservationStatus_cd = final.transactiontype_cd
+FROM (SELECT reservation_uuid, transactiontype_cd FROM transaction WHERE transactiontype_cd IN ('RC','RX')) AS final
+WHERE transaction.transaction_uuid = final.reservation_uuid AND transaction.transactiontype_cd = 'RS';
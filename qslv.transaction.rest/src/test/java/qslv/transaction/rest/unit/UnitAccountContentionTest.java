@@ -0,0 +1,131 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import qslv.transaction.rest.AccountContention;
+import qslv.transaction.rest.AccountContention.HotAccount;
+import qslv.transaction.rest.ConfigProperties;
+
+public class UnitAccountContentionTest {
+	ConfigProperties config = new ConfigProperties();
+	AccountContention contention = new AccountContention();
+
+	@BeforeEach
+	public void setup() {
+		config.getContention().setEnabled(true);
+		config.getContention().setCapacity(3);
+		contention.setConfigProperties(config);
+	}
+
+	@Test
+	public void testHottest() {
+		contention.locked("1111", 100L);
+		contention.locked("2222", 500L);
+		contention.locked("3333", 200L);
+		contention.locked("1111", 50L);
+
+		List<HotAccount> hottest = contention.hottest(2);
+		assertEquals(2, hottest.size());
+		assertEquals("2222", hottest.get(0).getAccountNumber());
+		assertEquals("3333", hottest.get(1).getAccountNumber());
+		assertEquals(3, contention.hottest(10).size());
+		assertEquals(2L, contention.hottest(10).get(2).getPostings());
+	}
+
+	@Test
+	public void testLocked_replacesColdest() {
+		contention.locked("1111", 100L);
+		contention.locked("2222", 500L);
+		contention.locked("3333", 200L);
+		contention.locked("4444", 1000L);
+
+		List<HotAccount> hottest = contention.hottest(10);
+		assertEquals(3, hottest.size());
+		assertEquals("4444", hottest.get(0).getAccountNumber());
+		assertEquals(1100L, hottest.get(0).getLockWaitNanos());
+		assertEquals(100L, hottest.get(0).getErrorNanos());
+		assertTrue(hottest.stream().noneMatch(account -> account.getAccountNumber().equals("1111")));
+	}
+
+	@Test
+	public void testLocked_replacesColdestAfterGrowth() {
+		contention.locked("1111", 100L);
+		contention.locked("2222", 500L);
+		contention.locked("3333", 200L);
+		contention.locked("1111", 1000L);
+		contention.locked("4444", 10L);
+
+		List<HotAccount> hottest = contention.hottest(10);
+		assertEquals(3, hottest.size());
+		assertEquals("1111", hottest.get(0).getAccountNumber());
+		assertEquals(210L, hottest.get(2).getLockWaitNanos());
+		assertEquals(200L, hottest.get(2).getErrorNanos());
+		assertTrue(hottest.stream().noneMatch(account -> account.getAccountNumber().equals("3333")));
+	}
+
+	@Test
+	public void testDecay_thenReplace() {
+		contention.locked("1111", 400L);
+		contention.locked("2222", 500L);
+		contention.locked("3333", 200L);
+		contention.decay();
+		contention.locked("2222", 1000L);
+		contention.locked("4444", 10L);
+
+		assertTrue(contention.hottest(10).stream().noneMatch(account -> account.getAccountNumber().equals("3333")));
+		assertEquals(110L, contention.hottest(10).get(2).getLockWaitNanos());
+	}
+
+	@Test
+	public void testRetried() {
+		contention.beginAttempt();
+		contention.locked("1111", 100L);
+		contention.locked("2222", 100L);
+		contention.retried();
+		contention.locked("1111", 100L);
+		contention.endAttempt();
+		contention.retried();
+
+		for (HotAccount account : contention.hottest(10)) {
+			assertEquals(1L, account.getRetries());
+		}
+	}
+
+	@Test
+	public void testLocked_recordsHoldTime() throws InterruptedException {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			contention.locked("1111", 100L);
+			Thread.sleep(2);
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertTrue(contention.hottest(1).get(0).getLockHeldNanos() >= 2000000L);
+	}
+
+	@Test
+	public void testDecay() {
+		contention.locked("1111", 100L);
+		contention.locked("1111", 100L);
+		contention.locked("2222", 500L);
+		contention.locked("3333", 1L);
+
+		contention.decay();
+		List<HotAccount> hottest = contention.hottest(10);
+		assertEquals(2, hottest.size());
+		assertEquals(250L, hottest.get(0).getLockWaitNanos());
+		assertEquals(0L, hottest.get(0).getPostings());
+		assertEquals(100L, hottest.get(1).getLockWaitNanos());
+		assertEquals(1L, hottest.get(1).getPostings());
+	}
+}
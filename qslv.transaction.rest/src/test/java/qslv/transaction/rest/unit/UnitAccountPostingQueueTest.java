@@ -0,0 +1,152 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import qslv.transaction.request.TransactionRequest;
+import qslv.transaction.resource.TransactionResource;
+import qslv.transaction.response.TransactionResponse;
+import qslv.transaction.rest.AccountPostingQueue;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.TransactionService;
+
+@ExtendWith(MockitoExtension.class)
+class UnitAccountPostingQueueTest {
+	@Mock
+	TransactionService service;
+	ConfigProperties config = new ConfigProperties();
+	AccountPostingQueue queue = new AccountPostingQueue();
+	ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@BeforeEach
+	public void setup() {
+		queue.setService(service);
+		queue.setConfigProperties(config);
+	}
+
+	@AfterEach
+	public void teardown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void testCreateTransaction_uncontended() {
+		TransactionRequest request = setup_request();
+		TransactionResponse setupResponse = new TransactionResponse(TransactionResponse.SUCCESS, new TransactionResource());
+		when(service.createTransaction(request)).thenReturn(setupResponse);
+
+		assertSame(setupResponse, queue.createTransaction(request));
+		verify(service, never()).createTransactions(anyList());
+	}
+
+	@Test
+	void testCreateTransaction_failure() {
+		TransactionRequest request = setup_request();
+		when(service.createTransaction(request)).thenThrow(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "garbage"));
+
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> queue.createTransaction(request));
+		assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ex.getStatus());
+	}
+
+	@Test
+	void testCreateTransaction_coalesced() throws Exception {
+		CountDownLatch firstStarted = new CountDownLatch(1);
+		CountDownLatch releaseFirst = new CountDownLatch(1);
+		TransactionRequest first = setup_request();
+		when(service.createTransaction(first)).thenAnswer(invocation -> {
+			firstStarted.countDown();
+			releaseFirst.await();
+			return new TransactionResponse(TransactionResponse.SUCCESS, new TransactionResource());
+		});
+		when(service.createTransactions(anyList())).thenAnswer(invocation -> {
+			List<TransactionRequest> requests = invocation.getArgument(0);
+			List<TransactionResponse> responses = new ArrayList<>();
+			requests.forEach(request -> {
+				TransactionResource resource = new TransactionResource();
+				resource.setRequestUuid(request.getRequestUuid());
+				responses.add(new TransactionResponse(TransactionResponse.SUCCESS, resource));
+			});
+			return responses;
+		});
+
+		Future<TransactionResponse> firstResult = executor.submit(() -> queue.createTransaction(first));
+		assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+		List<TransactionRequest> queued = new ArrayList<>();
+		List<Future<TransactionResponse>> queuedResults = new ArrayList<>();
+		for (int ii = 0; ii < 3; ii++) {
+			TransactionRequest request = setup_request();
+			queued.add(request);
+			queuedResults.add(executor.submit(() -> queue.createTransaction(request)));
+		}
+		Thread.sleep(200L);
+		releaseFirst.countDown();
+
+		assertNotNull(firstResult.get(5, TimeUnit.SECONDS));
+		for (int ii = 0; ii < 3; ii++) {
+			assertEquals(queued.get(ii).getRequestUuid(), 
+					queuedResults.get(ii).get(5, TimeUnit.SECONDS).getTransactions().get(0).getRequestUuid());
+		}
+		verify(service, times(1)).createTransaction(any(TransactionRequest.class));
+		verify(service, times(1)).createTransactions(anyList());
+	}
+
+	@Test
+	void testCreateTransaction_batchFallback() throws Exception {
+		CountDownLatch firstStarted = new CountDownLatch(1);
+		CountDownLatch releaseFirst = new CountDownLatch(1);
+		TransactionRequest first = setup_request();
+		TransactionRequest second = setup_request();
+		TransactionRequest third = setup_request();
+		TransactionResponse secondResponse = new TransactionResponse(TransactionResponse.SUCCESS, new TransactionResource());
+		when(service.createTransaction(first)).thenAnswer(invocation -> {
+			firstStarted.countDown();
+			releaseFirst.await();
+			return new TransactionResponse(TransactionResponse.SUCCESS, new TransactionResource());
+		});
+		when(service.createTransactions(anyList())).thenThrow(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "garbage"));
+		when(service.createTransaction(second)).thenReturn(secondResponse);
+		when(service.createTransaction(third)).thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "garbage"));
+
+		Future<TransactionResponse> firstResult = executor.submit(() -> queue.createTransaction(first));
+		assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+		Future<TransactionResponse> secondResult = executor.submit(() -> queue.createTransaction(second));
+		Future<TransactionResponse> thirdResult = executor.submit(() -> queue.createTransaction(third));
+		Thread.sleep(200L);
+		releaseFirst.countDown();
+
+		assertNotNull(firstResult.get(5, TimeUnit.SECONDS));
+		assertSame(secondResponse, secondResult.get(5, TimeUnit.SECONDS));
+		Exception ex = assertThrows(Exception.class, () -> thirdResult.get(5, TimeUnit.SECONDS));
+		assertEquals(HttpStatus.NOT_FOUND, ((ResponseStatusException) ex.getCause()).getStatus());
+	}
+
+	private TransactionRequest setup_request() {
+		TransactionRequest request = new TransactionRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setAccountNumber("1234567890234");
+		request.setDebitCardNumber("1235671234678234");
+		request.setTransactionAmount(-2323);
+		request.setTransactionMetaDataJson("{\"value\":23498234}");
+		return request;
+	}
+}
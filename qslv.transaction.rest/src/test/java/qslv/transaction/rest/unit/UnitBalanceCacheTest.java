@@ -0,0 +1,58 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import qslv.transaction.rest.BalanceCache;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.VersionedBalance;
+
+public class UnitBalanceCacheTest {
+	ConfigProperties config = new ConfigProperties();
+	BalanceCache cache = new BalanceCache();
+
+	@BeforeEach
+	public void setup() {
+		config.getBalanceCache().setEnabled(true);
+		cache.setConfigProperties(config);
+	}
+
+	@Test
+	public void testPut_keepsNewerVersion() {
+		assertNull(cache.get("1234"));
+		cache.put("1234", 500L, 3L);
+		cache.put("1234", 400L, 2L);
+
+		VersionedBalance balance = cache.get("1234");
+		assertEquals(500L, balance.getRunningBalanceAmount());
+		assertEquals(3L, balance.getVersion());
+
+		cache.put("1234", 700L, 4L);
+		assertEquals(700L, cache.get("1234").getRunningBalanceAmount());
+	}
+
+	@Test
+	public void testInvalidate() {
+		cache.put("1234", 500L, 3L);
+		cache.invalidate("1234");
+		assertNull(cache.get("1234"));
+		cache.put("1234", 400L, 2L);
+		assertEquals(2L, cache.get("1234").getVersion());
+	}
+
+	@Test
+	public void testPut_dropsLeastRecentlyUsed() {
+		config.getBalanceCache().setMaxEntries(2);
+		cache.put("1111", 1L, 0L);
+		cache.put("2222", 2L, 0L);
+		cache.get("1111");
+		cache.put("3333", 3L, 0L);
+
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get("1111"));
+		assertNull(cache.get("2222"));
+		assertNotNull(cache.get("3333"));
+	}
+}
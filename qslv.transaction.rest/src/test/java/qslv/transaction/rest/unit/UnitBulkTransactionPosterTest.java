@@ -0,0 +1,153 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import qslv.transaction.request.TransactionRequest;
+import qslv.transaction.resource.TransactionResource;
+import qslv.transaction.response.TransactionResponse;
+import qslv.transaction.rest.BulkTransactionPoster;
+import qslv.transaction.rest.BulkTransactionResult;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.TransactionService;
+
+@ExtendWith(MockitoExtension.class)
+public class UnitBulkTransactionPosterTest {
+	@Mock
+	TransactionService service;
+	ConfigProperties config = new ConfigProperties();
+	BulkTransactionPoster poster = new BulkTransactionPoster();
+	ObjectMapper mapper = new ObjectMapper();
+	Consumer<TransactionRequest> validator = request -> {
+		if (request.getTransactionAmount() == 0L) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Transaction Amount must not be zero(0).");
+		}
+	};
+
+	@BeforeEach
+	public void setup() {
+		poster.setService(service);
+		poster.setConfigProperties(config);
+		poster.setObjectMapper(mapper);
+	}
+
+	@Test
+	public void testPost_groupsByAccount() {
+		TransactionRequest a1 = setupRequest("2222", -100L);
+		TransactionRequest b1 = setupRequest("1111", -200L);
+		TransactionRequest invalid = setupRequest("1111", 0L);
+		TransactionRequest a2 = setupRequest("2222", -300L);
+
+		when(service.createTransactions(Arrays.asList(b1))).thenReturn(Arrays.asList(response(b1)));
+		when(service.createTransactions(Arrays.asList(a1, a2))).thenReturn(Arrays.asList(response(a1), response(a2)));
+
+		List<BulkTransactionResult> results = poster.post(Arrays.asList(a1, b1, invalid, a2), validator);
+		assertEquals(4, results.size());
+		assertEquals(a1.getRequestUuid(), results.get(0).getResponse().getTransactions().get(0).getRequestUuid());
+		assertEquals(b1.getRequestUuid(), results.get(1).getResponse().getTransactions().get(0).getRequestUuid());
+		assertEquals(400, results.get(2).getStatus());
+		assertEquals("Transaction Amount must not be zero(0).", results.get(2).getMessage());
+		assertEquals(201, results.get(3).getStatus());
+		assertEquals(a2.getRequestUuid(), results.get(3).getResponse().getTransactions().get(0).getRequestUuid());
+		verify(service, never()).createTransaction(any(TransactionRequest.class));
+	}
+
+	@Test
+	public void testPost_maxBatch() {
+		config.getBulk().setMaxBatch(2);
+		TransactionRequest r1 = setupRequest("1111", -1L);
+		TransactionRequest r2 = setupRequest("1111", -2L);
+		TransactionRequest r3 = setupRequest("1111", -3L);
+
+		when(service.createTransactions(Arrays.asList(r1, r2))).thenReturn(Arrays.asList(response(r1), response(r2)));
+		when(service.createTransactions(Arrays.asList(r3))).thenReturn(Arrays.asList(response(r3)));
+		List<BulkTransactionResult> results = poster.post(Arrays.asList(r1, r2, r3), validator);
+		assertTrue(results.stream().allMatch(result -> result.getStatus() == 201));
+	}
+
+	@Test
+	public void testPost_groupFails() {
+		TransactionRequest good = setupRequest("1111", -100L);
+		TransactionRequest bad = setupRequest("1111", -200L);
+		TransactionRequest broken = setupRequest("1111", -300L);
+
+		when(service.createTransactions(anyList())).thenThrow(new QueryTimeoutException("timeout"));
+		when(service.createTransaction(good)).thenReturn(response(good));
+		when(service.createTransaction(bad)).thenThrow(new ResponseStatusException(HttpStatus.CONFLICT, "conflict"));
+		when(service.createTransaction(broken)).thenThrow(new QueryTimeoutException("timeout"));
+
+		List<BulkTransactionResult> results = poster.post(Arrays.asList(good, bad, broken), validator);
+		assertEquals(201, results.get(0).getStatus());
+		assertEquals(409, results.get(1).getStatus());
+		assertEquals(500, results.get(2).getStatus());
+	}
+
+	@Test
+	public void testIngest() throws IOException {
+		config.getBulk().setMaxBatch(2);
+		TransactionRequest r1 = setupRequest("1111", -1L);
+		TransactionRequest r2 = setupRequest("2222", -2L);
+		TransactionRequest r3 = setupRequest("1111", -3L);
+		String input = mapper.writeValueAsString(r1) + "\n"
+				+ "{not json\n"
+				+ "\n"
+				+ mapper.writeValueAsString(r2) + "\n"
+				+ mapper.writeValueAsString(r3);
+
+		when(service.createTransactions(argThat(list -> list != null && list.size() == 1 && list.get(0).getRequestUuid().equals(r1.getRequestUuid()))))
+			.thenReturn(Arrays.asList(response(r1)));
+		when(service.createTransactions(argThat(list -> list != null && list.size() == 1 && list.get(0).getRequestUuid().equals(r2.getRequestUuid()))))
+			.thenReturn(Arrays.asList(response(r2)));
+		when(service.createTransactions(argThat(list -> list != null && list.size() == 1 && list.get(0).getRequestUuid().equals(r3.getRequestUuid()))))
+			.thenReturn(Arrays.asList(response(r3)));
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		assertEquals(4, poster.ingest(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output, validator));
+
+		String[] lines = output.toString("UTF-8").split("\n");
+		assertEquals(4, lines.length);
+		BulkTransactionResult first = mapper.readValue(lines[0], BulkTransactionResult.class);
+		BulkTransactionResult second = mapper.readValue(lines[1], BulkTransactionResult.class);
+		BulkTransactionResult fourth = mapper.readValue(lines[3], BulkTransactionResult.class);
+		assertEquals(r1.getRequestUuid(), first.getResponse().getTransactions().get(0).getRequestUuid());
+		assertEquals(400, second.getStatus());
+		assertTrue(second.getMessage().startsWith("Line 2 "));
+		assertEquals(r3.getRequestUuid(), fourth.getResponse().getTransactions().get(0).getRequestUuid());
+	}
+
+	private TransactionRequest setupRequest(String accountNumber, long amount) {
+		TransactionRequest request = new TransactionRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setAccountNumber(accountNumber);
+		request.setTransactionAmount(amount);
+		request.setTransactionMetaDataJson("{}");
+		return request;
+	}
+
+	private TransactionResponse response(TransactionRequest request) {
+		TransactionResource resource = new TransactionResource();
+		resource.setRequestUuid(request.getRequestUuid());
+		return new TransactionResponse(TransactionResponse.SUCCESS, resource);
+	}
+}
@@ -0,0 +1,155 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import qslv.transaction.rest.Bulkheads;
+import qslv.transaction.rest.Bulkheads.Lane;
+import qslv.transaction.rest.ConcurrencyLimitExceededException;
+import qslv.transaction.rest.ConfigProperties;
+
+public class UnitBulkheadsTest {
+	static SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	ConfigProperties config = new ConfigProperties();
+	Bulkheads bulkheads = new Bulkheads();
+
+	@BeforeAll
+	public static void addRegistry() {
+		Metrics.addRegistry(registry);
+	}
+
+	@AfterAll
+	public static void removeRegistry() {
+		Metrics.removeRegistry(registry);
+	}
+
+	@BeforeEach
+	public void setup() {
+		config.getBulkhead().setEnabled(true);
+		bulkheads.setConfigProperties(config);
+	}
+
+	@Test
+	public void testGetPermits_weighted() {
+		config.getBulkhead().setPermits(20);
+
+		assertEquals(8, bulkheads.getPermits(Lane.AUTHORIZATION));
+		assertEquals(6, bulkheads.getPermits(Lane.POSTING));
+		assertEquals(2, bulkheads.getPermits(Lane.BULK));
+		assertEquals(4, bulkheads.getPermits(Lane.INQUIRY));
+
+		config.getBulkhead().getWeights().put("bulk", 0);
+		config.getBulkhead().getWeights().remove("inquiry");
+		Bulkheads reweighted = bulkheads();
+		assertEquals(0, reweighted.getPermits(Lane.BULK));
+		assertEquals(10, reweighted.getPermits(Lane.AUTHORIZATION));
+		assertEquals(8, reweighted.getPermits(Lane.POSTING));
+		assertEquals(2, reweighted.getPermits(Lane.INQUIRY));
+	}
+
+	@Test
+	public void testGetPermits_allocatedOnce() {
+		config.getBulkhead().setPermits(20);
+		assertEquals(8, bulkheads.getPermits(Lane.AUTHORIZATION));
+
+		config.getBulkhead().setPermits(10);
+		assertEquals(8, bulkheads.getPermits(Lane.AUTHORIZATION));
+		assertEquals(8, bulkheads.getAvailablePermits(Lane.AUTHORIZATION));
+	}
+
+	@Test
+	public void testGetPermits_addsUpToTotal() {
+		for (int permits = 4; permits <= 40; permits++) {
+			config.getBulkhead().setPermits(permits);
+			Bulkheads resized = bulkheads();
+			int assigned = 0;
+			for (Lane lane : Lane.values()) {
+				assertTrue(resized.getPermits(lane) >= 1);
+				assigned += resized.getPermits(lane);
+			}
+			assertEquals(permits, assigned);
+		}
+
+		config.getBulkhead().setPermits(5);
+		Bulkheads small = bulkheads();
+		assertEquals(2, small.getPermits(Lane.AUTHORIZATION));
+		assertEquals(1, small.getPermits(Lane.POSTING));
+		assertEquals(1, small.getPermits(Lane.BULK));
+		assertEquals(1, small.getPermits(Lane.INQUIRY));
+	}
+
+	@Test
+	public void testValidate_fewerPermitsThanLanes() {
+		config.getBulkhead().setPermits(3);
+		assertThrows(IllegalStateException.class, () -> bulkheads.validate());
+
+		config.getBulkhead().getWeights().put("bulk", 0);
+		Bulkheads withoutBulk = bulkheads();
+		withoutBulk.validate();
+		assertEquals(0, withoutBulk.getAvailablePermits(Lane.BULK));
+	}
+
+	@Test
+	public void testExecute_laneDisabled() {
+		config.getBulkhead().setPermits(10);
+		config.getBulkhead().getWeights().put("bulk", 0);
+
+		ConcurrencyLimitExceededException ex = assertThrows(ConcurrencyLimitExceededException.class,
+			() -> bulkheads.execute(Lane.BULK, () -> "never"));
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatus());
+		assertEquals("authorized", bulkheads.execute(Lane.AUTHORIZATION, () -> "authorized"));
+	}
+
+	@Test
+	public void testExecute_laneFull() {
+		config.getBulkhead().setPermits(10);
+		double rejected = registry.counter("qslv.bulkhead.rejected", "lane", "bulk").count();
+
+		ConcurrencyLimitExceededException ex = assertThrows(ConcurrencyLimitExceededException.class,
+			() -> bulkheads.execute(Lane.BULK, () -> bulkheads.execute(Lane.BULK, () -> "never")));
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatus());
+		assertEquals(1, ex.getRetryAfterSeconds());
+		assertEquals(rejected + 1, registry.counter("qslv.bulkhead.rejected", "lane", "bulk").count());
+		assertEquals(1, bulkheads.getAvailablePermits(Lane.BULK));
+	}
+
+	@Test
+	public void testExecute_otherLanesUnaffected() {
+		config.getBulkhead().setPermits(10);
+
+		String result = bulkheads.execute(Lane.BULK, () -> {
+			assertEquals(0, bulkheads.getAvailablePermits(Lane.BULK));
+			return bulkheads.execute(Lane.AUTHORIZATION, () -> {
+				assertEquals(3, bulkheads.getAvailablePermits(Lane.AUTHORIZATION));
+				return "authorized";
+			});
+		});
+		assertEquals("authorized", result);
+		assertEquals(4, bulkheads.getAvailablePermits(Lane.AUTHORIZATION));
+		assertEquals(1, bulkheads.getAvailablePermits(Lane.BULK));
+	}
+
+	@Test
+	public void testExecute_releasesOnFailure() {
+		config.getBulkhead().setPermits(10);
+
+		assertThrows(IllegalStateException.class, () -> bulkheads.execute(Lane.INQUIRY, () -> {
+			throw new IllegalStateException("failed");
+		}));
+		assertEquals(2, bulkheads.getAvailablePermits(Lane.INQUIRY));
+	}
+
+	private Bulkheads bulkheads() {
+		Bulkheads created = new Bulkheads();
+		created.setConfigProperties(config);
+		return created;
+	}
+}
@@ -0,0 +1,172 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import qslv.transaction.rest.ConcurrencyLimitAdvice;
+import qslv.transaction.rest.ConcurrencyLimitExceededException;
+import qslv.transaction.rest.ConcurrencyLimiter;
+import qslv.transaction.rest.ConfigProperties;
+
+public class UnitConcurrencyLimiterTest {
+	static SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	ConfigProperties config = new ConfigProperties();
+	ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+
+	@BeforeAll
+	public static void addRegistry() {
+		Metrics.addRegistry(registry);
+	}
+
+	@AfterAll
+	public static void removeRegistry() {
+		Metrics.removeRegistry(registry);
+	}
+
+	@BeforeEach
+	public void setup() {
+		config.getConcurrencyLimit().setEnabled(true);
+		config.getConcurrencyLimit().setMinLimit(1);
+		limiter.setConfigProperties(config);
+	}
+
+	@Test
+	public void testExecute_rejectsOverLimit() {
+		config.getConcurrencyLimit().setInitialLimit(2);
+		config.getConcurrencyLimit().setMaxLimit(2);
+		config.getConcurrencyLimit().setRetryAfterSeconds(3);
+		double rejected = registry.counter("qslv.concurrency.rejected", "endpoint", "POST/Reservation").count();
+
+		ConcurrencyLimitExceededException ex = assertThrows(ConcurrencyLimitExceededException.class,
+			() -> limiter.execute("POST/Transaction", () ->
+				limiter.execute("POST/Transaction", () ->
+					limiter.execute("POST/Reservation", () -> "never"))));
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatus());
+		assertEquals(3, ex.getRetryAfterSeconds());
+		assertEquals(rejected + 1, registry.counter("qslv.concurrency.rejected", "endpoint", "POST/Reservation").count());
+		assertEquals(0, limiter.getInflight());
+		assertEquals("done", limiter.execute("POST/Transaction", () -> "done"));
+	}
+
+	@Test
+	public void testExecute_databaseFailureBacksOff() {
+		config.getConcurrencyLimit().setInitialLimit(20);
+
+		assertThrows(QueryTimeoutException.class, () -> limiter.execute("POST/Transaction", () -> {
+			throw new QueryTimeoutException("timeout");
+		}));
+		assertEquals(18, limiter.getLimit());
+		assertEquals(0, limiter.getInflight());
+	}
+
+	@Test
+	public void testExecute_concurrentFailuresEachBackOff() throws Exception {
+		config.getConcurrencyLimit().setInitialLimit(1000);
+		config.getConcurrencyLimit().setMaxLimit(1000);
+		CountDownLatch inflight = new CountDownLatch(16);
+		List<Thread> threads = new ArrayList<>();
+		for (int ii = 0; ii < 16; ii++) {
+			Thread thread = new Thread(() -> {
+				try {
+					limiter.execute("POST/Transaction", () -> {
+						inflight.countDown();
+						try {
+							inflight.await(5, TimeUnit.SECONDS);
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+						}
+						throw new QueryTimeoutException("timeout");
+					});
+				} catch (QueryTimeoutException expected) {
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join(10000L);
+		}
+		assertEquals((int) (1000 * Math.pow(0.9, 16)), limiter.getLimit());
+		assertEquals(0, limiter.getInflight());
+	}
+
+	@Test
+	public void testExecute_idleDoesNotGrow() {
+		config.getConcurrencyLimit().setInitialLimit(20);
+
+		for (int ii = 0; ii < 100; ii++) {
+			limiter.execute("GET/Transaction", () -> "done");
+		}
+		assertEquals(20, limiter.getLimit());
+	}
+
+	@Test
+	public void testExecute_growsWhileLatencyHolds() throws Exception {
+		config.getConcurrencyLimit().setInitialLimit(10);
+		config.getConcurrencyLimit().setTolerance(100.0);
+
+		concurrently(8, 0L);
+		assertTrue(limiter.getLimit() > 10, "limit " + limiter.getLimit());
+	}
+
+	@Test
+	public void testExecute_shrinksWhenLatencyRises() throws Exception {
+		config.getConcurrencyLimit().setInitialLimit(100);
+		for (int ii = 0; ii < 20; ii++) {
+			limiter.execute("GET/Transaction", () -> "done");
+		}
+		assertEquals(100, limiter.getLimit());
+
+		concurrently(60, 50L);
+		assertTrue(limiter.getLimit() < 100, "limit " + limiter.getLimit());
+		assertEquals(0, limiter.getInflight());
+	}
+
+	private void concurrently(int callers, long sleep_ms) throws InterruptedException {
+		CountDownLatch inflight = new CountDownLatch(callers);
+		List<Thread> threads = new ArrayList<>();
+		for (int ii = 0; ii < callers; ii++) {
+			Thread thread = new Thread(() -> limiter.execute("POST/Transaction", () -> {
+				inflight.countDown();
+				try {
+					inflight.await(5, TimeUnit.SECONDS);
+					Thread.sleep(sleep_ms);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				return null;
+			}));
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join(10000L);
+		}
+	}
+
+	@Test
+	public void testAdvice_retryAfter() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		new ConcurrencyLimitAdvice().handleConcurrencyLimitExceeded(new ConcurrencyLimitExceededException(20, 3), response);
+
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+		assertEquals("3", response.getHeader(HttpHeaders.RETRY_AFTER));
+		assertEquals("Concurrency limit of 20 reached", response.getErrorMessage());
+	}
+}
@@ -0,0 +1,120 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import qslv.transaction.request.TransactionRequest;
+import qslv.transaction.resource.TransactionResource;
+import qslv.transaction.response.TransactionResponse;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.GroupCommitQueue;
+import qslv.transaction.rest.TransactionService;
+
+@ExtendWith(MockitoExtension.class)
+class UnitGroupCommitQueueTest {
+	@Mock
+	TransactionService service;
+	ConfigProperties config = new ConfigProperties();
+	GroupCommitQueue queue = new GroupCommitQueue();
+	ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@BeforeEach
+	public void setup() {
+		queue.setService(service);
+		queue.setConfigProperties(config);
+	}
+
+	@AfterEach
+	public void teardown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void testCreateTransaction_alone() {
+		config.getGroupCommit().setWindowMicros(100L);
+		TransactionRequest request = setup_request("1234567890234");
+		TransactionResponse setupResponse = new TransactionResponse(TransactionResponse.SUCCESS, new TransactionResource());
+		when(service.createTransaction(request)).thenReturn(setupResponse);
+
+		assertSame(setupResponse, queue.createTransaction(request));
+		verify(service, never()).createTransactions(anyList());
+	}
+
+	@Test
+	void testCreateTransaction_fullBatch() throws Exception {
+		config.getGroupCommit().setWindowMicros(TimeUnit.SECONDS.toMicros(30L));
+		config.getGroupCommit().setMaxBatch(3);
+		when(service.createTransactions(anyList())).thenAnswer(invocation -> {
+			List<TransactionRequest> requests = invocation.getArgument(0);
+			List<TransactionResponse> responses = new ArrayList<>();
+			requests.forEach(request -> {
+				TransactionResource resource = new TransactionResource();
+				resource.setRequestUuid(request.getRequestUuid());
+				responses.add(new TransactionResponse(TransactionResponse.SUCCESS, resource));
+			});
+			return responses;
+		});
+
+		List<TransactionRequest> requests = new ArrayList<>();
+		List<Future<TransactionResponse>> results = new ArrayList<>();
+		for (int ii = 0; ii < 3; ii++) {
+			TransactionRequest request = setup_request("123456789023" + ii);
+			requests.add(request);
+			results.add(executor.submit(() -> queue.createTransaction(request)));
+		}
+
+		for (int ii = 0; ii < 3; ii++) {
+			assertEquals(requests.get(ii).getRequestUuid(), 
+					results.get(ii).get(5, TimeUnit.SECONDS).getTransactions().get(0).getRequestUuid());
+		}
+		verify(service, times(1)).createTransactions(argThat(list -> list.size() == 3));
+		verify(service, never()).createTransaction(any(TransactionRequest.class));
+	}
+
+	@Test
+	void testCreateTransaction_batchFallback() throws Exception {
+		config.getGroupCommit().setWindowMicros(TimeUnit.SECONDS.toMicros(30L));
+		config.getGroupCommit().setMaxBatch(2);
+		TransactionRequest first = setup_request("1234567890234");
+		TransactionRequest second = setup_request("1234567890235");
+		TransactionResponse firstResponse = new TransactionResponse(TransactionResponse.SUCCESS, new TransactionResource());
+		when(service.createTransactions(anyList())).thenThrow(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "garbage"));
+		when(service.createTransaction(first)).thenReturn(firstResponse);
+		when(service.createTransaction(second)).thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "garbage"));
+
+		Future<TransactionResponse> firstResult = executor.submit(() -> queue.createTransaction(first));
+		Future<TransactionResponse> secondResult = executor.submit(() -> queue.createTransaction(second));
+
+		assertSame(firstResponse, firstResult.get(5, TimeUnit.SECONDS));
+		Exception ex = assertThrows(Exception.class, () -> secondResult.get(5, TimeUnit.SECONDS));
+		assertEquals(HttpStatus.NOT_FOUND, ((ResponseStatusException) ex.getCause()).getStatus());
+	}
+
+	private TransactionRequest setup_request(String account) {
+		TransactionRequest request = new TransactionRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setAccountNumber(account);
+		request.setDebitCardNumber("1235671234678234");
+		request.setTransactionAmount(-2323);
+		request.setTransactionMetaDataJson("{\"value\":23498234}");
+		return request;
+	}
+}
@@ -0,0 +1,112 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import qslv.transaction.resource.TransactionResource;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.IdempotencyResultCache;
+
+public class UnitIdempotencyResultCacheTest {
+	ConfigProperties config = new ConfigProperties();
+	IdempotencyResultCache cache = new IdempotencyResultCache();
+
+	static SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@BeforeAll
+	public static void setupRegistry() {
+		Metrics.addRegistry(registry);
+	}
+
+	@AfterAll
+	public static void teardownRegistry() {
+		Metrics.removeRegistry(registry);
+	}
+
+	@BeforeEach
+	public void setup() {
+		config.getIdempotencyCache().setEnabled(true);
+		cache.setConfigProperties(config);
+	}
+
+	@Test
+	public void testGet_hitAndMiss() {
+		UUID request_uuid = UUID.randomUUID();
+		List<TransactionResource> transactions = Collections.singletonList(new TransactionResource());
+		double hits = registry.counter("qslv.idempotency.cache", "result", "hit").count();
+		double misses = registry.counter("qslv.idempotency.cache", "result", "miss").count();
+
+		assertNull(cache.get(request_uuid, "1234"));
+		cache.put(request_uuid, "1234", transactions);
+		assertSame(transactions, cache.get(request_uuid, "1234"));
+		assertNull(cache.get(request_uuid, "5678"));
+
+		assertEquals(hits + 1, registry.counter("qslv.idempotency.cache", "result", "hit").count());
+		assertEquals(misses + 2, registry.counter("qslv.idempotency.cache", "result", "miss").count());
+	}
+
+	@Test
+	public void testGet_expired() throws InterruptedException {
+		config.getIdempotencyCache().setTtlMillis(1L);
+		UUID request_uuid = UUID.randomUUID();
+
+		cache.put(request_uuid, "1234", Collections.singletonList(new TransactionResource()));
+		Thread.sleep(5L);
+		assertNull(cache.get(request_uuid, "1234"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testPut_maxEntries() {
+		config.getIdempotencyCache().setMaxEntries(2);
+		UUID first = UUID.randomUUID();
+
+		cache.put(first, "1234", Collections.singletonList(new TransactionResource()));
+		cache.put(UUID.randomUUID(), "1234", Collections.singletonList(new TransactionResource()));
+		cache.put(UUID.randomUUID(), "1234", Collections.singletonList(new TransactionResource()));
+		assertEquals(2, cache.size());
+		assertNull(cache.get(first, "1234"));
+	}
+
+	@Test
+	public void testPut_afterCommit() {
+		UUID committed = UUID.randomUUID();
+		UUID rolledBack = UUID.randomUUID();
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			cache.put(committed, "1234", Collections.singletonList(new TransactionResource()));
+			assertEquals(0, cache.size());
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			cache.put(rolledBack, "1234", Collections.singletonList(new TransactionResource()));
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		assertNotNull(cache.get(committed, "1234"));
+		assertNull(cache.get(rolledBack, "1234"));
+	}
+}
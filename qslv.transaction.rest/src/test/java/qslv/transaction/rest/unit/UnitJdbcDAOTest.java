@@ -3,9 +3,16 @@ package qslv.transaction.rest.unit;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -18,12 +25,14 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.web.server.ResponseStatusException;
 
 import qslv.transaction.resource.TransactionResource;
 import qslv.transaction.rest.JdbcDao;
+import qslv.transaction.rest.TransactionPage;
+import qslv.transaction.rest.VersionedBalance;
 
 @ExtendWith(MockitoExtension.class)
 public class UnitJdbcDAOTest {
@@ -55,80 +64,159 @@ public class UnitJdbcDAOTest {
 		verify(jdbcTemplate).queryForObject(any(),  eq(Long.class), any());
 	}
 
+	//--------------------------
+	// selectVersionedBalanceForUpdate
+	//--------------------------
+	@Test
+	public void testSelectVersionedBalanceForUpdate() {
+		when(jdbcTemplate.query( eq(JdbcDao.getVersionedBalance_sql), ArgumentMatchers.<RowMapper<VersionedBalance>>any(), eq("1234") ))
+			.thenReturn(Collections.singletonList(new VersionedBalance(1001L, 4L)))
+			.thenReturn(Collections.emptyList());
+
+		VersionedBalance balance = jdbcDao.selectVersionedBalanceForUpdate("1234");
+		assertEquals(1001L, balance.getRunningBalanceAmount());
+		assertEquals(4L, balance.getVersion());
+		balance = jdbcDao.selectVersionedBalanceForUpdate("1234");
+		assertEquals(0L, balance.getRunningBalanceAmount());
+		assertEquals(VersionedBalance.NO_ROW, balance.getVersion());
+	}
+
+	//--------------------------
+	// updateBalanceIfVersion
+	//--------------------------
+	@Test
+	public void testUpdateBalanceIfVersion() {
+		when(jdbcTemplate.update( JdbcDao.updateBalanceIfVersion_sql, 900L, "1234", 4L )).thenReturn(1).thenReturn(0).thenReturn(2);
+
+		assertTrue(jdbcDao.updateBalanceIfVersion("1234", 900L, 4L));
+		assertFalse(jdbcDao.updateBalanceIfVersion("1234", 900L, 4L));
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()->{jdbcDao.updateBalanceIfVersion("1234", 900L, 4L);});
+		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+
+	//--------------------------
+	// selectBalance
+	//--------------------------
+	@Test
+	public void testSelectBalance() {
+		when(jdbcTemplate.queryForObject( eq(JdbcDao.getBalanceNoLock_sql), eq(Long.class), eq("1234") )).thenReturn(1001L);
+		when(jdbcTemplate.queryForObject( eq(JdbcDao.getBalanceAsOf_sql + "10000" + JdbcDao.getBalanceAsOf_suffix_sql),
+				eq(Long.class), eq("1234") )).thenReturn(999L);
+
+		assertEquals(1001L, jdbcDao.selectBalance("1234", 0L));
+		assertEquals(999L, jdbcDao.selectBalance("1234", 10000L));
+	}
+
+	@Test
+	public void testSelectBalance_notFound() {
+		when(jdbcTemplate.queryForObject( eq(JdbcDao.getBalanceNoLock_sql), eq(Long.class), eq("1234") ))
+			.thenThrow(new EmptyResultDataAccessException(1));
+		assertEquals(0L, jdbcDao.selectBalance("1234", 0L));
+	}
+
 	//--------------------------
 	// insertTransaction
 	//--------------------------
 	@Test
 	public void testInsertTransaction() {
 		TransactionResource resource = new TransactionResource();
-		UUID test_uuid = UUID.randomUUID();
 		
-		doAnswer(invocation -> {
-			KeyHolder keyHolder = invocation.getArgument(1);
-			keyHolder.getKeyList().add(Collections.singletonMap("transaction_uuid", test_uuid));
-			return null;
-		}).when(jdbcTemplate).update( any(PreparedStatementCreator.class), any(KeyHolder.class) );
+		doReturn(1).when(jdbcTemplate).update( any(PreparedStatementCreator.class) );
 		jdbcDao.insertTransaction(resource);
-		assertEquals(resource.getTransactionUuid(), test_uuid) ;
+		assertEquals(7, resource.getTransactionUuid().version());
 	}
 	@Test
 	public void testInsertTransaction_throws() {
 		TransactionResource resource = new TransactionResource();
 		
-		doAnswer(invocation -> {
-			KeyHolder keyHolder = invocation.getArgument(1);
-			keyHolder.getKeyList().add(Collections.singletonMap("transaction_uuid", "String"));
-			return null;
-		}).when(jdbcTemplate).update( any(PreparedStatementCreator.class), any(KeyHolder.class) );
+		doReturn(0).when(jdbcTemplate).update( any(PreparedStatementCreator.class) );
 		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()-> { jdbcDao.insertTransaction(resource); } );
 		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
 	}
+
+	//--------------------------
+	// insertTransactions
+	//--------------------------
+	@Test
+	public void testInsertTransactions() {
+		List<TransactionResource> resources = Arrays.asList(new TransactionResource(), new TransactionResource());
+
+		doReturn(2).when(jdbcTemplate).update( any(PreparedStatementCreator.class) );
+		jdbcDao.insertTransactions(resources);
+		assertNotNull(resources.get(0).getTransactionUuid());
+		assertTrue(resources.get(0).getTransactionUuid().compareTo(resources.get(1).getTransactionUuid()) < 0);
+	}
 	@Test
-	public void testInsertTransaction_throws2() {
+	public void testInsertTransactions_empty() {
+		jdbcDao.insertTransactions(Collections.emptyList());
+		verifyNoInteractions(jdbcTemplate);
+	}
+	@Test
+	public void testInsertTransactions_throws() {
+		List<TransactionResource> resources = Arrays.asList(new TransactionResource(), new TransactionResource());
+
+		doReturn(1).when(jdbcTemplate).update( any(PreparedStatementCreator.class) );
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()-> { jdbcDao.insertTransactions(resources); } );
+		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+
+	@Test
+	public void testInsertTransactionIfAbsent() {
 		TransactionResource resource = new TransactionResource();
-		
+
+		when(jdbcTemplate.update( any(PreparedStatementCreator.class) )).thenReturn(1).thenReturn(0);
+		assertTrue(jdbcDao.insertTransactionIfAbsent(resource));
+		assertEquals(7, resource.getTransactionUuid().version());
+		assertFalse(jdbcDao.insertTransactionIfAbsent(resource));
+	}
+	@Test
+	public void testInsertTransactionsIfAbsent_partial() {
+		List<TransactionResource> resources = Arrays.asList(new TransactionResource(), new TransactionResource());
+
+		doReturn(1).when(jdbcTemplate).update( any(PreparedStatementCreator.class) );
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()-> { jdbcDao.insertTransactionsIfAbsent(resources); } );
+		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+
+	@Test
+	public void testInsertReleases() throws Exception {
+		TransactionResource first = new TransactionResource();
+		first.setReservationUuid(UUID.randomUUID());
+		TransactionResource second = new TransactionResource();
+		second.setReservationUuid(UUID.randomUUID());
+		Connection connection = mock(Connection.class);
+		PreparedStatement statement = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+
+		when(connection.prepareStatement(anyString())).thenReturn(statement);
+		when(rs.getObject(1, UUID.class)).thenReturn(second.getReservationUuid());
 		doAnswer(invocation -> {
+			invocation.getArgument(0, PreparedStatementCreator.class).createPreparedStatement(connection);
+			invocation.getArgument(1, RowCallbackHandler.class).processRow(rs);
 			return null;
-		}).when(jdbcTemplate).update( any(PreparedStatementCreator.class), any(KeyHolder.class) );
-		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()-> { jdbcDao.insertTransaction(resource); } );
-		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
+		}).when(jdbcTemplate).query( any(PreparedStatementCreator.class), any(RowCallbackHandler.class) );
+
+		assertEquals(Collections.singleton(second.getReservationUuid()), jdbcDao.insertReleases(Arrays.asList(first, second)));
+		verify(connection).prepareStatement(argThat(sql -> sql.endsWith(JdbcDao.on_any_conflict_returning_sql + ";")));
+		assertEquals(7, first.getTransactionUuid().version());
 	}
-	
+
 	//--------------------------
 	// insertReservation
 	//--------------------------
 	@Test
 	public void testInsertReservation() {
 		TransactionResource resource = new TransactionResource();
-		UUID test_uuid = UUID.randomUUID();
 		
-		doAnswer(invocation -> {
-			KeyHolder keyHolder = invocation.getArgument(1);
-			keyHolder.getKeyList().add(Collections.singletonMap("transaction_uuid", test_uuid));
-			return null;
-		}).when(jdbcTemplate).update( any(PreparedStatementCreator.class), any(KeyHolder.class) );
+		doReturn(1).when(jdbcTemplate).update( any(PreparedStatementCreator.class) );
 		jdbcDao.insertCommitOrCancel(resource);
-		assertEquals(resource.getTransactionUuid(), test_uuid) ;
+		assertEquals(7, resource.getTransactionUuid().version());
 	}
 	@Test
 	public void testInsertReservation_throws() {
 		TransactionResource resource = new TransactionResource();
 		
-		doAnswer(invocation -> {
-			KeyHolder keyHolder = invocation.getArgument(1);
-			keyHolder.getKeyList().add(Collections.singletonMap("transaction_uuid", "String"));
-			return null;
-		}).when(jdbcTemplate).update( any(PreparedStatementCreator.class), any(KeyHolder.class) );
-		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()-> { jdbcDao.insertCommitOrCancel(resource); } );
-		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
-	}
-	@Test
-	public void testInsertReservation_throws2() {
-		TransactionResource resource = new TransactionResource();
-		
-		doAnswer(invocation -> {
-			return null;
-		}).when(jdbcTemplate).update( any(PreparedStatementCreator.class), any(KeyHolder.class) );
+		doReturn(0).when(jdbcTemplate).update( any(PreparedStatementCreator.class) );
 		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()-> { jdbcDao.insertCommitOrCancel(resource); } );
 		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
 	}
@@ -145,6 +233,101 @@ public class UnitJdbcDAOTest {
 		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
 	}
 	
+	//--------------------------
+	// postTransactionConditionally
+	//--------------------------
+	@Test
+	public void testPostTransactionConditionally() {
+		TransactionResource resource = new TransactionResource();
+		resource.setAccountNumber("Account");
+		resource.setTransactionAmount(-100L);
+
+		when(jdbcTemplate.query( eq(JdbcDao.conditionalDebit_sql), ArgumentMatchers.<RowMapper<Long>>any(), 
+				ArgumentMatchers.<Object>any() ) )
+			.thenReturn(Collections.singletonList(900L));
+		assertTrue(jdbcDao.postTransactionConditionally(resource, true));
+		assertEquals(7, resource.getTransactionUuid().version());
+		assertEquals(900L, resource.getRunningBalanceAmount());
+	}
+	@Test
+	public void testPostTransactionConditionally_insufficientFunds() {
+		TransactionResource resource = new TransactionResource();
+		resource.setAccountNumber("Account");
+		resource.setTransactionAmount(-100L);
+
+		when(jdbcTemplate.query( eq(JdbcDao.conditionalDebit_sql), ArgumentMatchers.<RowMapper<Long>>any(), 
+				ArgumentMatchers.<Object>any() ) )
+			.thenReturn(new ArrayList<Long>());
+		assertFalse(jdbcDao.postTransactionConditionally(resource, true));
+		assertNull(resource.getTransactionUuid());
+	}
+	@Test
+	public void testPostTransactionConditionally_unconditional() {
+		TransactionResource resource = new TransactionResource();
+		resource.setAccountNumber("Account");
+		resource.setTransactionAmount(-100L);
+
+		when(jdbcTemplate.query( eq(JdbcDao.unconditionalPost_sql), ArgumentMatchers.<RowMapper<Long>>any(), 
+				ArgumentMatchers.<Object>any() ) )
+			.thenReturn(Collections.singletonList(-100L));
+		assertTrue(jdbcDao.postTransactionConditionally(resource, false));
+		assertEquals(-100L, resource.getRunningBalanceAmount());
+	}
+
+	//--------------------------
+	// selectBalancesForUpdate
+	//--------------------------
+	@Test
+	public void testSelectBalancesForUpdate() {
+		doAnswer(invocation -> {
+			RowCallbackHandler handler = invocation.getArgument(1);
+			ResultSet rs = mock(ResultSet.class);
+			when(rs.getString(1)).thenReturn("1111");
+			when(rs.getLong(2)).thenReturn(5000L);
+			handler.processRow(rs);
+			return null;
+		}).when(jdbcTemplate).query( eq(JdbcDao.getBalances_sql + "?,?" + JdbcDao.getBalances_suffix_sql),
+				any(RowCallbackHandler.class), eq("1111"), eq("2222") );
+
+		Map<String, Long> balances = jdbcDao.selectBalancesForUpdate(Arrays.asList("2222", "1111"));
+		assertEquals(5000L, balances.get("1111"));
+		assertEquals(0L, balances.get("2222"));
+	}
+
+	//--------------------------
+	// upsertBalances
+	//--------------------------
+	@Test
+	public void testUpsertBalances() {
+		TreeMap<String, Long> balances = new TreeMap<>();
+		balances.put("1111", 5000L);
+		balances.put("2222", -20L);
+		when(jdbcTemplate.update( JdbcDao.upsert_balances_sql + "(?,?),(?,?)" + JdbcDao.upsert_balances_suffix_sql, "1111", 5000L, "2222", -20L )).thenReturn(2).thenReturn(1);
+
+		jdbcDao.upsertBalances(balances);
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()->{jdbcDao.upsertBalances(balances);});
+		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+
+	//--------------------------
+	// findRecentRequestUuids
+	//--------------------------
+	@Test
+	public void testFindRecentRequestUuids() {
+		UUID request_uuid = UUID.randomUUID();
+		List<UUID> found = new ArrayList<>();
+
+		doAnswer(invocation -> {
+			RowCallbackHandler handler = invocation.getArgument(1);
+			ResultSet rs = mock(ResultSet.class);
+			when(rs.getObject(1, UUID.class)).thenReturn(request_uuid);
+			handler.processRow(rs);
+			return null;
+		}).when(jdbcTemplate).query( eq(JdbcDao.recentRequestUuids_sql), any(RowCallbackHandler.class), ArgumentMatchers.<Object>any() );
+		assertEquals(1, jdbcDao.findRecentRequestUuids(System.currentTimeMillis(), found::add));
+		assertEquals(Collections.singletonList(request_uuid), found);
+	}
+
 	//--------------------------
 	// verifyReservationOpen
 	//--------------------------
@@ -177,6 +360,163 @@ public class UnitJdbcDAOTest {
 		assert(ex.getStatus() == HttpStatus.NOT_FOUND);
 	}
 	
+	//--------------------------
+	// finalizeReservation
+	//--------------------------
+	@Test
+	public void testFinalizeReservation() {
+		TransactionResource resource = new TransactionResource();
+		resource.setAccountNumber("7328429347");
+		UUID reservation_uuid = UUID.randomUUID();
+
+		when(jdbcTemplate.query( eq(JdbcDao.finalizeReservation_sql), ArgumentMatchers.<RowMapper<TransactionResource>>any(),
+				eq(TransactionResource.RESERVATION_COMMIT), eq(reservation_uuid) ) )
+			.thenReturn(Collections.singletonList(resource));
+
+		TransactionResource result = jdbcDao.finalizeReservation(reservation_uuid, TransactionResource.RESERVATION_COMMIT);
+		verify(jdbcTemplate, never()).queryForList(anyString(), eq(String.class), any(UUID.class));
+		assertSame(resource, result);
+	}
+
+	@Test
+	public void testFinalizeReservation_alreadyFinalized() {
+		when(jdbcTemplate.query( eq(JdbcDao.finalizeReservation_sql), ArgumentMatchers.<RowMapper<TransactionResource>>any(),
+				anyString(), any(UUID.class) ) )
+			.thenReturn(new ArrayList<TransactionResource>());
+		when(jdbcTemplate.queryForList( eq(JdbcDao.reservationStatus_sql), eq(String.class), any(UUID.class) ))
+			.thenReturn(Collections.singletonList(TransactionResource.RESERVATION_CANCEL))
+			.thenReturn(new ArrayList<String>());
+
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+				()->{jdbcDao.finalizeReservation(UUID.randomUUID(), TransactionResource.RESERVATION_COMMIT);});
+		assert(ex.getStatus() == HttpStatus.CONFLICT);
+
+		ex = assertThrows(ResponseStatusException.class,
+				()->{jdbcDao.finalizeReservation(UUID.randomUUID(), TransactionResource.RESERVATION_COMMIT);});
+		assert(ex.getStatus() == HttpStatus.NOT_FOUND);
+	}
+
+	//--------------------------
+	// expireReservations
+	//--------------------------
+	@Test
+	public void testExpireReservations() {
+		TransactionResource resource = new TransactionResource();
+
+		when(jdbcTemplate.query( eq(JdbcDao.expireReservations_sql), ArgumentMatchers.<RowMapper<TransactionResource>>any(),
+				any(Timestamp.class), eq(500) ) )
+			.thenReturn(Collections.singletonList(resource));
+
+		List<TransactionResource> result = jdbcDao.expireReservations(System.currentTimeMillis(), 500);
+		assertEquals(1, result.size());
+	}
+
+	//--------------------------
+	// findRelatedToReservation
+	//--------------------------
+	@Test
+	public void testFindRelatedToReservation() {
+		UUID reservation_uuid = UUID.randomUUID();
+		TransactionResource reservation = new TransactionResource();
+		reservation.setTransactionTypeCode(TransactionResource.RESERVATION);
+		TransactionResource commit = new TransactionResource();
+		commit.setTransactionTypeCode(TransactionResource.RESERVATION_COMMIT);
+		when(jdbcTemplate.query( eq(JdbcDao.selectRelatedToReservation_sql), ArgumentMatchers.<RowMapper<TransactionResource>>any(),
+				eq(reservation_uuid), eq(reservation_uuid) )).thenReturn(Arrays.asList(reservation, commit));
+
+		List<TransactionResource> related = jdbcDao.findRelatedToReservation(reservation_uuid);
+		assertEquals(Arrays.asList(reservation, commit), related);
+	}
+
+	@Test
+	public void testFindRelatedToReservation_notFound() {
+		TransactionResource commit = new TransactionResource();
+		commit.setTransactionTypeCode(TransactionResource.RESERVATION_COMMIT);
+		when(jdbcTemplate.query( eq(JdbcDao.selectRelatedToReservation_sql), ArgumentMatchers.<RowMapper<TransactionResource>>any(),
+				any(UUID.class), any(UUID.class) )).thenReturn(Collections.emptyList()).thenReturn(Collections.singletonList(commit));
+
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()->{jdbcDao.findRelatedToReservation(UUID.randomUUID());});
+		assert(ex.getStatus() == HttpStatus.NOT_FOUND);
+		ex = assertThrows(ResponseStatusException.class, ()->{jdbcDao.findRelatedToReservation(UUID.randomUUID());});
+		assert(ex.getStatus() == HttpStatus.NOT_FOUND);
+	}
+
+	//--------------------------
+	// findAccountTransactions
+	//--------------------------
+	@Test
+	public void testFindAccountTransactions() {
+		TransactionResource first = new TransactionResource();
+		first.setTransactionUuid(UUID.randomUUID());
+		first.setInsertTimestamp(Timestamp.valueOf("2020-03-01 10:00:00"));
+		TransactionResource second = new TransactionResource();
+		second.setTransactionUuid(UUID.randomUUID());
+		second.setInsertTimestamp(Timestamp.valueOf("2020-03-01 09:00:00"));
+		TransactionResource third = new TransactionResource();
+		Timestamp from = Timestamp.valueOf("2020-01-01 00:00:00");
+		TransactionPage.Cursor after = new TransactionPage.Cursor(Timestamp.valueOf("2020-04-01 00:00:00"), UUID.randomUUID());
+		String sql = JdbcDao.selectAccountTransactions_sql + JdbcDao.accountTransactionsFrom_sql + JdbcDao.accountTransactionsAfter_sql
+				+ JdbcDao.accountTransactionsTypes_sql + "?,?)" + JdbcDao.accountTransactionsOrder_sql;
+
+		when(jdbcTemplate.query( eq(sql), ArgumentMatchers.<RowMapper<TransactionResource>>any(),
+				eq("1234"), eq(from), eq(after.getInsertTimestamp()), eq(after.getTransactionUuid()), eq("RS"), eq("RC"), eq(3) ) )
+			.thenReturn(new ArrayList<>(Arrays.asList(first, second, third)));
+
+		TransactionPage page = jdbcDao.findAccountTransactions("1234", from, null, Arrays.asList("RS", "RC"), after, 2);
+		assertEquals(Arrays.asList(first, second), page.getTransactions());
+		TransactionPage.Cursor next = TransactionPage.Cursor.decode(page.getNextCursor());
+		assertEquals(second.getInsertTimestamp(), next.getInsertTimestamp());
+		assertEquals(second.getTransactionUuid(), next.getTransactionUuid());
+	}
+
+	@Test
+	public void testFindAccountTransactions_lastPage() {
+		when(jdbcTemplate.query( eq(JdbcDao.selectAccountTransactions_sql + JdbcDao.accountTransactionsOrder_sql),
+				ArgumentMatchers.<RowMapper<TransactionResource>>any(), eq("1234"), eq(11) ) )
+			.thenReturn(Collections.singletonList(new TransactionResource()));
+
+		TransactionPage page = jdbcDao.findAccountTransactions("1234", null, null, Collections.emptyList(), null, 10);
+		assertEquals(1, page.getTransactions().size());
+		assertNull(page.getNextCursor());
+	}
+
+	@Test
+	public void testStreamAccountTransactions() {
+		UUID transaction_uuid = UUID.randomUUID();
+		Timestamp to = Timestamp.valueOf("2020-03-01 00:00:00");
+		String sql = JdbcDao.selectAccountTransactions_sql + JdbcDao.accountTransactionsTo_sql
+				+ JdbcDao.accountTransactionsExportOrder_sql;
+		doAnswer(invocation -> {
+			Connection connection = mock(Connection.class);
+			PreparedStatement ps = mock(PreparedStatement.class);
+			when(connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)).thenReturn(ps);
+			PreparedStatementCreator creator = invocation.getArgument(0);
+			assertSame(ps, creator.createPreparedStatement(connection));
+			verify(ps).setFetchSize(250);
+			verify(ps).setObject(1, "1234");
+			verify(ps).setObject(2, to);
+
+			RowCallbackHandler handler = invocation.getArgument(1);
+			ResultSet rs = mock(ResultSet.class);
+			when(rs.getObject(1, UUID.class)).thenReturn(transaction_uuid);
+			handler.processRow(rs);
+			handler.processRow(rs);
+			return null;
+		}).when(jdbcTemplate).query( any(PreparedStatementCreator.class), any(RowCallbackHandler.class) );
+
+		List<TransactionResource> read = new ArrayList<>();
+		int rows = jdbcDao.streamAccountTransactions("1234", null, to, Collections.emptyList(), 250, read::add);
+		assertEquals(2, rows);
+		assertEquals(2, read.size());
+		assertEquals(transaction_uuid, read.get(0).getTransactionUuid());
+	}
+
+	@Test
+	public void testCursor_malformed() {
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()->{TransactionPage.Cursor.decode("not-a-cursor");});
+		assert(ex.getStatus() == HttpStatus.BAD_REQUEST);
+	}
+
 	//--------------------------
 	// findTransaction
 	//--------------------------
@@ -201,6 +541,11 @@ public class UnitJdbcDAOTest {
 	// checkIdempotency
 	//--------------------------
 	@Test
+	public void testIdempotentQuery_orderedByLeg() {
+		// both legs of a request share insert_tsz
+		assertTrue(JdbcDao.idempotentQuery_sql.endsWith("order by insert_tsz asc, leg asc;"));
+	}
+	@Test
 	public void testCheckIdempotency() {	
 		TransactionResource resource = new TransactionResource();
 		resource.setTransactionUuid(UUID.randomUUID());
@@ -210,7 +555,7 @@ public class UnitJdbcDAOTest {
 			.thenReturn(new ArrayList<TransactionResource>());
 		
 		TransactionResource result = jdbcDao.checkIdempotency(UUID.randomUUID(), "TEST_ACCOUNT");
-		verify(jdbcTemplate).query( any(String.class), ArgumentMatchers.<RowMapper<TransactionResource>>any(), any(UUID.class), anyString() );
+		verify(jdbcTemplate).query( eq(JdbcDao.idempotentQuery_sql), ArgumentMatchers.<RowMapper<TransactionResource>>any(), any(UUID.class), anyString() );
 		assertNotNull(result);
 		assertEquals(resource.getTransactionUuid(), result.getTransactionUuid());
 
@@ -230,7 +575,7 @@ public class UnitJdbcDAOTest {
 			.thenReturn(Collections.singletonList(resource));
 		
 		List<TransactionResource> result = jdbcDao.checkMultiIdempotency(UUID.randomUUID(), "TEST_ACCOUNT");
-		verify(jdbcTemplate).query( any(String.class), ArgumentMatchers.<RowMapper<TransactionResource>>any(), any(UUID.class), anyString() );
+		verify(jdbcTemplate).query( eq(JdbcDao.idempotentQuery_sql), ArgumentMatchers.<RowMapper<TransactionResource>>any(), any(UUID.class), anyString() );
 		assertNotNull(result);
 		assertSame(resource, result.get(0));
 
@@ -2,7 +2,6 @@ package qslv.transaction.rest.unit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -25,7 +24,6 @@ import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -83,7 +81,6 @@ class UnitMvcTransactionApplicationTest_postReservationCancel {
 		resource.setTransactionMetaDataJson("{\"intvalue\":72834782");
 		resource.setTransactionTypeCode(TransactionResource.RESERVATION);
 		
-		UUID test_uuid = UUID.randomUUID();
 		
 		//Mock database idempotency
 		when(template.query( eq(JdbcDao.idempotentQuery_sql), 
@@ -106,11 +103,7 @@ class UnitMvcTransactionApplicationTest_postReservationCancel {
 		when(template.update( any(String.class), any(String.class), any(Long.class) )).thenReturn(1);
 
 		//Mock database insert transaction
-		doAnswer(invocation -> {
-			KeyHolder keyHolder = invocation.getArgument(1);
-			keyHolder.getKeyList().add(Collections.singletonMap("transaction_uuid", test_uuid));
-			return null;
-		}).when(template).update( any(PreparedStatementCreator.class), any(KeyHolder.class) );
+		when(template.update( any(PreparedStatementCreator.class) )).thenReturn(1);
 		
 		// post transaction
 		String stringResult = this.mockMvc.perform(post("/CancelReservation")
@@ -137,7 +130,7 @@ class UnitMvcTransactionApplicationTest_postReservationCancel {
 		assert(response.getPayload().getResource().getTransactionMetaDataJson().equals(request.getTransactionMetaDataJson()));
 		assert(response.getPayload().getResource().getReservationUuid().equals(resource.getTransactionUuid()));
 		assert(response.getPayload().getResource().getTransactionTypeCode().equals(TransactionResource.RESERVATION_CANCEL));
-		assert(response.getPayload().getResource().getTransactionUuid().equals(test_uuid));
+		assert(response.getPayload().getResource().getTransactionUuid().version() == 7);
 		assert(response.getPayload().getResource().getRunningBalanceAmount() == 99999L - resource.getTransactionAmount() );
 	}
 	
@@ -2,7 +2,6 @@ package qslv.transaction.rest.unit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -25,7 +24,6 @@ import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -72,7 +70,6 @@ class UnitMvcTransactionApplicationTest_postTransaction {
 		mapper.configure(SerializationFeature.WRAP_ROOT_VALUE, false);
 		String requestJson = mapper.writer().withDefaultPrettyPrinter().writeValueAsString(request);
 
-		UUID test_uuid = UUID.randomUUID();
 		
 		//Mock database idempotency
 		when(template.query( eq(JdbcDao.idempotentQuery_sql), 
@@ -86,11 +83,7 @@ class UnitMvcTransactionApplicationTest_postTransaction {
 		when(template.update( any(String.class), any(String.class), any(Long.class) )).thenReturn(1);
 
 		//Mock database insert transaction
-		doAnswer(invocation -> {
-			KeyHolder keyHolder = invocation.getArgument(1);
-			keyHolder.getKeyList().add(Collections.singletonMap("transaction_uuid", test_uuid));
-			return null;
-		}).when(template).update( any(PreparedStatementCreator.class), any(KeyHolder.class) );
+		when(template.update( any(PreparedStatementCreator.class) )).thenReturn(1);
 		
 		// post transaction
 		String stringResult = this.mockMvc.perform(post("/Transaction")
@@ -118,7 +111,7 @@ class UnitMvcTransactionApplicationTest_postTransaction {
 		assertTrue(response.getPayload().getTransactions().get(0).getTransactionMetaDataJson().equals(request.getTransactionMetaDataJson()));
 		assertNull(response.getPayload().getTransactions().get(0).getReservationUuid());
 		assertTrue(response.getPayload().getTransactions().get(0).getTransactionTypeCode().equals(TransactionResource.NORMAL));
-		assertTrue(response.getPayload().getTransactions().get(0).getTransactionUuid().equals(test_uuid));
+		assertTrue(response.getPayload().getTransactions().get(0).getTransactionUuid().version() == 7);
 		assertTrue(response.getPayload().getTransactions().get(0).getRunningBalanceAmount() == 99999L - 2323L );
 		assertTrue(response.getPayload().getTransactions().get(0).getTransactionAmount() == -2323L);
 	}
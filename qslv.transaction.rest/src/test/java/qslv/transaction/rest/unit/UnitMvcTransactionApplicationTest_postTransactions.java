@@ -0,0 +1,181 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import qslv.transaction.request.TransactionRequest;
+import qslv.transaction.resource.TransactionResource;
+import qslv.transaction.response.TransactionResponse;
+import qslv.transaction.rest.BulkTransactionResult;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.JdbcDao;
+import qslv.transaction.rest.TransactionController;
+import qslv.common.TimedResponse;
+import qslv.common.TraceableRequest;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class UnitMvcTransactionApplicationTest_postTransactions {
+
+	public static final MediaType APPLICATION_JSON_UTF8 = new MediaType(MediaType.APPLICATION_JSON.getType(),
+			MediaType.APPLICATION_JSON.getSubtype(), Charset.forName("utf8"));
+	public TypeReference<TimedResponse<List<BulkTransactionResult>>> responseReference = 
+			new TypeReference<TimedResponse<List<BulkTransactionResult>>>() {};
+	@Autowired
+	private MockMvc mockMvc;
+	@Autowired
+	JdbcDao jdbcDao;
+	@Autowired
+	ConfigProperties config;
+	@Mock
+	JdbcTemplate template;
+
+	@BeforeEach
+	void setup() {
+		jdbcDao.setJdbcTemplate(template);
+	}
+
+	@Test
+	void testPostTransactions_success() throws Exception {
+		TransactionRequest first = setupRequest("237489237492", -2323L);
+		TransactionRequest second = setupRequest("237489237492", 1000L);
+		TransactionRequest invalid = setupRequest("237489237492", 0L);
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.configure(SerializationFeature.WRAP_ROOT_VALUE, false);
+		String requestJson = mapper.writer().writeValueAsString(Arrays.asList(first, invalid, second));
+
+		//Mock database idempotency
+		when(template.query( eq(JdbcDao.idempotentQuery_sql), 
+				ArgumentMatchers.<RowMapper<TransactionResource>>any(), any(UUID.class), anyString() ) )
+		.thenReturn(new ArrayList<TransactionResource>());
+
+		//Mock database select balance
+		when(template.queryForObject( any(String.class) ,eq(Long.class), any())).thenReturn(99999L);
+
+		//Mock database upsert balance
+		when(template.update( any(String.class), any(String.class), any(Long.class) )).thenReturn(1);
+
+		//Mock database insert transactions
+		when(template.update( any(PreparedStatementCreator.class) )).thenReturn(2);
+
+		String stringResult = this.mockMvc.perform(post("/Transactions")
+				.contentType(APPLICATION_JSON_UTF8)
+				.content(requestJson)
+				.header(TraceableRequest.AIT_ID, "")
+				.header(TraceableRequest.BUSINESS_TAXONOMY_ID, "")
+				.header(TraceableRequest.CORRELATION_ID, "")
+				.header(TraceableRequest.ACCEPT_VERSION, "1_0") )
+				.andExpect(status().isOk())
+				.andReturn()
+				.getResponse()
+				.getContentAsString();
+
+		TimedResponse<List<BulkTransactionResult>> response = mapper.readValue(stringResult, responseReference);
+		List<BulkTransactionResult> results = response.getPayload();
+		assertEquals(3, results.size());
+		assertEquals(201, results.get(0).getStatus());
+		assertEquals(TransactionResponse.SUCCESS, results.get(0).getResponse().getStatus());
+		assertEquals(99999L - 2323L, results.get(0).getResponse().getTransactions().get(0).getRunningBalanceAmount());
+		assertEquals(400, results.get(1).getStatus());
+		assertNull(results.get(1).getResponse());
+		assertNotNull(results.get(1).getMessage());
+		assertEquals(201, results.get(2).getStatus());
+		assertEquals(99999L - 2323L + 1000L, results.get(2).getResponse().getTransactions().get(0).getRunningBalanceAmount());
+	}
+
+	@Test
+	void testPostTransactions_tooMany() throws Exception {
+		int maxItems = config.getBulk().getMaxItems();
+		config.getBulk().setMaxItems(1);
+		try {
+			ObjectMapper mapper = new ObjectMapper();
+			String requestJson = mapper.writer().writeValueAsString(Arrays.asList(
+					setupRequest("237489237492", -2323L), setupRequest("237489237492", -2323L)));
+
+			this.mockMvc.perform(post("/Transactions")
+					.contentType(APPLICATION_JSON_UTF8)
+					.content(requestJson)
+					.header(TraceableRequest.AIT_ID, "")
+					.header(TraceableRequest.BUSINESS_TAXONOMY_ID, "")
+					.header(TraceableRequest.CORRELATION_ID, "")
+					.header(TraceableRequest.ACCEPT_VERSION, "1_0") )
+					.andExpect(status().isPayloadTooLarge());
+		} finally {
+			config.getBulk().setMaxItems(maxItems);
+		}
+	}
+
+	@Test
+	void testPostTransactions_ndjson() throws Exception {
+		TransactionRequest first = setupRequest("237489237492", -2323L);
+		TransactionRequest second = setupRequest("9999999", 1000L);
+
+		ObjectMapper mapper = new ObjectMapper();
+		String requestNdjson = mapper.writeValueAsString(first) + "\n" + mapper.writeValueAsString(second) + "\n";
+
+		//Mock database idempotency
+		when(template.query( eq(JdbcDao.idempotentQuery_sql), 
+				ArgumentMatchers.<RowMapper<TransactionResource>>any(), any(UUID.class), anyString() ) )
+		.thenReturn(new ArrayList<TransactionResource>());
+		when(template.queryForObject( any(String.class) ,eq(Long.class), any())).thenReturn(99999L);
+		when(template.update( any(String.class), any(String.class), any(Long.class) )).thenReturn(1);
+		when(template.update( any(PreparedStatementCreator.class) )).thenReturn(1);
+
+		String stringResult = this.mockMvc.perform(post("/Transactions")
+				.contentType(TransactionController.APPLICATION_NDJSON)
+				.content(requestNdjson)
+				.header(TraceableRequest.AIT_ID, "")
+				.header(TraceableRequest.BUSINESS_TAXONOMY_ID, "")
+				.header(TraceableRequest.CORRELATION_ID, "")
+				.header(TraceableRequest.ACCEPT_VERSION, "1_0") )
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(TransactionController.APPLICATION_NDJSON))
+				.andReturn()
+				.getResponse()
+				.getContentAsString();
+
+		String[] lines = stringResult.split("\n");
+		assertEquals(2, lines.length);
+		BulkTransactionResult result = mapper.readValue(lines[1], BulkTransactionResult.class);
+		assertEquals(201, result.getStatus());
+		assertEquals(second.getRequestUuid(), result.getResponse().getTransactions().get(0).getRequestUuid());
+	}
+
+	private TransactionRequest setupRequest(String accountNumber, long amount) {
+		TransactionRequest request = new TransactionRequest();
+		request.setAccountNumber(accountNumber);
+		request.setDebitCardNumber("8398345345");
+		request.setRequestUuid(UUID.randomUUID());
+		request.setTransactionAmount(amount);
+		request.setTransactionMetaDataJson("{\"intvalue\":829342}");
+		return request;
+	}
+}
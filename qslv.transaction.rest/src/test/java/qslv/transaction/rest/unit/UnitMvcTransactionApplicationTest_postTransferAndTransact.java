@@ -25,7 +25,6 @@ import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -77,8 +76,6 @@ class UnitMvcTransactionApplicationTest_postTransferAndTransact {
 		mapper.configure(SerializationFeature.WRAP_ROOT_VALUE, false);
 		String requestJson = mapper.writer().withDefaultPrettyPrinter().writeValueAsString(request);
 
-		UUID transferUUID = UUID.randomUUID();
-		UUID transactUUID = UUID.randomUUID();
 		
 		//--Prepare---------
 		doReturn(Collections.emptyList())
@@ -88,18 +85,9 @@ class UnitMvcTransactionApplicationTest_postTransferAndTransact {
 		doReturn(starting_balance)
 			.when(template)
 			.queryForObject( eq(JdbcDao.getBalance_sql) ,eq(Long.class), any());
-		doAnswer(invocation -> {
-			KeyHolder keyHolder = invocation.getArgument(1);
-			keyHolder.getKeyList().add(Collections.singletonMap("transaction_uuid", transferUUID));
-			return null;
-		})
-			.doAnswer(invocation -> {
-				KeyHolder keyHolder = invocation.getArgument(1);
-				keyHolder.getKeyList().add(Collections.singletonMap("transaction_uuid", transactUUID));
-				return null;
-			})
+		doReturn(2)
 			.when(template)
-			.update( any(PreparedStatementCreator.class), any(KeyHolder.class) );
+			.update( any(PreparedStatementCreator.class) );
 		
 		doReturn(1)
 		.when(template)
@@ -135,7 +123,7 @@ class UnitMvcTransactionApplicationTest_postTransferAndTransact {
 		assertEquals((0 - transfer_amount), transfer.getTransactionAmount());
 		assertEquals(request.getTransferReservation().getTransactionMetaDataJson(), transfer.getTransactionMetaDataJson());
 		assertEquals(TransactionResource.NORMAL, transfer.getTransactionTypeCode());
-		assertEquals(transferUUID, transfer.getTransactionUuid());
+		assertEquals(7, transfer.getTransactionUuid().version());
 
 		assertEquals(request.getTransactionRequest().getAccountNumber(), transact.getAccountNumber());
 		assertEquals(request.getTransactionRequest().getDebitCardNumber(), transact.getDebitCardNumber());
@@ -145,7 +133,8 @@ class UnitMvcTransactionApplicationTest_postTransferAndTransact {
 		assertEquals(transaction_amount, transact.getTransactionAmount());
 		assertEquals(request.getTransactionRequest().getTransactionMetaDataJson(), transact.getTransactionMetaDataJson());
 		assertEquals(TransactionResource.NORMAL, transact.getTransactionTypeCode());
-		assertEquals(transactUUID, transact.getTransactionUuid());
+		assertEquals(7, transact.getTransactionUuid().version());
+		assertTrue(transfer.getTransactionUuid().compareTo(transact.getTransactionUuid()) < 0);
 	}
 
 	
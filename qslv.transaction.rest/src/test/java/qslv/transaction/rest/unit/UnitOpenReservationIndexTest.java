@@ -0,0 +1,115 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import qslv.transaction.resource.TransactionResource;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.OpenReservationIndex;
+
+public class UnitOpenReservationIndexTest {
+	ConfigProperties config = new ConfigProperties();
+	OpenReservationIndex index = new OpenReservationIndex();
+
+	static SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@BeforeAll
+	public static void setupRegistry() {
+		Metrics.addRegistry(registry);
+	}
+
+	@AfterAll
+	public static void teardownRegistry() {
+		Metrics.removeRegistry(registry);
+	}
+
+	@BeforeEach
+	public void setup() {
+		config.getReservationIndex().setEnabled(true);
+		index.setConfigProperties(config);
+	}
+
+	@Test
+	public void testClaim() {
+		TransactionResource reservation = reservation();
+		double hits = registry.counter("qslv.reservation.index", "result", "hit").count();
+		double misses = registry.counter("qslv.reservation.index", "result", "miss").count();
+
+		index.open(reservation);
+		TransactionResource claimed = index.claim(reservation.getTransactionUuid());
+		assertEquals(reservation.getAccountNumber(), claimed.getAccountNumber());
+		assertEquals(reservation.getDebitCardNumber(), claimed.getDebitCardNumber());
+		assertEquals(reservation.getTransactionAmount(), claimed.getTransactionAmount());
+		assertNull(index.claim(reservation.getTransactionUuid()));
+
+		assertEquals(hits + 1, registry.counter("qslv.reservation.index", "result", "hit").count());
+		assertEquals(misses + 1, registry.counter("qslv.reservation.index", "result", "miss").count());
+	}
+
+	@Test
+	public void testOpen_afterCommit() {
+		TransactionResource committed = reservation();
+		TransactionResource rolledBack = reservation();
+
+		complete(() -> index.open(committed), TransactionSynchronization.STATUS_COMMITTED);
+		complete(() -> index.open(rolledBack), TransactionSynchronization.STATUS_ROLLED_BACK);
+
+		assertNotNull(index.claim(committed.getTransactionUuid()));
+		assertNull(index.claim(rolledBack.getTransactionUuid()));
+	}
+
+	@Test
+	public void testClaim_rolledBack() {
+		TransactionResource reservation = reservation();
+		index.open(reservation);
+
+		complete(() -> assertNotNull(index.claim(reservation.getTransactionUuid())), TransactionSynchronization.STATUS_ROLLED_BACK);
+		assertEquals(1, index.size());
+		complete(() -> assertNotNull(index.claim(reservation.getTransactionUuid())), TransactionSynchronization.STATUS_COMMITTED);
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	public void testOpen_maxEntries() {
+		config.getReservationIndex().setMaxEntries(2);
+		TransactionResource first = reservation();
+
+		index.open(first);
+		index.open(reservation());
+		index.open(reservation());
+		assertEquals(2, index.size());
+		assertNull(index.claim(first.getTransactionUuid()));
+	}
+
+	private void complete(Runnable work, int status) {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			work.run();
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(status);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	private TransactionResource reservation() {
+		TransactionResource reservation = new TransactionResource();
+		reservation.setTransactionUuid(UUID.randomUUID());
+		reservation.setAccountNumber("7328429347");
+		reservation.setDebitCardNumber("126743812673981623");
+		reservation.setTransactionAmount(-2323L);
+		reservation.setTransactionTypeCode(TransactionResource.RESERVATION);
+		return reservation;
+	}
+}
@@ -0,0 +1,171 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.DeadlineJdbcTemplate;
+import qslv.transaction.rest.RequestDeadline;
+import qslv.transaction.rest.RequestDeadlineFilter;
+
+@ExtendWith(MockitoExtension.class)
+public class UnitRequestDeadlineTest {
+	@Mock
+	DataSource dataSource;
+	@Mock
+	Connection connection;
+	@Mock
+	Statement statement;
+	ConfigProperties config = new ConfigProperties();
+	RequestDeadlineFilter filter = new RequestDeadlineFilter();
+
+	@BeforeEach
+	public void setup() {
+		config.getRequestDeadline().setEnabled(true);
+		filter.setConfigProperties(config);
+	}
+
+	@AfterEach
+	public void teardown() {
+		RequestDeadline.set(null);
+	}
+
+	@Test
+	public void testCheck() {
+		RequestDeadline.check("selectBalanceForUpdate");
+		assertEquals(Long.MAX_VALUE, RequestDeadline.remainingMillis());
+
+		RequestDeadline.with(System.currentTimeMillis() + 60000L, () -> {
+			RequestDeadline.check("selectBalanceForUpdate");
+			assertTrue(RequestDeadline.remainingMillis() > 59000L);
+			return null;
+		});
+
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, () ->
+			RequestDeadline.with(System.currentTimeMillis() - 10L, () -> {
+				RequestDeadline.check("selectBalanceForUpdate");
+				return null;
+			}));
+		assertEquals(HttpStatus.GATEWAY_TIMEOUT, ex.getStatus());
+		assertNull(RequestDeadline.get());
+	}
+
+	@Test
+	public void testWith_restoresDeadline() {
+		RequestDeadline.set(1000L);
+		RequestDeadline.with(null, () -> {
+			assertNull(RequestDeadline.get());
+			return null;
+		});
+		assertEquals(1000L, RequestDeadline.get());
+	}
+
+	@Test
+	public void testStatement_queryTimeout() throws SQLException {
+		when(dataSource.getConnection()).thenReturn(connection);
+		when(connection.createStatement()).thenReturn(statement);
+		when(statement.getQueryTimeout()).thenReturn(0);
+		DeadlineJdbcTemplate template = new DeadlineJdbcTemplate(dataSource, new JdbcProperties());
+
+		RequestDeadline.with(System.currentTimeMillis() + 2500L, () -> {
+			template.execute("select 1");
+			return null;
+		});
+		verify(statement).setQueryTimeout(3);
+		verify(statement).execute("select 1");
+	}
+
+	@Test
+	public void testTemplateProperties() {
+		JdbcProperties properties = new JdbcProperties();
+		properties.getTemplate().setFetchSize(100);
+		properties.getTemplate().setMaxRows(500);
+		properties.getTemplate().setQueryTimeout(Duration.ofSeconds(30));
+		DeadlineJdbcTemplate template = new DeadlineJdbcTemplate(dataSource, properties);
+
+		assertEquals(100, template.getFetchSize());
+		assertEquals(500, template.getMaxRows());
+		assertEquals(30, template.getQueryTimeout());
+	}
+
+	@Test
+	public void testStatement_noDeadline() throws SQLException {
+		when(dataSource.getConnection()).thenReturn(connection);
+		when(connection.createStatement()).thenReturn(statement);
+		DeadlineJdbcTemplate template = new DeadlineJdbcTemplate(dataSource, new JdbcProperties());
+
+		template.execute("select 1");
+		verify(statement, never()).setQueryTimeout(anyInt());
+		verify(statement).execute("select 1");
+	}
+
+	@Test
+	public void testStatement_deadlinePassed() throws SQLException {
+		when(dataSource.getConnection()).thenReturn(connection);
+		when(connection.createStatement()).thenReturn(statement);
+		DeadlineJdbcTemplate template = new DeadlineJdbcTemplate(dataSource, new JdbcProperties());
+
+		assertThrows(QueryTimeoutException.class, () -> RequestDeadline.with(System.currentTimeMillis() - 1L, () -> {
+			template.execute("select 1");
+			return null;
+		}));
+		verify(statement, never()).execute(anyString());
+		verify(statement).close();
+	}
+
+	@Test
+	public void testFilter() throws Exception {
+		AtomicReference<Long> seen = new AtomicReference<>();
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/Reservation");
+		request.addHeader(RequestDeadline.HEADER, "1700000000000");
+		MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse resp) {
+				seen.set(RequestDeadline.get());
+			}
+		});
+
+		filter.doFilter(request, new MockHttpServletResponse(), chain);
+		assertEquals(1700000000000L, seen.get());
+		assertNull(RequestDeadline.get());
+	}
+
+	@Test
+	public void testFilter_malformed() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/Reservation");
+		request.addHeader(RequestDeadline.HEADER, "tomorrow");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = new MockFilterChain();
+
+		filter.doFilter(request, response, chain);
+		assertEquals(HttpStatus.BAD_REQUEST.value(), response.getStatus());
+		assertNull(chain.getRequest());
+	}
+}
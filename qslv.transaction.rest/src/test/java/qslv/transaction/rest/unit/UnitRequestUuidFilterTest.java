@@ -0,0 +1,102 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.JdbcDao;
+import qslv.transaction.rest.RequestUuidFilter;
+
+@ExtendWith(MockitoExtension.class)
+public class UnitRequestUuidFilterTest {
+	@Mock
+	JdbcDao dao;
+	ConfigProperties config = new ConfigProperties();
+	RequestUuidFilter filter = new RequestUuidFilter();
+
+	@BeforeEach
+	public void setup() {
+		config.getRequestFilter().setEnabled(true);
+		config.getRequestFilter().setMemoryBytes(64L * 1024L);
+		filter.setConfigProperties(config);
+		filter.setJdbcDao(dao);
+	}
+
+	@Test
+	public void testWarmUp() {
+		UUID recent = UUID.randomUUID();
+		doAnswer(invocation -> {
+			Consumer<UUID> consumer = invocation.getArgument(1);
+			consumer.accept(recent);
+			return 1;
+		}).when(dao).findRecentRequestUuids(anyLong(), ArgumentMatchers.<Consumer<UUID>>any());
+
+		assertTrue(filter.mightContain(UUID.randomUUID()));
+		filter.warmUp();
+
+		assertTrue(filter.isReady());
+		assertTrue(filter.mightContain(recent));
+	}
+
+	@Test
+	public void testWarmUp_fails() {
+		when(dao.findRecentRequestUuids(anyLong(), ArgumentMatchers.<Consumer<UUID>>any()))
+			.thenThrow(new QueryTimeoutException("timeout"));
+
+		filter.warmUp();
+		assertFalse(filter.isReady());
+		assertTrue(filter.mightContain(UUID.randomUUID()));
+	}
+
+	@Test
+	public void testMightContain_falsePositiveRate() {
+		filter.warmUp();
+		for (int ii = 0; ii < 1000; ii++) {
+			filter.add(UUID.randomUUID());
+		}
+
+		UUID added = UUID.randomUUID();
+		filter.add(added);
+		assertTrue(filter.mightContain(added));
+
+		int positives = 0;
+		for (int ii = 0; ii < 10000; ii++) {
+			positives += filter.mightContain(UUID.randomUUID()) ? 1 : 0;
+		}
+		assertTrue(positives < 200, "false positives " + positives);
+	}
+
+	@Test
+	public void testAdd_rollsOff() {
+		config.getRequestFilter().setMemoryBytes(128L);
+		config.getRequestFilter().setBuckets(2);
+		filter.warmUp();
+
+		UUID[] early = new UUID[20];
+		for (int ii = 0; ii < early.length; ii++) {
+			early[ii] = UUID.randomUUID();
+			filter.add(early[ii]);
+		}
+		assertTrue(filter.mightContain(early[0]));
+		for (int ii = 0; ii < 200; ii++) {
+			filter.add(UUID.randomUUID());
+		}
+		int remaining = 0;
+		for (UUID uuid : early) {
+			remaining += filter.mightContain(uuid) ? 1 : 0;
+		}
+		assertTrue(remaining < 5, "still present " + remaining);
+	}
+}
@@ -0,0 +1,104 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.ReleasedReservations;
+import qslv.transaction.rest.ReservationSweeper;
+import qslv.transaction.rest.TransactionService;
+
+@ExtendWith(MockitoExtension.class)
+public class UnitReservationSweeperTest {
+	@Mock
+	TransactionService service;
+	ConfigProperties config = new ConfigProperties();
+	ReservationSweeper sweeper = new ReservationSweeper();
+
+	static SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@BeforeAll
+	public static void setupRegistry() {
+		Metrics.addRegistry(registry);
+	}
+
+	@AfterAll
+	public static void teardownRegistry() {
+		Metrics.removeRegistry(registry);
+	}
+
+	@BeforeEach
+	public void setup() {
+		config.setReservationStatus(true);
+		config.getReservationSweeper().setEnabled(true);
+		config.getReservationSweeper().setTtlSeconds(3600L);
+		config.getReservationSweeper().setBatchSize(100);
+		sweeper.setConfigProperties(config);
+		sweeper.setService(service);
+	}
+
+	@Test
+	public void testSweep_untilShortBatch() {
+		long now = System.currentTimeMillis();
+		double released = registry.counter("qslv.reservation.sweeper.released").count();
+		when(service.releaseExpiredReservations(now - TimeUnit.HOURS.toMillis(1), 100)).thenReturn(batch(100), batch(100), batch(42));
+
+		assertEquals(242, sweeper.sweep(now));
+		verify(service, times(3)).releaseExpiredReservations(anyLong(), anyInt());
+		assertEquals(released + 242, registry.counter("qslv.reservation.sweeper.released").count());
+	}
+
+	@Test
+	public void testSweep_maxBatches() {
+		config.getReservationSweeper().setMaxBatches(2);
+		when(service.releaseExpiredReservations(anyLong(), anyInt())).thenReturn(batch(100));
+
+		assertEquals(200, sweeper.sweep(System.currentTimeMillis()));
+		verify(service, times(2)).releaseExpiredReservations(anyLong(), anyInt());
+	}
+
+	@Test
+	public void testSweep_batchFails() {
+		when(service.releaseExpiredReservations(anyLong(), anyInt()))
+			.thenReturn(batch(100))
+			.thenThrow(new QueryTimeoutException("timeout"));
+
+		assertEquals(100, sweeper.sweep(System.currentTimeMillis()));
+		verify(service, times(2)).releaseExpiredReservations(anyLong(), anyInt());
+	}
+
+	@Test
+	public void testSweep_continuesPastFinalized() {
+		// a full batch of reservations that had all been finalized elsewhere is not the end
+		when(service.releaseExpiredReservations(anyLong(), anyInt()))
+			.thenReturn(new ReleasedReservations(100, 0), new ReleasedReservations(100, 60), batch(10));
+
+		assertEquals(70, sweeper.sweep(System.currentTimeMillis()));
+		verify(service, times(3)).releaseExpiredReservations(anyLong(), anyInt());
+	}
+
+	@Test
+	public void testScheduledSweep_requiresReservationStatus() {
+		config.setReservationStatus(false);
+		sweeper.scheduledSweep();
+		verifyNoInteractions(service);
+	}
+
+	private static ReleasedReservations batch(int count) {
+		return new ReleasedReservations(count, count);
+	}
+}
@@ -0,0 +1,32 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import qslv.transaction.rest.TimeOrderedUuid;
+
+public class UnitTimeOrderedUuidTest {
+
+	@Test
+	public void testGenerate_version() {
+		long before = System.currentTimeMillis();
+		UUID uuid = TimeOrderedUuid.generate();
+
+		assertEquals(7, uuid.version());
+		assertEquals(2, uuid.variant());
+		assertTrue((uuid.getMostSignificantBits() >>> 16) >= before);
+	}
+
+	@Test
+	public void testGenerate_ordered() {
+		UUID previous = TimeOrderedUuid.generate();
+		for (int ii = 0; ii < 10000; ii++) {
+			UUID next = TimeOrderedUuid.generate();
+			assertTrue(Long.compareUnsigned(previous.getMostSignificantBits(), next.getMostSignificantBits()) < 0);
+			previous = next;
+		}
+	}
+}
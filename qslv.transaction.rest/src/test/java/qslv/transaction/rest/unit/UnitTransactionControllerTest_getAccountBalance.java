@@ -0,0 +1,74 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.HashMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import qslv.transaction.rest.AccountBalanceResponse;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.JdbcDao;
+import qslv.transaction.rest.TransactionController;
+import qslv.transaction.rest.TransactionService;
+import qslv.common.TimedResponse;
+import qslv.common.TraceableRequest;
+
+@ExtendWith(MockitoExtension.class)
+class UnitTransactionControllerTest_getAccountBalance {
+	@Mock
+	JdbcDao dao;
+	public ConfigProperties props = new ConfigProperties();
+
+	TransactionService service = new TransactionService();
+	TransactionController controller = new TransactionController();
+	HashMap<String, String> headers = new HashMap<String, String>();
+
+	@BeforeEach
+	public void setup() {
+		service.setJdbcDao(dao);
+		service.setConfigProperties(props);
+		controller.setService(service);
+		controller.setConfigProperties(props);
+		headers.put(TraceableRequest.AIT_ID, "12345");
+		headers.put(TraceableRequest.BUSINESS_TAXONOMY_ID, "7483495");
+		headers.put(TraceableRequest.CORRELATION_ID, "273849273498273498");
+		headers.put(TraceableRequest.ACCEPT_VERSION, "1_0");
+	}
+
+	@Test
+	void testGetAccountBalance_success() {
+		when(dao.selectBalance("1234", 0L)).thenReturn(5000L);
+
+		TimedResponse<AccountBalanceResponse> response = controller.getAccountBalance(headers, "1234");
+		assertEquals("1234", response.getPayload().getAccountNumber());
+		assertEquals(5000L, response.getPayload().getRunningBalanceAmount());
+		assertEquals(0L, response.getPayload().getMaxStalenessMillis());
+	}
+
+	@Test
+	void testGetAccountBalance_stale() {
+		props.getBalanceInquiry().setMaxStalenessMillis(10000L);
+		when(dao.selectBalance("1234", 10000L)).thenReturn(5000L);
+
+		TimedResponse<AccountBalanceResponse> response = controller.getAccountBalance(headers, "1234");
+		assertEquals(5000L, response.getPayload().getRunningBalanceAmount());
+		assertEquals(10000L, response.getPayload().getMaxStalenessMillis());
+	}
+
+	@Test
+	void testGetAccountBalance_badVersion() {
+		headers.put(TraceableRequest.ACCEPT_VERSION, "XXX");
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> {
+			controller.getAccountBalance(headers, "1234"); });
+		assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+		verifyNoInteractions(dao);
+	}
+}
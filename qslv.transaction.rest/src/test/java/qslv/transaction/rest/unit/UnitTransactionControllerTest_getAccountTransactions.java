@@ -0,0 +1,126 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import qslv.transaction.resource.TransactionResource;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.TransactionController;
+import qslv.transaction.rest.TransactionPage;
+import qslv.transaction.rest.TransactionService;
+import qslv.common.TimedResponse;
+import qslv.common.TraceableRequest;
+
+@ExtendWith(MockitoExtension.class)
+class UnitTransactionControllerTest_getAccountTransactions {
+	@Mock
+	TransactionService service;
+	public ConfigProperties props = new ConfigProperties();
+
+	TransactionController controller = new TransactionController();
+	HashMap<String, String> headers = new HashMap<String, String>();
+
+	@BeforeEach
+	public void setup() {
+		controller.setService(service);
+		controller.setConfigProperties(props);
+		controller.setObjectMapper(new ObjectMapper());
+		headers.put(TraceableRequest.AIT_ID, "12345");
+		headers.put(TraceableRequest.BUSINESS_TAXONOMY_ID, "7483495");
+		headers.put(TraceableRequest.CORRELATION_ID, "273849273498273498");
+		headers.put(TraceableRequest.ACCEPT_VERSION, "1_0");
+	}
+
+	@Test
+	void testGetAccountTransactions_success() {
+		TransactionPage page = new TransactionPage(Collections.emptyList(), null);
+		when(service.findAccountTransactions("1234", Timestamp.from(Instant.parse("2020-01-01T00:00:00Z")), null,
+				Arrays.asList("RS", "RC"), "cursor", 50)).thenReturn(page);
+
+		TimedResponse<TransactionPage> response = controller.getAccountTransactions(headers, "1234", 50,
+				"2020-01-01T00:00:00Z", null, Arrays.asList("RS", "RC"), "cursor");
+		assertSame(page, response.getPayload());
+	}
+
+	@Test
+	void testGetAccountTransactions_defaults() {
+		when(service.findAccountTransactions("1234", null, null, Collections.emptyList(), null, 100))
+			.thenReturn(new TransactionPage(Collections.emptyList(), null));
+
+		controller.getAccountTransactions(headers, "1234", null, null, null, null, null);
+		verify(service).findAccountTransactions("1234", null, null, Collections.emptyList(), null, 100);
+	}
+
+	@Test
+	void testGetAccountTransactions_badParameters() {
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> {
+			controller.getAccountTransactions(headers, "1234", 1001, null, null, null, null); });
+		assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+
+		ex = assertThrows(ResponseStatusException.class, () -> {
+			controller.getAccountTransactions(headers, "1234", null, "yesterday", null, null, null); });
+		assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+
+		ex = assertThrows(ResponseStatusException.class, () -> {
+			controller.getAccountTransactions(headers, "1234", null, null, null, Arrays.asList("ZZ"), null); });
+		assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+		verifyNoInteractions(service);
+	}
+
+	@Test
+	void testExportAccountTransactions_success() throws Exception {
+		TransactionResource first = new TransactionResource();
+		first.setTransactionUuid(UUID.randomUUID());
+		TransactionResource second = new TransactionResource();
+		second.setTransactionUuid(UUID.randomUUID());
+		when(service.exportAccountTransactions(eq("1234"), isNull(), isNull(), eq(Arrays.asList("TX")),
+				ArgumentMatchers.<Consumer<TransactionResource>>any())).thenAnswer(invocation -> {
+					Consumer<TransactionResource> consumer = invocation.getArgument(4);
+					consumer.accept(first);
+					consumer.accept(second);
+					return 2;
+				});
+
+		ResponseEntity<StreamingResponseBody> response = controller.exportAccountTransactions(headers, "1234", null, null,
+				Arrays.asList("TX"));
+		assertEquals(TransactionController.APPLICATION_NDJSON, response.getHeaders().getContentType().toString());
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		response.getBody().writeTo(output);
+		String[] lines = output.toString("UTF-8").split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].contains(first.getTransactionUuid().toString()));
+		assertTrue(lines[1].contains(second.getTransactionUuid().toString()));
+	}
+
+	@Test
+	void testExportAccountTransactions_badParameters() {
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> {
+			controller.exportAccountTransactions(headers, "1234", null, "tomorrow", null); });
+		assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+		verifyNoInteractions(service);
+	}
+}
@@ -19,6 +19,8 @@ import org.springframework.web.server.ResponseStatusException;
 import qslv.transaction.request.ReservationRequest;
 import qslv.transaction.resource.TransactionResource;
 import qslv.transaction.response.ReservationResponse;
+import qslv.transaction.rest.ConcurrencyLimitExceededException;
+import qslv.transaction.rest.ConcurrencyLimiter;
 import qslv.transaction.rest.ConfigProperties;
 import qslv.transaction.rest.TransactionController;
 import qslv.transaction.rest.TransactionService;
@@ -206,4 +208,38 @@ class UnitTransactionControllerTest_postReservation {
 		assertTrue (response.getPayload().getStatus() == ReservationResponse.SUCCESS);
 	}
 
+	@Test
+	void testPostReservation_concurrencyLimited() {
+		HashMap<String, String> headers = new HashMap<String, String>();
+		headers.put(TraceableRequest.AIT_ID, "12345");
+		headers.put(TraceableRequest.BUSINESS_TAXONOMY_ID, "7483495");
+		headers.put(TraceableRequest.CORRELATION_ID, "273849273498273498");
+		headers.put(TraceableRequest.ACCEPT_VERSION, "1_0");
+
+		ReservationRequest request = new ReservationRequest();
+		request.setAccountNumber("237489237492");
+		request.setDebitCardNumber("8398345345");
+		request.setRequestUuid(UUID.randomUUID());
+		request.setTransactionAmount(-2323L);
+		request.setTransactionMetaDataJson("{blahblah}");
+
+		props.getConcurrencyLimit().setEnabled(true);
+		props.getConcurrencyLimit().setInitialLimit(1);
+		props.getConcurrencyLimit().setMinLimit(1);
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+		limiter.setConfigProperties(props);
+		controller.setConcurrencyLimiter(limiter);
+
+		// a second reservation arriving while the first holds the only slot is shed
+		when(service.createReservation(any(ReservationRequest.class))).thenAnswer(invocation -> {
+			ConcurrencyLimitExceededException ex = assertThrows(ConcurrencyLimitExceededException.class, () -> {
+				controller.postReservation(headers, request);
+			});
+			assertTrue (ex.getStatus() == HttpStatus.SERVICE_UNAVAILABLE);
+			return new ReservationResponse(ReservationResponse.SUCCESS, new TransactionResource());
+		});
+		TimedResponse<ReservationResponse> response = controller.postReservation(headers, request);
+		verify(service, times(1)).createReservation(any(ReservationRequest.class));
+		assertTrue (response.getPayload().getStatus() == ReservationResponse.SUCCESS);
+	}
 }
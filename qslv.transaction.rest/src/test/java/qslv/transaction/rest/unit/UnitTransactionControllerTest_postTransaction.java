@@ -19,7 +19,9 @@ import org.springframework.web.server.ResponseStatusException;
 import qslv.transaction.request.TransactionRequest;
 import qslv.transaction.resource.TransactionResource;
 import qslv.transaction.response.TransactionResponse;
+import qslv.transaction.rest.AccountPostingQueue;
 import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.GroupCommitQueue;
 import qslv.transaction.rest.TransactionController;
 import qslv.transaction.rest.TransactionService;
 import qslv.common.TimedResponse;
@@ -29,6 +31,10 @@ import qslv.common.TraceableRequest;
 class UnitTransactionControllerTest_postTransaction {
 	@Mock
 	TransactionService service;
+	@Mock
+	AccountPostingQueue postingQueue;
+	@Mock
+	GroupCommitQueue groupCommitQueue;
 	public ConfigProperties props = new ConfigProperties();
 
 	TransactionController controller = new TransactionController();
@@ -36,6 +42,8 @@ class UnitTransactionControllerTest_postTransaction {
 	@BeforeEach
 	public void setup() {
 		controller.setService(service);
+		controller.setPostingQueue(postingQueue);
+		controller.setGroupCommitQueue(groupCommitQueue);
 		props.setAitid("234234");
 		controller.setConfigProperties(props);
 	}
@@ -205,4 +213,48 @@ class UnitTransactionControllerTest_postTransaction {
 		assertTrue (response.getPayload().getStatus() == TransactionResponse.SUCCESS);
 	}
 
+	@Test
+	void testPostTransaction_accountQueue() {
+		props.getAccountQueue().setEnabled(true);
+		TransactionRequest request = setup_request();
+		TransactionResponse setupResponse = new TransactionResponse(TransactionResponse.SUCCESS, new TransactionResource());
+
+		when(postingQueue.createTransaction(request)).thenReturn(setupResponse);
+		TimedResponse<TransactionResponse> response = controller.postTransaction(setup_headers(), request);
+		verify(service, never()).createTransaction(any(TransactionRequest.class));
+		assertSame(setupResponse, response.getPayload());
+	}
+
+	@Test
+	void testPostTransaction_groupCommit() {
+		props.getAccountQueue().setEnabled(true);
+		props.getGroupCommit().setEnabled(true);
+		TransactionRequest request = setup_request();
+		TransactionResponse setupResponse = new TransactionResponse(TransactionResponse.SUCCESS, new TransactionResource());
+
+		when(groupCommitQueue.createTransaction(request)).thenReturn(setupResponse);
+		TimedResponse<TransactionResponse> response = controller.postTransaction(setup_headers(), request);
+		verify(service, never()).createTransaction(any(TransactionRequest.class));
+		verify(postingQueue, never()).createTransaction(any(TransactionRequest.class));
+		assertSame(setupResponse, response.getPayload());
+	}
+
+	private HashMap<String, String> setup_headers() {
+		HashMap<String, String> headers = new HashMap<String, String>();
+		headers.put(TraceableRequest.AIT_ID, "12345");
+		headers.put(TraceableRequest.BUSINESS_TAXONOMY_ID, "7483495");
+		headers.put(TraceableRequest.CORRELATION_ID, "273849273498273498");
+		headers.put(TraceableRequest.ACCEPT_VERSION, "1_0");
+		return headers;
+	}
+
+	private TransactionRequest setup_request() {
+		TransactionRequest request = new TransactionRequest();
+		request.setAccountNumber("237489237492");
+		request.setDebitCardNumber("8398345345");
+		request.setRequestUuid(UUID.randomUUID());
+		request.setTransactionAmount(-2323L);
+		request.setTransactionMetaDataJson("{blahblah}");
+		return request;
+	}
 }
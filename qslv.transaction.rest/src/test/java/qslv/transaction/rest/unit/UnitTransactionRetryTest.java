@@ -0,0 +1,207 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.TransactionRetry;
+
+@ExtendWith(MockitoExtension.class)
+public class UnitTransactionRetryTest {
+	static SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Mock
+	DataSource dataSource;
+	@Mock
+	Connection connection;
+	@Mock
+	JdbcTemplate jdbcTemplate;
+	ConfigProperties config = new ConfigProperties();
+	TransactionRetry retry = new TransactionRetry();
+
+	@BeforeAll
+	public static void addRegistry() {
+		Metrics.addRegistry(registry);
+	}
+
+	@AfterAll
+	public static void removeRegistry() {
+		Metrics.removeRegistry(registry);
+	}
+
+	@BeforeEach
+	public void setup() throws SQLException {
+		config.getTransactionRetry().setEnabled(true);
+		config.getTransactionRetry().setInitialBackoffMillis(1L);
+		config.getTransactionRetry().setMaxBackoffMillis(2L);
+		lenient().when(dataSource.getConnection()).thenReturn(connection);
+		lenient().when(jdbcTemplate.getDataSource()).thenReturn(dataSource);
+		retry.setConfigProperties(config);
+		retry.setTransactionManager(new DataSourceTransactionManager(dataSource));
+		retry.setJdbcTemplate(jdbcTemplate);
+	}
+
+	@Test
+	public void testExecute_retriesSerializationFailures() throws SQLException {
+		double before = registry.counter("qslv.transaction.retries", "endpoint", "POST/Transaction").count();
+		AtomicInteger attempts = new AtomicInteger();
+
+		String result = retry.execute("POST/Transaction", () -> {
+			if (attempts.incrementAndGet() < 3) {
+				throw serializationFailure();
+			}
+			return "posted";
+		});
+
+		assertEquals("posted", result);
+		verify(jdbcTemplate, times(1)).execute(TransactionRetry.savepoint_sql);
+		verify(jdbcTemplate, times(2)).execute(TransactionRetry.rollback_sql);
+		verify(jdbcTemplate, times(1)).execute(TransactionRetry.release_sql);
+		verify(connection).commit();
+		assertEquals(before + 2, registry.counter("qslv.transaction.retries", "endpoint", "POST/Transaction").count());
+	}
+
+	@Test
+	public void testExecute_releaseFails() throws SQLException {
+		lenient().doThrow(serializationFailure()).doNothing().when(jdbcTemplate).execute(TransactionRetry.release_sql);
+		AtomicInteger attempts = new AtomicInteger();
+
+		retry.execute("POST/Transaction", () -> attempts.incrementAndGet());
+
+		assertEquals(2, attempts.get());
+		verify(jdbcTemplate, times(1)).execute(TransactionRetry.rollback_sql);
+		verify(connection).commit();
+	}
+
+	@Test
+	public void testExecute_otherFailure() throws SQLException {
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> retry.execute("POST/Reservation", () -> {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "not found");
+		}));
+
+		assertEquals(HttpStatus.NOT_FOUND, ex.getStatus());
+		verify(jdbcTemplate, never()).execute(TransactionRetry.rollback_sql);
+		verify(connection).rollback();
+	}
+
+	@Test
+	public void testExecute_maxRetries() throws SQLException {
+		config.getTransactionRetry().setMaxRetries(2);
+		double before = registry.counter("qslv.transaction.retries.exhausted", "endpoint", "POST/Transaction", "reason", "attempts").count();
+		AtomicInteger attempts = new AtomicInteger();
+
+		assertThrows(ConcurrencyFailureException.class, () -> retry.execute("POST/Transaction", () -> {
+			attempts.incrementAndGet();
+			throw serializationFailure();
+		}));
+
+		assertEquals(3, attempts.get());
+		verify(connection).rollback();
+		assertEquals(before + 1, registry.counter("qslv.transaction.retries.exhausted", "endpoint", "POST/Transaction", "reason", "attempts").count());
+	}
+
+	@Test
+	public void testExecute_budget() {
+		config.getTransactionRetry().setBudgetMaxRetries(1L);
+		config.getTransactionRetry().setBudgetRatio(0.0);
+		AtomicInteger attempts = new AtomicInteger();
+
+		assertThrows(ConcurrencyFailureException.class, () -> retry.execute("POST/Transaction", () -> {
+			attempts.incrementAndGet();
+			throw serializationFailure();
+		}));
+		assertEquals(2, attempts.get());
+
+		attempts.set(0);
+		assertThrows(ConcurrencyFailureException.class, () -> retry.execute("POST/Transaction", () -> {
+			attempts.incrementAndGet();
+			throw serializationFailure();
+		}));
+		assertEquals(1, attempts.get());
+	}
+
+	@Test
+	public void testExecute_dropsSynchronizationsOfFailedAttempts() {
+		List<Integer> committed = new ArrayList<>();
+		AtomicInteger attempts = new AtomicInteger();
+
+		retry.execute("POST/Transaction", () -> {
+			int attempt = attempts.incrementAndGet();
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					committed.add(attempt);
+				}
+			});
+			if (attempt < 2) {
+				throw serializationFailure();
+			}
+			return attempt;
+		});
+
+		assertEquals(1, committed.size());
+		assertEquals(2, committed.get(0));
+	}
+
+	@Test
+	public void testExecute_completesSynchronizationsOfFailedAttempts() {
+		List<String> completions = new ArrayList<>();
+		AtomicInteger attempts = new AtomicInteger();
+
+		retry.execute("POST/Transaction", () -> {
+			int attempt = attempts.incrementAndGet();
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					completions.add(attempt + ":" + status);
+				}
+			});
+			if (attempt < 2) {
+				throw serializationFailure();
+			}
+			return attempt;
+		});
+
+		assertEquals(2, completions.size());
+		assertEquals("1:" + TransactionSynchronization.STATUS_ROLLED_BACK, completions.get(0));
+		assertEquals("2:" + TransactionSynchronization.STATUS_COMMITTED, completions.get(1));
+	}
+
+	@Test
+	public void testIsRetryable() {
+		assertTrue(TransactionRetry.isRetryable(serializationFailure()));
+		assertFalse(TransactionRetry.isRetryable(new ConcurrencyFailureException("x", new SQLException("deadlock", "40P01"))));
+		assertFalse(TransactionRetry.isRetryable(new RuntimeException()));
+	}
+
+	private static ConcurrencyFailureException serializationFailure() {
+		return new ConcurrencyFailureException("restart transaction",
+				new SQLException("restart transaction: TransactionRetryWithProtoRefreshError", "40001"));
+	}
+}
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -22,18 +23,25 @@ import org.springframework.web.server.ResponseStatusException;
 import qslv.transaction.request.CancelReservationRequest;
 import qslv.transaction.resource.TransactionResource;
 import qslv.transaction.response.CancelReservationResponse;
+import qslv.transaction.rest.ConfigProperties;
 import qslv.transaction.rest.JdbcDao;
+import qslv.transaction.rest.OpenReservationIndex;
 import qslv.transaction.rest.TransactionService;
 
 @ExtendWith(MockitoExtension.class)
 class UnitTransactionServiceTest_cancelReservation {
 	@Mock 
 	JdbcDao dao;
+	@Mock
+	OpenReservationIndex reservationIndex;
 	TransactionService service = new TransactionService();
+	ConfigProperties config = new ConfigProperties();
 	
 	@BeforeEach
 	public void setup() {
 		service.setJdbcDao(dao);
+		service.setConfigProperties(config);
+		service.setReservationIndex(reservationIndex);
 	}
 
 	//-------------------------------------
@@ -228,4 +236,45 @@ class UnitTransactionServiceTest_cancelReservation {
 		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
 	}
 
+	@Test
+	public void testCancelReservation_indexed() {
+		config.getReservationIndex().setEnabled(true);
+		CancelReservationRequest request = new CancelReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setReservationUuid(UUID.randomUUID());
+		request.setAccountNumber("7328429347");
+
+		TransactionResource indexed = new TransactionResource();
+		indexed.setAccountNumber("7328429347");
+		indexed.setTransactionAmount(-2323L);
+
+		when(dao.checkIdempotency(any(UUID.class), anyString())).thenReturn(null);
+		when(reservationIndex.claim(request.getReservationUuid())).thenReturn(indexed);
+		when(dao.selectBalanceForUpdate("7328429347")).thenReturn(10000L);
+
+		CancelReservationResponse result = service.cancelReservation(request);
+		verify(dao, never()).findReservation(any(UUID.class));
+		verify(dao, never()).verifyReservationOpen(any(UUID.class));
+		verify(dao).upsertBalance("7328429347", 10000L + 2323L);
+		verify(dao).insertCommitOrCancel(isA(TransactionResource.class));
+		assert(result.getStatus()==CancelReservationResponse.SUCCESS);
+		assertEquals(2323L, result.getResource().getTransactionAmount());
+	}
+
+	@Test
+	public void testCancelReservation_reservationStatusNotFound() {
+		config.setReservationStatus(true);
+		CancelReservationRequest request = new CancelReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setReservationUuid(UUID.randomUUID());
+		request.setAccountNumber("7328429347");
+
+		when(dao.checkIdempotency(any(UUID.class), anyString())).thenReturn(null);
+		when(dao.finalizeReservation(request.getReservationUuid(), TransactionResource.RESERVATION_CANCEL))
+			.thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND,"string"));
+
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()-> { service.cancelReservation(request); });
+		verify(dao, never()).selectBalanceForUpdate(anyString());
+		assert(ex.getStatus() == HttpStatus.NOT_FOUND);
+	}
 }
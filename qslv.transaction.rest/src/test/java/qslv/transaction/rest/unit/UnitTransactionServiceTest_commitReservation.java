@@ -4,7 +4,11 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import java.sql.Timestamp;
@@ -14,26 +18,35 @@ import java.util.UUID;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
 import qslv.transaction.request.CommitReservationRequest;
 import qslv.transaction.resource.TransactionResource;
 import qslv.transaction.response.CommitReservationResponse;
+import qslv.transaction.rest.ConfigProperties;
 import qslv.transaction.rest.JdbcDao;
+import qslv.transaction.rest.OpenReservationIndex;
 import qslv.transaction.rest.TransactionService;
 
 @ExtendWith(MockitoExtension.class)
 class UnitTransactionServiceTest_commitReservation {
 	@Mock 
 	JdbcDao dao;
+	@Mock
+	OpenReservationIndex reservationIndex;
 	TransactionService service = new TransactionService();
+	ConfigProperties config = new ConfigProperties();
 	
 	@BeforeEach
 	public void setup() {
 		service.setJdbcDao(dao);
+		service.setConfigProperties(config);
+		service.setReservationIndex(reservationIndex);
 	}
 
 	//-------------------------------------
@@ -277,4 +290,201 @@ class UnitTransactionServiceTest_commitReservation {
 		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
 	}
 
+	@Test
+	public void testCommitReservation_onConflictAlreadyCommitted() {
+		config.setConflictIdempotency(true);
+		CommitReservationRequest request = new CommitReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setReservationUuid(UUID.randomUUID());
+		request.setTransactionAmount(-2323L);
+		request.setAccountNumber("7328429347");
+
+		TransactionResource setupReservation = new TransactionResource();
+		setupReservation.setAccountNumber("7328429347");
+		setupReservation.setTransactionAmount(-2323L);
+		TransactionResource setupCommit = new TransactionResource();
+		setupCommit.setTransactionUuid(UUID.randomUUID());
+		setupCommit.setReservationUuid(request.getReservationUuid());
+		setupCommit.setTransactionTypeCode(TransactionResource.RESERVATION_COMMIT);
+
+		when(dao.findReservation(any(UUID.class))).thenReturn(setupReservation);
+		doThrow(new ResponseStatusException(HttpStatus.CONFLICT,"string"))
+			.when(dao).verifyReservationOpen(isA(UUID.class));
+		when(dao.checkIdempotency(request.getRequestUuid(), request.getAccountNumber())).thenReturn(setupCommit);
+
+		CommitReservationResponse result = service.commitReservation(request);
+		verify(dao, never()).selectBalanceForUpdate(anyString());
+		assert(result.getStatus()==CommitReservationResponse.SUCCESS);
+		assertSame(setupCommit, result.getResource());
+	}
+
+	@Test
+	public void testCommitReservation_onConflictCommittedByOther() {
+		config.setConflictIdempotency(true);
+		CommitReservationRequest request = new CommitReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setReservationUuid(UUID.randomUUID());
+		request.setTransactionAmount(-2323L);
+		request.setAccountNumber("7328429347");
+
+		when(dao.findReservation(any(UUID.class))).thenReturn(new TransactionResource());
+		doThrow(new ResponseStatusException(HttpStatus.CONFLICT,"string"))
+			.when(dao).verifyReservationOpen(isA(UUID.class));
+		when(dao.checkIdempotency(any(UUID.class), anyString())).thenReturn(null);
+
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()-> { service.commitReservation(request); });
+		assert(ex.getStatus() == HttpStatus.CONFLICT);
+	}
+
+	@Test
+	public void testCommitReservation_onConflictInsertFirst() {
+		config.setConflictIdempotency(true);
+		CommitReservationRequest request = new CommitReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setReservationUuid(UUID.randomUUID());
+		request.setTransactionAmount(-3000L);
+		request.setAccountNumber("7328429347");
+
+		TransactionResource setupReservation = new TransactionResource();
+		setupReservation.setAccountNumber("7328429347");
+		setupReservation.setTransactionAmount(-2323L);
+
+		when(dao.findReservation(any(UUID.class))).thenReturn(setupReservation);
+		when(dao.selectBalanceForUpdate(any(String.class))).thenReturn(10000L);
+		when(dao.insertTransactionIfAbsent(isA(TransactionResource.class))).thenReturn(true);
+
+		CommitReservationResponse result = service.commitReservation(request);
+		InOrder order = inOrder(dao);
+		order.verify(dao).insertTransactionIfAbsent(isA(TransactionResource.class));
+		order.verify(dao).upsertBalance("7328429347", 10000L - 3000L + 2323L);
+		verify(dao, never()).checkIdempotency(any(UUID.class), anyString());
+		verify(dao, never()).insertCommitOrCancel(any(TransactionResource.class));
+		assert(result.getStatus()==CommitReservationResponse.SUCCESS);
+	}
+
+	@Test
+	public void testCommitReservation_indexed() {
+		config.getReservationIndex().setEnabled(true);
+		CommitReservationRequest request = new CommitReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setReservationUuid(UUID.randomUUID());
+		request.setTransactionAmount(-3000L);
+		request.setAccountNumber("7328429347");
+
+		TransactionResource indexed = new TransactionResource();
+		indexed.setTransactionUuid(request.getReservationUuid());
+		indexed.setAccountNumber("7328429347");
+		indexed.setDebitCardNumber("126743812673981623");
+		indexed.setTransactionAmount(-2323L);
+
+		when(dao.checkIdempotency(any(UUID.class), anyString())).thenReturn(null);
+		when(reservationIndex.claim(request.getReservationUuid())).thenReturn(indexed);
+		when(dao.selectBalanceForUpdate("7328429347")).thenReturn(10000L);
+
+		CommitReservationResponse result = service.commitReservation(request);
+		verify(dao, never()).findReservation(any(UUID.class));
+		verify(dao, never()).verifyReservationOpen(any(UUID.class));
+		verify(dao).upsertBalance("7328429347", 10000L - 3000L + 2323L);
+		verify(dao).insertCommitOrCancel(isA(TransactionResource.class));
+		assert(result.getStatus()==CommitReservationResponse.SUCCESS);
+		assertEquals(indexed.getDebitCardNumber(), result.getResource().getDebitCardNumber());
+		assertEquals(-3000L + 2323L, result.getResource().getTransactionAmount());
+	}
+
+	@Test
+	public void testCommitReservation_indexedFinalizedElsewhere() {
+		config.getReservationIndex().setEnabled(true);
+		CommitReservationRequest request = new CommitReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setReservationUuid(UUID.randomUUID());
+		request.setTransactionAmount(-2323L);
+		request.setAccountNumber("7328429347");
+
+		TransactionResource indexed = new TransactionResource();
+		indexed.setAccountNumber("7328429347");
+		indexed.setTransactionAmount(-2323L);
+
+		when(dao.checkIdempotency(any(UUID.class), anyString())).thenReturn(null);
+		when(reservationIndex.claim(request.getReservationUuid())).thenReturn(indexed);
+		when(dao.selectBalanceForUpdate("7328429347")).thenReturn(10000L);
+		doThrow(new DuplicateKeyException("duplicate key value")).when(dao).insertCommitOrCancel(isA(TransactionResource.class));
+
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()-> { service.commitReservation(request); });
+		verify(dao, never()).findReservation(any(UUID.class));
+		assert(ex.getStatus() == HttpStatus.CONFLICT);
+	}
+
+	@Test
+	public void testCommitReservation_notIndexed() {
+		config.getReservationIndex().setEnabled(true);
+		CommitReservationRequest request = new CommitReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setReservationUuid(UUID.randomUUID());
+		request.setTransactionAmount(-2323L);
+		request.setAccountNumber("7328429347");
+
+		TransactionResource setupReservation = new TransactionResource();
+		setupReservation.setAccountNumber("7328429347");
+		setupReservation.setTransactionAmount(-2323L);
+
+		when(dao.checkIdempotency(any(UUID.class), anyString())).thenReturn(null);
+		doReturn(null).when(reservationIndex).claim(request.getReservationUuid());
+		when(dao.findReservation(request.getReservationUuid())).thenReturn(setupReservation);
+		when(dao.selectBalanceForUpdate("7328429347")).thenReturn(10000L);
+
+		CommitReservationResponse result = service.commitReservation(request);
+		verify(dao).verifyReservationOpen(request.getReservationUuid());
+		assert(result.getStatus()==CommitReservationResponse.SUCCESS);
+	}
+
+	@Test
+	public void testCommitReservation_reservationStatus() {
+		config.setReservationStatus(true);
+		config.getReservationIndex().setEnabled(true);
+		CommitReservationRequest request = new CommitReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setReservationUuid(UUID.randomUUID());
+		request.setTransactionAmount(-2323L);
+		request.setAccountNumber("7328429347");
+
+		TransactionResource setupReservation = new TransactionResource();
+		setupReservation.setAccountNumber("7328429347");
+		setupReservation.setTransactionAmount(-2323L);
+
+		when(dao.checkIdempotency(any(UUID.class), anyString())).thenReturn(null);
+		when(dao.finalizeReservation(request.getReservationUuid(), TransactionResource.RESERVATION_COMMIT)).thenReturn(setupReservation);
+		when(dao.selectBalanceForUpdate("7328429347")).thenReturn(10000L);
+
+		CommitReservationResponse result = service.commitReservation(request);
+		verify(dao, never()).findReservation(any(UUID.class));
+		verify(dao, never()).verifyReservationOpen(any(UUID.class));
+		verify(dao, never()).upsertBalance(anyString(), anyLong());
+		verify(dao).insertCommitOrCancel(isA(TransactionResource.class));
+		verifyNoInteractions(reservationIndex);
+		assert(result.getStatus()==CommitReservationResponse.SUCCESS);
+		assert(result.getResource().getRunningBalanceAmount() == 10000L);
+	}
+
+	@Test
+	public void testCommitReservation_reservationStatusOnConflict() {
+		config.setReservationStatus(true);
+		config.setConflictIdempotency(true);
+		CommitReservationRequest request = new CommitReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setReservationUuid(UUID.randomUUID());
+		request.setTransactionAmount(-2323L);
+		request.setAccountNumber("7328429347");
+
+		TransactionResource setupCommit = new TransactionResource();
+		setupCommit.setReservationUuid(request.getReservationUuid());
+		setupCommit.setTransactionTypeCode(TransactionResource.RESERVATION_COMMIT);
+
+		when(dao.finalizeReservation(request.getReservationUuid(), TransactionResource.RESERVATION_COMMIT))
+			.thenThrow(new ResponseStatusException(HttpStatus.CONFLICT,"string"));
+		when(dao.checkIdempotency(request.getRequestUuid(), request.getAccountNumber())).thenReturn(setupCommit);
+
+		CommitReservationResponse result = service.commitReservation(request);
+		verify(dao, never()).selectBalanceForUpdate(anyString());
+		assertSame(setupCommit, result.getResource());
+	}
 }
@@ -5,6 +5,8 @@ import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -23,7 +25,10 @@ import org.springframework.web.server.ResponseStatusException;
 import qslv.transaction.request.ReservationRequest;
 import qslv.transaction.resource.TransactionResource;
 import qslv.transaction.response.ReservationResponse;
+import qslv.transaction.rest.ConfigProperties;
 import qslv.transaction.rest.JdbcDao;
+import qslv.transaction.rest.OpenReservationIndex;
+import qslv.transaction.rest.RequestDeadline;
 import qslv.transaction.rest.TransactionService;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,11 +36,16 @@ import qslv.transaction.rest.TransactionService;
 class UnitTransactionServiceTest_createReservation {
 	@Mock 
 	JdbcDao dao;
+	@Mock
+	OpenReservationIndex reservationIndex;
 	TransactionService service = new TransactionService();
+	ConfigProperties config = new ConfigProperties();
 	
 	@BeforeEach
 	public void setup() {
 		service.setJdbcDao(dao);
+		service.setConfigProperties(config);
+		service.setReservationIndex(reservationIndex);
 	}
 
 	//-------------------------------------
@@ -63,6 +73,25 @@ class UnitTransactionServiceTest_createReservation {
 		assert(result.getResource().getTransactionUuid().equals(setupResult.getTransactionUuid()));
 	}
 
+	@Test
+	public void testCreateReservation_deadlinePassed() {
+		ReservationRequest request = new ReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setAccountNumber("1234567890234");
+		request.setDebitCardNumber("1235671234678234");
+		request.setTransactionAmount(-2323);
+		request.setTransactionMetaDataJson("{\"value\":23498234}");
+		request.setAuthorizeAgainstBalance(true);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> {
+			RequestDeadline.with(System.currentTimeMillis() - 1L, () -> service.createReservation(request));
+		});
+		assertEquals(HttpStatus.GATEWAY_TIMEOUT, ex.getStatus());
+		verify(dao, never()).selectBalanceForUpdate(anyString());
+		assertNull(RequestDeadline.get());
+	}
+
 	@Test
 	public void testCreateReservation_BalanceGTAmount() {
 		ReservationRequest request = new ReservationRequest();
@@ -223,6 +252,35 @@ class UnitTransactionServiceTest_createReservation {
 		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()->{service.createReservation(request);});
 		assert(ex.getStatus() == HttpStatus.INTERNAL_SERVER_ERROR);
 	}
-	
 
+	@Test
+	public void testCreateReservation_indexed() {
+		config.getReservationIndex().setEnabled(true);
+		ReservationRequest request = new ReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setAccountNumber("1234567890234");
+		request.setTransactionAmount(-2323L);
+		request.setAuthorizeAgainstBalance(true);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.selectBalanceForUpdate(any(String.class))).thenReturn(10000L);
+		ReservationResponse result = service.createReservation(request);
+		verify(reservationIndex).open(result.getResource());
+	}
+
+	@Test
+	public void testCreateReservation_rejectedNotIndexed() {
+		config.getReservationIndex().setEnabled(true);
+		ReservationRequest request = new ReservationRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setAccountNumber("1234567890234");
+		request.setTransactionAmount(-20000L);
+		request.setAuthorizeAgainstBalance(true);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.selectBalanceForUpdate(any(String.class))).thenReturn(10000L);
+		ReservationResponse result = service.createReservation(request);
+		assert(result.getStatus() == ReservationResponse.INSUFFICIENT_FUNDS);
+		verifyNoInteractions(reservationIndex);
+	}
 }
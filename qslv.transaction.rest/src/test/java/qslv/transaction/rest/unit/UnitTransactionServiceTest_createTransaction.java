@@ -2,10 +2,12 @@ package qslv.transaction.rest.unit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import java.util.Collections;
 import java.util.UUID;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -21,19 +23,34 @@ import org.springframework.web.server.ResponseStatusException;
 import qslv.transaction.request.TransactionRequest;
 import qslv.transaction.resource.TransactionResource;
 import qslv.transaction.response.TransactionResponse;
+import qslv.transaction.rest.AccountContention;
+import qslv.transaction.rest.BalanceCache;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.IdempotencyResultCache;
 import qslv.transaction.rest.JdbcDao;
+import qslv.transaction.rest.RequestDeadline;
+import qslv.transaction.rest.RequestUuidFilter;
 import qslv.transaction.rest.TransactionService;
+import qslv.transaction.rest.VersionedBalance;
 
 @ExtendWith(MockitoExtension.class)
 @RunWith(JUnitPlatform.class)
 class UnitTransactionServiceTest_createTransaction {
 	@Mock 
 	JdbcDao dao;
+	@Mock
+	IdempotencyResultCache cache;
+	@Mock
+	RequestUuidFilter filter;
 	TransactionService service = new TransactionService();
+	ConfigProperties config = new ConfigProperties();
 	
 	@BeforeEach
 	public void setup() {
 		service.setJdbcDao(dao);
+		service.setConfigProperties(config);
+		service.setIdempotencyCache(cache);
+		service.setRequestFilter(filter);
 	}
 	
 	//-------------------------------------
@@ -153,6 +170,299 @@ class UnitTransactionServiceTest_createTransaction {
 		assertEquals(TransactionResource.NORMAL, result.getTransactions().get(0).getTransactionTypeCode());
 	}
 	
+	@Test void testCreateTransaction_conditionalSuccess() {
+		config.setConditionalPosting(true);
+		TransactionRequest request = setup_request();
+		request.setAuthorizeAgainstBalance(true);
+		UUID transactionUuid = UUID.randomUUID();
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		doAnswer(invocation -> {
+			TransactionResource resource = invocation.getArgument(0);
+			resource.setTransactionUuid(transactionUuid);
+			resource.setRunningBalanceAmount(10000L + resource.getTransactionAmount());
+			return true;
+		}).when(dao).postTransactionConditionally(isA(TransactionResource.class), eq(true));
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao, never()).selectBalanceForUpdate(anyString());
+		verify(dao, never()).upsertBalance(anyString(), anyLong());
+		verify(dao, never()).insertTransaction(any(TransactionResource.class));
+
+		assertEquals(TransactionResponse.SUCCESS, result.getStatus());
+		assertEquals(transactionUuid, result.getTransactions().get(0).getTransactionUuid());
+		assertEquals(request.getRequestUuid(), result.getTransactions().get(0).getRequestUuid());
+		assertEquals(request.getTransactionAmount(), result.getTransactions().get(0).getTransactionAmount());
+		assertEquals(10000L+request.getTransactionAmount(), result.getTransactions().get(0).getRunningBalanceAmount());
+		assertEquals(TransactionResource.NORMAL, result.getTransactions().get(0).getTransactionTypeCode());
+	}
+
+	@Test void testCreateTransaction_conditionalNSF() {
+		config.setConditionalPosting(true);
+		TransactionRequest request = setup_request();
+		request.setAuthorizeAgainstBalance(true);
+		request.setTransactionAmount(-2000L);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.postTransactionConditionally(isA(TransactionResource.class), eq(true))).thenReturn(false);
+		when(dao.selectBalanceForUpdate(any(String.class))).thenReturn(1000L);
+		doNothing().when(dao).insertTransaction(isA(TransactionResource.class));
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao).insertTransaction(isA(TransactionResource.class));
+		verify(dao, never()).upsertBalance(anyString(), anyLong());
+
+		assertEquals(TransactionResponse.INSUFFICIENT_FUNDS, result.getStatus());
+		assertEquals(1000L, result.getTransactions().get(0).getRunningBalanceAmount());
+		assertEquals(TransactionResource.REJECTED_TRANSACTION, result.getTransactions().get(0).getTransactionTypeCode());
+	}
+
+	@Test void testCreateTransaction_conditionalIgnoreNSF() {
+		config.setConditionalPosting(true);
+		TransactionRequest request = setup_request();
+		request.setAuthorizeAgainstBalance(false);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.postTransactionConditionally(isA(TransactionResource.class), eq(false))).thenReturn(true);
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao).postTransactionConditionally(isA(TransactionResource.class), eq(false));
+		assertEquals(TransactionResponse.SUCCESS, result.getStatus());
+	}
+
+	@Test void testCreateTransaction_conditionalRecordsContention() {
+		config.setConditionalPosting(true);
+		config.getContention().setEnabled(true);
+		AccountContention contention = mock(AccountContention.class);
+		service.setAccountContention(contention);
+		TransactionRequest request = setup_request();
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.postTransactionConditionally(isA(TransactionResource.class), eq(false))).thenReturn(true);
+
+		service.createTransaction(request);
+		verify(contention).locked(eq(request.getAccountNumber()), anyLong());
+	}
+
+	@Test void testCreateTransaction_conditionalDeadlinePassed() {
+		config.setConditionalPosting(true);
+		TransactionRequest request = setup_request();
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+			() -> RequestDeadline.with(System.currentTimeMillis() - 1L, () -> service.createTransaction(request)));
+		assertEquals(HttpStatus.GATEWAY_TIMEOUT, ex.getStatus());
+		verify(dao, never()).postTransactionConditionally(any(TransactionResource.class), anyBoolean());
+	}
+
+	@Test void testCreateTransaction_onConflictSuccess() {
+		config.setConflictIdempotency(true);
+		TransactionRequest request = setup_request();
+
+		when(dao.selectBalanceForUpdate(any(String.class))).thenReturn(10000L);
+		when(dao.insertTransactionIfAbsent(isA(TransactionResource.class))).thenReturn(true);
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao, never()).checkIdempotency(any(UUID.class), anyString());
+		verify(dao).upsertBalance(request.getAccountNumber(), 10000L+request.getTransactionAmount());
+		verify(dao, never()).insertTransaction(any(TransactionResource.class));
+		assertEquals(TransactionResponse.SUCCESS, result.getStatus());
+	}
+
+	@Test void testCreateTransaction_onConflictAlreadyPresent() {
+		config.setConflictIdempotency(true);
+		TransactionRequest request = setup_request();
+		TransactionResource previous = new TransactionResource();
+		previous.setTransactionUuid(UUID.randomUUID());
+		previous.setTransactionTypeCode(TransactionResource.REJECTED_TRANSACTION);
+
+		when(dao.selectBalanceForUpdate(any(String.class))).thenReturn(10000L);
+		when(dao.insertTransactionIfAbsent(isA(TransactionResource.class))).thenReturn(false);
+		when(dao.checkIdempotency(request.getRequestUuid(), request.getAccountNumber())).thenReturn(previous);
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao, never()).upsertBalance(anyString(), anyLong());
+		assertEquals(TransactionResponse.INSUFFICIENT_FUNDS, result.getStatus());
+		assertSame(previous, result.getTransactions().get(0));
+	}
+
+	@Test void testCreateTransaction_onConflictNotFound() {
+		config.setConflictIdempotency(true);
+		TransactionRequest request = setup_request();
+
+		when(dao.selectBalanceForUpdate(any(String.class))).thenReturn(10000L);
+		when(dao.insertTransactionIfAbsent(isA(TransactionResource.class))).thenReturn(false);
+		when(dao.checkIdempotency(any(UUID.class), anyString())).thenReturn(null);
+
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> service.createTransaction(request));
+		assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ex.getStatus());
+	}
+
+	@Test void testCreateTransaction_cacheHit() {
+		config.getIdempotencyCache().setEnabled(true);
+		TransactionRequest request = setup_request();
+		TransactionResource previous = new TransactionResource();
+		previous.setTransactionTypeCode(TransactionResource.NORMAL);
+
+		when(cache.get(request.getRequestUuid(), request.getAccountNumber())).thenReturn(Collections.singletonList(previous));
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao, never()).checkIdempotency(any(UUID.class), anyString());
+		verify(dao, never()).selectBalanceForUpdate(anyString());
+		assertSame(previous, result.getTransactions().get(0));
+	}
+
+	@Test void testCreateTransaction_cacheMiss() {
+		config.getIdempotencyCache().setEnabled(true);
+		TransactionRequest request = setup_request();
+
+		when(cache.get(any(UUID.class), anyString())).thenReturn(null);
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.selectBalanceForUpdate(any(String.class))).thenReturn(10000L);
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao).checkIdempotency(any(UUID.class), anyString());
+		verify(cache).put(request.getRequestUuid(), request.getAccountNumber(), result.getTransactions());
+	}
+
+	@Test void testCreateTransaction_filterNew() {
+		config.getRequestFilter().setEnabled(true);
+		TransactionRequest request = setup_request();
+
+		when(filter.mightContain(request.getRequestUuid())).thenReturn(false);
+		when(dao.selectBalanceForUpdate(any(String.class))).thenReturn(10000L);
+		when(dao.insertTransactionIfAbsent(isA(TransactionResource.class))).thenReturn(true);
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao, never()).checkIdempotency(any(UUID.class), anyString());
+		verify(dao, never()).insertTransaction(any(TransactionResource.class));
+		verify(filter).add(request.getRequestUuid());
+		assertEquals(TransactionResponse.SUCCESS, result.getStatus());
+	}
+
+	@Test void testCreateTransaction_filterPossible() {
+		config.getRequestFilter().setEnabled(true);
+		TransactionRequest request = setup_request();
+		TransactionResource previous = new TransactionResource();
+		previous.setTransactionTypeCode(TransactionResource.NORMAL);
+
+		when(filter.mightContain(request.getRequestUuid())).thenReturn(true);
+		when(dao.checkIdempotency(request.getRequestUuid(), request.getAccountNumber())).thenReturn(previous);
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao, never()).selectBalanceForUpdate(anyString());
+		assertSame(previous, result.getTransactions().get(0));
+	}
+
+	@Test void testCreateTransaction_balanceCacheHit() {
+		config.getBalanceCache().setEnabled(true);
+		BalanceCache balanceCache = new BalanceCache();
+		balanceCache.setConfigProperties(config);
+		service.setBalanceCache(balanceCache);
+		TransactionRequest request = setup_request();
+		request.setAuthorizeAgainstBalance(true);
+		balanceCache.put(request.getAccountNumber(), 10000L, 7L);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.updateBalanceIfVersion(request.getAccountNumber(), 10000L+request.getTransactionAmount(), 7L)).thenReturn(true);
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao, never()).selectBalanceForUpdate(anyString());
+		verify(dao, never()).selectVersionedBalanceForUpdate(anyString());
+		verify(dao).insertTransaction(result.getTransactions().get(0));
+		assertEquals(TransactionResponse.SUCCESS, result.getStatus());
+		assertEquals(10000L+request.getTransactionAmount(), balanceCache.get(request.getAccountNumber()).getRunningBalanceAmount());
+		assertEquals(8L, balanceCache.get(request.getAccountNumber()).getVersion());
+	}
+
+	@Test void testCreateTransaction_balanceCacheHitRecordsContention() {
+		config.getBalanceCache().setEnabled(true);
+		config.getContention().setEnabled(true);
+		BalanceCache balanceCache = new BalanceCache();
+		balanceCache.setConfigProperties(config);
+		service.setBalanceCache(balanceCache);
+		AccountContention contention = mock(AccountContention.class);
+		service.setAccountContention(contention);
+		TransactionRequest request = setup_request();
+		balanceCache.put(request.getAccountNumber(), 10000L, 7L);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.updateBalanceIfVersion(request.getAccountNumber(), 10000L+request.getTransactionAmount(), 7L)).thenReturn(true);
+
+		service.createTransaction(request);
+		verify(contention).locked(eq(request.getAccountNumber()), anyLong());
+	}
+
+	@Test void testCreateTransaction_balanceCacheHitDeadlinePassed() {
+		config.getBalanceCache().setEnabled(true);
+		BalanceCache balanceCache = new BalanceCache();
+		balanceCache.setConfigProperties(config);
+		service.setBalanceCache(balanceCache);
+		TransactionRequest request = setup_request();
+		balanceCache.put(request.getAccountNumber(), 10000L, 7L);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+			() -> RequestDeadline.with(System.currentTimeMillis() - 1L, () -> service.createTransaction(request)));
+		assertEquals(HttpStatus.GATEWAY_TIMEOUT, ex.getStatus());
+		verify(dao, never()).updateBalanceIfVersion(anyString(), anyLong(), anyLong());
+		verify(dao, never()).insertTransaction(any(TransactionResource.class));
+	}
+
+	@Test void testCreateTransaction_balanceCacheStale() {
+		config.getBalanceCache().setEnabled(true);
+		BalanceCache balanceCache = new BalanceCache();
+		balanceCache.setConfigProperties(config);
+		service.setBalanceCache(balanceCache);
+		TransactionRequest request = setup_request();
+		request.setAuthorizeAgainstBalance(true);
+		balanceCache.put(request.getAccountNumber(), 10000L, 7L);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.updateBalanceIfVersion(anyString(), anyLong(), eq(7L))).thenReturn(false);
+		when(dao.selectVersionedBalanceForUpdate(request.getAccountNumber())).thenReturn(new VersionedBalance(5000L, 9L));
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao).upsertBalance(request.getAccountNumber(), 5000L+request.getTransactionAmount());
+		assertEquals(TransactionResponse.SUCCESS, result.getStatus());
+		assertEquals(5000L+request.getTransactionAmount(), result.getTransactions().get(0).getRunningBalanceAmount());
+		assertEquals(10L, balanceCache.get(request.getAccountNumber()).getVersion());
+	}
+
+	@Test void testCreateTransaction_balanceCacheNotCovered() {
+		config.getBalanceCache().setEnabled(true);
+		BalanceCache balanceCache = new BalanceCache();
+		balanceCache.setConfigProperties(config);
+		service.setBalanceCache(balanceCache);
+		TransactionRequest request = setup_request();
+		request.setAuthorizeAgainstBalance(true);
+		balanceCache.put(request.getAccountNumber(), 100L, 7L);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.selectVersionedBalanceForUpdate(request.getAccountNumber())).thenReturn(new VersionedBalance(100L, 7L));
+
+		TransactionResponse result = service.createTransaction(request);
+		verify(dao, never()).updateBalanceIfVersion(anyString(), anyLong(), anyLong());
+		verify(dao, never()).upsertBalance(anyString(), anyLong());
+		assertEquals(TransactionResponse.INSUFFICIENT_FUNDS, result.getStatus());
+		assertEquals(7L, balanceCache.get(request.getAccountNumber()).getVersion());
+	}
+
+	@Test void testCreateTransaction_recordsContention() {
+		config.getContention().setEnabled(true);
+		AccountContention contention = mock(AccountContention.class);
+		service.setAccountContention(contention);
+		TransactionRequest request = setup_request();
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.selectBalanceForUpdate(request.getAccountNumber())).thenReturn(10000L);
+
+		service.createTransaction(request);
+		verify(contention).locked(eq(request.getAccountNumber()), anyLong());
+	}
+
 	private TransactionRequest setup_request() {
 		TransactionRequest request = new TransactionRequest();
 		request.setRequestUuid(UUID.randomUUID());
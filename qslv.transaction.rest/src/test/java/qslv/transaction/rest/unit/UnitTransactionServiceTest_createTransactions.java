@@ -0,0 +1,160 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import qslv.transaction.request.TransactionRequest;
+import qslv.transaction.resource.TransactionResource;
+import qslv.transaction.response.TransactionResponse;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.JdbcDao;
+import qslv.transaction.rest.RequestUuidFilter;
+import qslv.transaction.rest.TransactionService;
+
+@ExtendWith(MockitoExtension.class)
+class UnitTransactionServiceTest_createTransactions {
+	@Mock 
+	JdbcDao dao;
+	TransactionService service = new TransactionService();
+	ConfigProperties config = new ConfigProperties();
+	
+	@BeforeEach
+	public void setup() {
+		service.setJdbcDao(dao);
+		service.setConfigProperties(config);
+	}
+
+	@Test
+	public void testCreateTransactions_sameAccount() {
+		TransactionRequest first = setup_request("1234567890234", -100L);
+		TransactionRequest second = setup_request("1234567890234", -200L);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.selectBalanceForUpdate("1234567890234")).thenReturn(1000L);
+
+		List<TransactionResponse> result = service.createTransactions(Arrays.asList(first, second));
+
+		verify(dao, times(1)).selectBalanceForUpdate("1234567890234");
+		verify(dao, times(1)).insertTransactions(argThat(list -> list.size() == 2));
+		verify(dao, times(1)).upsertBalance("1234567890234", 700L);
+		assertEquals(2, result.size());
+		assertEquals(900L, result.get(0).getTransactions().get(0).getRunningBalanceAmount());
+		assertEquals(700L, result.get(1).getTransactions().get(0).getRunningBalanceAmount());
+		assertEquals(first.getRequestUuid(), result.get(0).getTransactions().get(0).getRequestUuid());
+		assertEquals(second.getRequestUuid(), result.get(1).getTransactions().get(0).getRequestUuid());
+	}
+
+	@Test
+	public void testCreateTransactions_accountOrder() {
+		TransactionRequest first = setup_request("2222", -100L);
+		TransactionRequest second = setup_request("1111", 300L);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.selectBalanceForUpdate(anyString())).thenReturn(1000L);
+
+		List<TransactionResponse> result = service.createTransactions(Arrays.asList(first, second));
+
+		InOrder inOrder = inOrder(dao);
+		inOrder.verify(dao).selectBalanceForUpdate("1111");
+		inOrder.verify(dao).selectBalanceForUpdate("2222");
+		verify(dao).upsertBalance("1111", 1300L);
+		verify(dao).upsertBalance("2222", 900L);
+		assertEquals("2222", result.get(0).getTransactions().get(0).getAccountNumber());
+		assertEquals("1111", result.get(1).getTransactions().get(0).getAccountNumber());
+	}
+
+	@Test
+	public void testCreateTransactions_insufficientFunds() {
+		TransactionRequest first = setup_request("1234567890234", -800L);
+		TransactionRequest second = setup_request("1234567890234", -800L);
+		second.setAuthorizeAgainstBalance(true);
+
+		when(dao.checkIdempotency( any(UUID.class), anyString() )).thenReturn(null);
+		when(dao.selectBalanceForUpdate("1234567890234")).thenReturn(1000L);
+
+		List<TransactionResponse> result = service.createTransactions(Arrays.asList(first, second));
+
+		assertEquals(TransactionResponse.SUCCESS, result.get(0).getStatus());
+		assertEquals(TransactionResponse.INSUFFICIENT_FUNDS, result.get(1).getStatus());
+		assertEquals(TransactionResource.REJECTED_TRANSACTION, result.get(1).getTransactions().get(0).getTransactionTypeCode());
+		assertEquals(200L, result.get(1).getTransactions().get(0).getRunningBalanceAmount());
+		verify(dao).upsertBalance("1234567890234", 200L);
+	}
+
+	@Test
+	public void testCreateTransactions_idempotent() {
+		TransactionRequest first = setup_request("1234567890234", -100L);
+		TransactionRequest repeat = setup_request("1234567890234", -100L);
+		repeat.setRequestUuid(first.getRequestUuid());
+
+		TransactionResource previous = new TransactionResource();
+		previous.setTransactionUuid(UUID.randomUUID());
+		previous.setTransactionTypeCode(TransactionResource.NORMAL);
+		when(dao.checkIdempotency( first.getRequestUuid(), "1234567890234" )).thenReturn(previous);
+
+		List<TransactionResponse> result = service.createTransactions(Arrays.asList(first, repeat));
+
+		verify(dao, times(1)).checkIdempotency(any(UUID.class), anyString());
+		verify(dao, never()).selectBalanceForUpdate(anyString());
+		verify(dao, times(1)).insertTransactions(argThat(list -> list.isEmpty()));
+		verify(dao, never()).upsertBalance(anyString(), anyLong());
+		assertSame(previous, result.get(0).getTransactions().get(0));
+		assertSame(result.get(0), result.get(1));
+	}
+
+	@Test
+	public void testCreateTransactions_postedByAnotherInstance() {
+		config.getRequestFilter().setEnabled(true);
+		RequestUuidFilter filter = new RequestUuidFilter();
+		filter.setConfigProperties(config);
+		filter.setJdbcDao(dao);
+		filter.warmUp();
+		service.setRequestFilter(filter);
+
+		TransactionRequest first = setup_request("1234567890234", -100L);
+		TransactionRequest elsewhere = setup_request("1234567890234", -200L);
+		TransactionResource previous = new TransactionResource();
+		previous.setTransactionUuid(UUID.randomUUID());
+		previous.setRequestUuid(elsewhere.getRequestUuid());
+		previous.setAccountNumber("1234567890234");
+		previous.setTransactionTypeCode(TransactionResource.NORMAL);
+
+		when(dao.checkIdempotency( first.getRequestUuid(), "1234567890234" )).thenReturn(null);
+		when(dao.checkIdempotency( elsewhere.getRequestUuid(), "1234567890234" )).thenReturn(previous);
+		when(dao.selectBalanceForUpdate("1234567890234")).thenReturn(1000L);
+
+		List<TransactionResponse> result = service.createTransactions(Arrays.asList(first, elsewhere));
+
+		verify(dao, times(2)).checkIdempotency(any(UUID.class), anyString());
+		verify(dao, times(1)).insertTransactions(argThat(list -> list.size() == 1
+				&& list.get(0).getRequestUuid().equals(first.getRequestUuid())));
+		verify(dao, times(1)).upsertBalance("1234567890234", 900L);
+		assertEquals(900L, result.get(0).getTransactions().get(0).getRunningBalanceAmount());
+		assertSame(previous, result.get(1).getTransactions().get(0));
+	}
+
+	private TransactionRequest setup_request(String account, long amount) {
+		TransactionRequest request = new TransactionRequest();
+		request.setRequestUuid(UUID.randomUUID());
+		request.setAccountNumber(account);
+		request.setDebitCardNumber("1235671234678234");
+		request.setTransactionAmount(amount);
+		request.setTransactionMetaDataJson("{\"value\":23498234}");
+		request.setProtectAgainstOverdraft(false);
+		request.setAuthorizeAgainstBalance(false);
+		return request;
+	}
+}
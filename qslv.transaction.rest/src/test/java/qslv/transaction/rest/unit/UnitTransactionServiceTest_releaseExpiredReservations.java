@@ -0,0 +1,214 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import qslv.transaction.resource.TransactionResource;
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.JdbcDao;
+import qslv.transaction.rest.ReleasedReservations;
+import qslv.transaction.rest.TransactionService;
+
+@ExtendWith(MockitoExtension.class)
+class UnitTransactionServiceTest_releaseExpiredReservations {
+	@Mock
+	JdbcDao dao;
+	TransactionService service = new TransactionService();
+	ConfigProperties config = new ConfigProperties();
+
+	@BeforeEach
+	public void setup() {
+		service.setJdbcDao(dao);
+		service.setConfigProperties(config);
+	}
+
+	@Test
+	public void testReleaseExpiredReservations() {
+		TransactionResource first = reservation("1111", -100L);
+		TransactionResource second = reservation("2222", -250L);
+		TransactionResource third = reservation("1111", -50L);
+		TreeMap<String, Long> balances = new TreeMap<>();
+		balances.put("1111", 1000L);
+		balances.put("2222", 0L);
+
+		when(dao.expireReservations(12345L, 500)).thenReturn(Arrays.asList(first, second, third));
+		when(dao.selectBalancesForUpdate(new HashSet<>(Arrays.asList("1111", "2222")))).thenReturn(balances);
+		when(dao.insertReleases(anyList())).thenAnswer(invocation -> released(invocation.getArgument(0)));
+
+		ReleasedReservations result = service.releaseExpiredReservations(12345L, 500);
+		assertEquals(3, result.getExpired());
+		assertEquals(3, result.getReleased());
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<List<TransactionResource>> inserted = ArgumentCaptor.forClass(List.class);
+		verify(dao).insertReleases(inserted.capture());
+		List<TransactionResource> releases = inserted.getValue();
+		assertEquals(3, releases.size());
+		assertEquals(TransactionResource.RESERVATION_CANCEL, releases.get(0).getTransactionTypeCode());
+		assertEquals(first.getTransactionUuid(), releases.get(0).getReservationUuid());
+		assertEquals(100L, releases.get(0).getTransactionAmount());
+		assertEquals(1100L, releases.get(0).getRunningBalanceAmount());
+		assertEquals(250L, releases.get(1).getRunningBalanceAmount());
+		assertEquals(1150L, releases.get(2).getRunningBalanceAmount());
+		assertNotEquals(releases.get(0).getRequestUuid(), releases.get(2).getRequestUuid());
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Map<String, Long>> upserted = ArgumentCaptor.forClass(Map.class);
+		verify(dao).upsertBalances(upserted.capture());
+		assertEquals(1150L, upserted.getValue().get("1111"));
+		assertEquals(250L, upserted.getValue().get("2222"));
+		verify(dao, never()).deleteTransactions(any());
+	}
+
+	@Test
+	public void testReleaseExpiredReservations_none() {
+		when(dao.expireReservations(anyLong(), anyInt())).thenReturn(Collections.emptyList());
+
+		ReleasedReservations result = service.releaseExpiredReservations(12345L, 500);
+		assertEquals(0, result.getExpired());
+		assertEquals(0, result.getReleased());
+		verify(dao, never()).selectBalancesForUpdate(any());
+		verify(dao, never()).insertReleases(any());
+	}
+
+	@Test
+	public void testReleaseExpiredReservations_alreadyFinalized() {
+		TransactionResource first = reservation("1111", -100L);
+		TransactionResource committed = reservation("1111", -400L);
+		TransactionResource cancelled = reservation("2222", -250L);
+		Map<UUID, String> finalized = new HashMap<>();
+		finalized.put(committed.getTransactionUuid(), TransactionResource.RESERVATION_COMMIT);
+		finalized.put(cancelled.getTransactionUuid(), TransactionResource.RESERVATION_CANCEL);
+		TreeMap<String, Long> balances = new TreeMap<>();
+		balances.put("1111", 1000L);
+
+		when(dao.expireReservations(12345L, 500)).thenReturn(Arrays.asList(first, committed, cancelled));
+		when(dao.selectFinalizations(Arrays.asList(first.getTransactionUuid(), committed.getTransactionUuid(), cancelled.getTransactionUuid())))
+			.thenReturn(finalized);
+		when(dao.selectBalancesForUpdate(Collections.singleton("1111"))).thenReturn(balances);
+		when(dao.insertReleases(anyList())).thenAnswer(invocation -> released(invocation.getArgument(0)));
+
+		ReleasedReservations result = service.releaseExpiredReservations(12345L, 500);
+		assertEquals(3, result.getExpired());
+		assertEquals(1, result.getReleased());
+
+		// the committed reservation is marked as such, the cancelled one already reads RX
+		verify(dao).markReservations(TransactionResource.RESERVATION_COMMIT, Collections.singletonList(committed.getTransactionUuid()));
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<List<TransactionResource>> inserted = ArgumentCaptor.forClass(List.class);
+		verify(dao).insertReleases(inserted.capture());
+		assertEquals(1, inserted.getValue().size());
+		assertEquals(first.getTransactionUuid(), inserted.getValue().get(0).getReservationUuid());
+		assertEquals(1100L, inserted.getValue().get(0).getRunningBalanceAmount());
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Map<String, Long>> upserted = ArgumentCaptor.forClass(Map.class);
+		verify(dao).upsertBalances(upserted.capture());
+		assertEquals(1100L, upserted.getValue().get("1111"));
+	}
+
+	@Test
+	public void testReleaseExpiredReservations_allFinalized() {
+		TransactionResource cancelled = reservation("2222", -250L);
+
+		when(dao.expireReservations(12345L, 500)).thenReturn(Collections.singletonList(cancelled));
+		when(dao.selectFinalizations(anyList()))
+			.thenReturn(Collections.singletonMap(cancelled.getTransactionUuid(), TransactionResource.RESERVATION_CANCEL));
+
+		ReleasedReservations result = service.releaseExpiredReservations(12345L, 500);
+		assertEquals(1, result.getExpired());
+		assertEquals(0, result.getReleased());
+		verify(dao).markReservations(TransactionResource.RESERVATION_COMMIT, Collections.emptyList());
+		verify(dao, never()).selectBalancesForUpdate(any());
+		verify(dao, never()).insertReleases(any());
+		verify(dao, never()).upsertBalances(any());
+	}
+
+	@Test
+	public void testReleaseExpiredReservations_finalizedConcurrently() {
+		TransactionResource first = reservation("1111", -100L);
+		TransactionResource committed = reservation("1111", -400L);
+		TransactionResource third = reservation("1111", -50L);
+		TreeMap<String, Long> balances = new TreeMap<>();
+		balances.put("1111", 1000L);
+
+		when(dao.expireReservations(12345L, 500)).thenReturn(Arrays.asList(first, committed, third));
+		// another instance commits the second reservation after the lookup, so its RX row conflicts
+		when(dao.selectFinalizations(anyList()))
+			.thenReturn(Collections.emptyMap())
+			.thenReturn(Collections.singletonMap(committed.getTransactionUuid(), TransactionResource.RESERVATION_COMMIT));
+		when(dao.selectBalancesForUpdate(Collections.singleton("1111"))).thenReturn(balances);
+		when(dao.insertReleases(anyList()))
+			.thenAnswer(invocation -> released(invocation.getArgument(0), committed.getTransactionUuid()))
+			.thenAnswer(invocation -> released(invocation.getArgument(0)));
+
+		ReleasedReservations result = service.releaseExpiredReservations(12345L, 500);
+		assertEquals(3, result.getExpired());
+		assertEquals(2, result.getReleased());
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<List<TransactionResource>> inserted = ArgumentCaptor.forClass(List.class);
+		verify(dao, times(2)).insertReleases(inserted.capture());
+		List<TransactionResource> rejected = inserted.getAllValues().get(0);
+		List<TransactionResource> releases = inserted.getAllValues().get(1);
+
+		// the first attempt's rows are taken back and the rest released with corrected balances
+		verify(dao).deleteTransactions(Arrays.asList(rejected.get(0).getTransactionUuid(), rejected.get(2).getTransactionUuid()));
+		verify(dao).markReservations(TransactionResource.RESERVATION_COMMIT, Collections.singletonList(committed.getTransactionUuid()));
+		assertEquals(2, releases.size());
+		assertEquals(first.getTransactionUuid(), releases.get(0).getReservationUuid());
+		assertEquals(1100L, releases.get(0).getRunningBalanceAmount());
+		assertEquals(third.getTransactionUuid(), releases.get(1).getReservationUuid());
+		assertEquals(1150L, releases.get(1).getRunningBalanceAmount());
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Map<String, Long>> upserted = ArgumentCaptor.forClass(Map.class);
+		verify(dao).upsertBalances(upserted.capture());
+		assertEquals(1150L, upserted.getValue().get("1111"));
+	}
+
+	/**
+	 * Stands in for insertReleases, assigning transaction_uuids and skipping the conflicting reservations.
+	 */
+	private static Set<UUID> released(List<TransactionResource> releases, UUID... conflicting) {
+		Set<UUID> released = new HashSet<>();
+		for (TransactionResource release : releases) {
+			release.setTransactionUuid(UUID.randomUUID());
+			if (false == Arrays.asList(conflicting).contains(release.getReservationUuid())) {
+				released.add(release.getReservationUuid());
+			}
+		}
+		return released;
+	}
+
+	private TransactionResource reservation(String accountNumber, long amount) {
+		TransactionResource reservation = new TransactionResource();
+		reservation.setTransactionUuid(UUID.randomUUID());
+		reservation.setAccountNumber(accountNumber);
+		reservation.setTransactionAmount(amount);
+		reservation.setTransactionTypeCode(TransactionResource.RESERVATION);
+		return reservation;
+	}
+}
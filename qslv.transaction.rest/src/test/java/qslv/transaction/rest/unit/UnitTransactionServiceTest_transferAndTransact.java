@@ -6,6 +6,7 @@ import static org.mockito.Mockito.*;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -13,6 +14,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.platform.runner.JUnitPlatform;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
@@ -23,6 +25,7 @@ import qslv.transaction.request.TransferAndTransactRequest;
 import qslv.transaction.resource.TransactionResource;
 import qslv.transaction.response.TransactionResponse;
 import qslv.transaction.response.TransferAndTransactResponse;
+import qslv.transaction.rest.ConfigProperties;
 import qslv.transaction.rest.JdbcDao;
 import qslv.transaction.rest.TransactionService;
 
@@ -32,10 +35,12 @@ class UnitTransactionServiceTest_transferAndTransact {
 	@Mock 
 	JdbcDao dao;
 	TransactionService service = new TransactionService();
+	ConfigProperties config = new ConfigProperties();
 	
 	@BeforeEach
 	public void setup() {
 		service.setJdbcDao(dao);
+		service.setConfigProperties(config);
 	}
 	
 	@Test
@@ -89,7 +94,7 @@ class UnitTransactionServiceTest_transferAndTransact {
 		//--Setup--------
 		when(dao.checkMultiIdempotency( any(UUID.class), anyString() )).thenReturn(Collections.emptyList());
 		doReturn(starting_balance).when(dao).selectBalanceForUpdate(anyString());
-		doNothing().when(dao).insertTransaction(any(TransactionResource.class));
+		doNothing().when(dao).insertTransactions(ArgumentMatchers.<List<TransactionResource>>any());
 		doNothing().when(dao).upsertBalance(anyString(), anyLong());
 		
 		//--Execute--------
@@ -98,7 +103,7 @@ class UnitTransactionServiceTest_transferAndTransact {
 		//--Verify--------
 		verify(dao).checkMultiIdempotency(any(UUID.class), anyString());
 		verify(dao).selectBalanceForUpdate(anyString());
-		verify(dao, times(2)).insertTransaction(any(TransactionResource.class));
+		verify(dao, times(1)).insertTransactions(ArgumentMatchers.<List<TransactionResource>>any());
 		verify(dao).upsertBalance(anyString(), anyLong());
 
 		assertNotNull(result);
@@ -181,7 +186,7 @@ class UnitTransactionServiceTest_transferAndTransact {
 		//--Setup--------
 		when(dao.checkMultiIdempotency( any(UUID.class), anyString() )).thenReturn(Collections.emptyList());
 		doReturn(starting_balance).when(dao).selectBalanceForUpdate(anyString());
-		doThrow(new RuntimeException()).when(dao).insertTransaction(any(TransactionResource.class));
+		doThrow(new RuntimeException()).when(dao).insertTransactions(ArgumentMatchers.<List<TransactionResource>>any());
 		
 		//--Execute--------
 		assertThrows( RuntimeException.class, ()->{ service.transferAndTransact(request); });
@@ -189,12 +194,12 @@ class UnitTransactionServiceTest_transferAndTransact {
 		//--Verify--------
 		verify(dao).checkMultiIdempotency(any(UUID.class), anyString());
 		verify(dao).selectBalanceForUpdate(anyString());
-		verify(dao, times(1)).insertTransaction(any(TransactionResource.class));
+		verify(dao, times(1)).insertTransactions(ArgumentMatchers.<List<TransactionResource>>any());
 
 	}
 	
 	@Test
-	public void testCreateTransaction_secondInsertThrows() {
+	public void testCreateTransaction_singleInsert() {
 		long starting_balance = 10000L;
 		long transfer_amount =  -10000L;
 		long transaction_amount = -15000L;
@@ -206,15 +211,16 @@ class UnitTransactionServiceTest_transferAndTransact {
 		//--Setup--------
 		when(dao.checkMultiIdempotency( any(UUID.class), anyString() )).thenReturn(Collections.emptyList());
 		doReturn(starting_balance).when(dao).selectBalanceForUpdate(anyString());
-		doNothing().doThrow(new RuntimeException()).when(dao).insertTransaction(any(TransactionResource.class));
+		doNothing().when(dao).insertTransactions(ArgumentMatchers.<List<TransactionResource>>any());
 		
 		//--Execute--------
-		assertThrows( RuntimeException.class, ()->{ service.transferAndTransact(request); });
+		TransferAndTransactResponse response = service.transferAndTransact(request);
 
 		//--Verify--------
-		verify(dao).checkMultiIdempotency(any(UUID.class), anyString());
-		verify(dao).selectBalanceForUpdate(anyString());
-		verify(dao, times(2)).insertTransaction(any(TransactionResource.class));
+		verify(dao, times(1)).insertTransactions(argThat(list -> list.size() == 2
+				&& list.get(0) == response.getTransactions().get(0)
+				&& list.get(1) == response.getTransactions().get(1)));
+		verify(dao, never()).insertTransaction(any(TransactionResource.class));
 
 	}
 	
@@ -231,7 +237,7 @@ class UnitTransactionServiceTest_transferAndTransact {
 		//--Setup--------
 		when(dao.checkMultiIdempotency( any(UUID.class), anyString() )).thenReturn(Collections.emptyList());
 		doReturn(starting_balance).when(dao).selectBalanceForUpdate(anyString());
-		doNothing().when(dao).insertTransaction(any(TransactionResource.class));
+		doNothing().when(dao).insertTransactions(ArgumentMatchers.<List<TransactionResource>>any());
 		doThrow(new RuntimeException()).when(dao).upsertBalance(anyString(), anyLong());
 		
 		//--Execute--------
@@ -240,11 +246,48 @@ class UnitTransactionServiceTest_transferAndTransact {
 		//--Verify--------
 		verify(dao).checkMultiIdempotency(any(UUID.class), anyString());
 		verify(dao).selectBalanceForUpdate(anyString());
-		verify(dao, times(2)).insertTransaction(any(TransactionResource.class));
+		verify(dao, times(1)).insertTransactions(ArgumentMatchers.<List<TransactionResource>>any());
 		verify(dao).upsertBalance(anyString(), anyLong());
 
 	}
 	
+	@Test
+	public void testCreateTransaction_onConflictAlreadyPresent() {
+		config.setConflictIdempotency(true);
+		TransferAndTransactRequest request = setup_request();
+		request.getTransferReservation().setTransactionAmount(-10000L);
+		request.getTransactionRequest().setTransactionAmount(-15000L);
+		ArrayList<TransactionResource> previous = new ArrayList<>();
+		previous.add(new TransactionResource());
+		previous.add(new TransactionResource());
+
+		doReturn(10000L).when(dao).selectBalanceForUpdate(anyString());
+		when(dao.insertTransactionsIfAbsent(ArgumentMatchers.<List<TransactionResource>>any())).thenReturn(false);
+		when(dao.checkMultiIdempotency( any(UUID.class), anyString() )).thenReturn(previous);
+
+		TransferAndTransactResponse response = service.transferAndTransact(request);
+
+		verify(dao, times(1)).checkMultiIdempotency(any(UUID.class), anyString());
+		verify(dao, never()).upsertBalance(anyString(), anyLong());
+		assertEquals(TransferAndTransactResponse.SUCCESS, response.getStatus());
+		assertSame(previous, response.getTransactions());
+	}
+
+	@Test
+	public void testCreateTransaction_onConflictPartial() {
+		config.setConflictIdempotency(true);
+		TransferAndTransactRequest request = setup_request();
+		request.getTransferReservation().setTransactionAmount(-10000L);
+		request.getTransactionRequest().setTransactionAmount(-15000L);
+
+		doReturn(10000L).when(dao).selectBalanceForUpdate(anyString());
+		when(dao.insertTransactionsIfAbsent(ArgumentMatchers.<List<TransactionResource>>any())).thenReturn(false);
+		when(dao.checkMultiIdempotency( any(UUID.class), anyString() )).thenReturn(Collections.emptyList());
+
+		ResponseStatusException ex = assertThrows(ResponseStatusException.class, ()->{ service.transferAndTransact(request); });
+		assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ex.getStatus());
+	}
+	
 	private TransferAndTransactRequest setup_request() {
 		TransactionResource transferReservation = new TransactionResource();
 		transferReservation.setAccountNumber("2738479234");
@@ -0,0 +1,80 @@
+package qslv.transaction.rest.unit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.coyote.ProtocolHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+
+import qslv.transaction.rest.ConfigProperties;
+import qslv.transaction.rest.VirtualThreadExecutor;
+
+@ExtendWith(MockitoExtension.class)
+public class UnitVirtualThreadExecutorTest {
+	@Mock
+	TomcatServletWebServerFactory factory;
+	@Mock
+	ProtocolHandler handler;
+	ConfigProperties config = new ConfigProperties();
+	VirtualThreadExecutor virtualThreads = new VirtualThreadExecutor();
+
+	@BeforeEach
+	public void setup() {
+		virtualThreads.setConfigProperties(config);
+	}
+
+	@AfterEach
+	public void teardown() {
+		virtualThreads.destroy();
+	}
+
+	@Test
+	public void testCustomize_disabled() {
+		virtualThreads.customize(factory);
+
+		assertNull(virtualThreads.executor());
+		verifyNoInteractions(factory);
+	}
+
+	@Test
+	public void testCustomize_enabled() throws Exception {
+		config.getVirtualThreads().setEnabled(true);
+		virtualThreads.customize(factory);
+
+		ExecutorService executor = virtualThreads.executor();
+		if (false == supportsVirtualThreads()) {
+			assertNull(executor);
+			verifyNoInteractions(factory);
+			return;
+		}
+		assertNotNull(executor);
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<TomcatProtocolHandlerCustomizer<ProtocolHandler>> customizer = ArgumentCaptor.forClass(TomcatProtocolHandlerCustomizer.class);
+		verify(factory).addProtocolHandlerCustomizers(customizer.capture());
+		customizer.getValue().customize(handler);
+		verify(handler).setExecutor(executor);
+
+		Thread thread = executor.submit(() -> Thread.currentThread()).get(5, TimeUnit.SECONDS);
+		assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(thread));
+	}
+
+	private static boolean supportsVirtualThreads() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException ex) {
+			return false;
+		}
+	}
+}